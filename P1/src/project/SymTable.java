@@ -1,67 +1,79 @@
 package project;
 
+import java.util.ArrayList;
 import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
 import java.util.List;
 
 
+/**
+ * The symbol table maps each name to its innermost binding, which links to
+ * the binding it shadows, and keeps an undo log of the names declared in
+ * each scope, so that looking a name up or adding one does not depend on
+ * how many scopes are open.
+ */
 public class SymTable {
-	private List<HashMap<String, Sym>> symTableList;
+	// name -> innermost binding
+	private HashMap<String, Binding> bindings;
+	// the names declared, in order, and where each open scope's names start in it
+	private List<String> log;
+	private List<Integer> scopeStart;
 	/**
-	 * Constructor. Initialize a list contains an empty symbol table
+	 * Constructor. Initialize a table with one empty scope
 	 * 
 	 */
 	public SymTable(){
-		HashMap<String, Sym> st = new HashMap<String, Sym>();
-		symTableList= new LinkedList<HashMap<String, Sym>>();
-		symTableList.add(st);
+		bindings = new HashMap<String, Binding>();
+		log = new ArrayList<String>();
+		scopeStart = new ArrayList<Integer>();
+		addScope();
 		
 	}
 	/**
-	 * Add the given name and sym to the first HashMap in the list.
+	 * Add the given name and sym to the innermost scope.
 	 * @param name The name of the symbol
 	 * @param sym  The symbol information
-	 * @throws DuplicateSymException If the symtable has already contained the given name as a key
+	 * @throws DuplicateSymException If the innermost scope has already contained the given name
 	 * @throws EmptySymTableException If the symtable is empty
 	 */
 	public void addDecl(String name, Sym sym) throws DuplicateSymException, EmptySymTableException{
 		if(name == null || sym == null){
 			throw new NullPointerException();
 			
-		}else if(symTableList.isEmpty()){
+		}else if(scopeStart.isEmpty()){
 			throw new EmptySymTableException();
 			
 		}
 		else{
-			//check in the first symtable
-			HashMap<String, Sym> st = symTableList.get(0);
-			if(st.containsKey(name))
+			//check in the innermost scope
+			Binding outer = bindings.get(name);
+			if(outer != null && outer.scope == size())
 				throw new DuplicateSymException();
 			else{
-				st.put(name, sym);
-				symTableList.set(0, st);
+				bindings.put(name, new Binding(sym, size(), outer));
+				log.add(name);
 			}
 		}
 	}
 	
 	/**
-	 * Add a new, empty HashMap to the front of the list.
+	 * Open a new, empty scope.
 	 */
 	public void addScope(){
-		HashMap<String, Sym> st = new HashMap<String, Sym>();
-		symTableList.add(0, st);
+		scopeStart.add(log.size());
 	}
 	
 	/**
 	 * @param name the search name of the symbol
-	 * @return Associated Sym if the first HashMap in the list contains name as a key; otherwise, return null.
+	 * @return Associated Sym if the innermost scope contains name; otherwise, return null.
 	 */
 	public Sym lookupLocal(String name){
-		if(symTableList.isEmpty() || name == null){
+		if(scopeStart.isEmpty() || name == null){
 			return null;
 		}else{
-			return symTableList.get(0).get(name);
+			Binding b = bindings.get(name);
+			if(b == null || b.scope != size())
+				return null;
+			return b.sym;
 
 		}
 	}
@@ -71,40 +83,52 @@ public class SymTable {
 	 * @return Sym if symtable contains it, otherwise null.
 	 */
 	public Sym lookupGlobal(String name){
-		if(symTableList.isEmpty() || name == null){
+		if(scopeStart.isEmpty() || name == null){
 			return null;
 		}else{
-			// check all the hashmaps in the list
-			Iterator<HashMap<String, Sym>> itr = symTableList.iterator();
-			while(itr.hasNext()){
-				HashMap<String, Sym> st = itr.next();
-				if(st.containsKey(name))
-					return st.get(name); // once find it, return the sym
-			}
-			// not found, return null
-			return null;
+			// the innermost binding is the one in scope
+			Binding b = bindings.get(name);
+			if(b == null)
+				return null;
+			return b.sym;
 		}
 	}
 	/**
-	 * Remove the HashMap from the front of the list.
-	 * @throws EmptySymTableException If this symtable's list is empty
+	 * Remove the innermost scope, undoing the declarations made in it.
+	 * @throws EmptySymTableException If this symtable has no scope
 	 */
 	public void removeScope() throws EmptySymTableException{
-		if(symTableList.isEmpty())
+		if(scopeStart.isEmpty())
 			throw new EmptySymTableException();
-		else
-			symTableList.remove(0);
+		else{
+			int start = scopeStart.remove(scopeStart.size() - 1);
+			while(log.size() > start){
+				String name = log.remove(log.size() - 1);
+				Binding shadowed = bindings.get(name).shadowed;
+				if(shadowed == null)
+					bindings.remove(name);
+				else
+					bindings.put(name, shadowed);
+			}
+		}
 	}
 	/**
 	 * This method is for debugging. First, print "\nSym Table\n". 
-	 * Then, for each HashMap M in the list, print M.toString() followed by a newline. 
+	 * Then, for each scope, innermost first, print the HashMap M of its names and syms 
+	 * as M.toString() followed by a newline. 
 	 * Finally, print one more newline. All output should go to System.out.
 	 */
 	public void print(){
 		System.out.print("\nSym Table\n");
-		Iterator<HashMap<String, Sym>> itr = symTableList.iterator();
-		while(itr.hasNext()){
-			HashMap<String, Sym> M = itr.next();
+		for(int scope = size(); scope > 0; scope--){
+			HashMap<String, Sym> M = new HashMap<String, Sym>();
+			int end = scope < size() ? scopeStart.get(scope) : log.size();
+			for(String name : log.subList(scopeStart.get(scope - 1), end)){
+				Binding b = bindings.get(name);
+				while(b.scope != scope)
+					b = b.shadowed;
+				M.put(name, b.sym);
+			}
 			System.out.println(M.toString());
 		}
 		System.out.println();
@@ -115,7 +139,23 @@ public class SymTable {
 	 * @return how many scopes in symTable
 	 */
 	public int size(){
-		return symTableList.size();
+		return scopeStart.size();
+	}
+	
+	/**
+	 * One declaration of a name: its sym, the scope it is in (1 is the outermost)
+	 * and the binding of the same name in an enclosing scope that it shadows.
+	 */
+	private static class Binding {
+		final Sym sym;
+		final int scope;
+		final Binding shadowed;
+		
+		Binding(Sym sym, int scope, Binding shadowed){
+			this.sym = sym;
+			this.scope = scope;
+			this.shadowed = shadowed;
+		}
 	}
 	
 }
@@ -17,38 +17,31 @@ public class P2 {
 	switch(opNum){
 	case 1:
 	    testAllTokens("allTokens.in", "allTokens.out");
-	    CharNum.num = 1;
 	    break;
 
 	case 2:
 	    testID("IDTest.in", "IDTest.out");
-	    CharNum.num = 1;
 	    break;
 
 	case 3:
 	    testIntegerLiteral("IntegerLiteralTest.in", "IntegerLiteralTest.out");
-	    CharNum.num = 1;
 	    break;
 
 	case 4:
 	    testStringLiteral("StringLiteralTest.in", "StringLiteralTest.out");
-	    CharNum.num = 1;
+	    break;
+
+	case 6:
+	    testConcurrent();
 	    break;
 
 	default:
 	    // test all
 	    testAllTokens("allTokens.in", "allTokens.out");
-	    CharNum.num = 1;
-
 	    testID("IDTest.in", "IDTest.out");
-	    CharNum.num = 1;
-	
 	    testIntegerLiteral("IntegerLiteralTest.in", "IntegerLiteralTest.out");
-	    CharNum.num = 1;
-
 	    testStringLiteral("StringLiteralTest.in", "StringLiteralTest.out");
-	    CharNum.num = 1;
-
+	    testConcurrent();
 	}
         // ADD CALLS TO OTHER TEST METHODS HERE
     }
@@ -374,6 +367,85 @@ public class P2 {
         outFile.close();
     }
 
+    /**
+     * testConcurrent
+     *
+     * Scan the test inputs on several threads at the same time (each file
+     * several times over) and check that every scanner reports the same
+     * tokens, line numbers and character numbers as a scanner that runs on
+     * its own.  This only works because the scanner keeps its character
+     * number in the Yylex instance instead of in a static.
+     */
+    private static void testConcurrent() throws IOException {
+	System.out.println("============================================");
+	System.out.println("+      Test Concurrent Scanner Cases       +");
+	System.out.println("============================================");
+
+	final String[] files = {"allTokens.in", "IDTest.in", 
+				"IntegerLiteralTest.in", "StringLiteralTest.in"};
+	final int rounds = 8;
+
+	// positions found by one scanner at a time
+	String[] expected = new String[files.length];
+	for (int i = 0; i < files.length; i++) {
+	    expected[i] = tokenPositions(files[i]);
+	}
+
+	// now all at once
+	final String[] found = new String[files.length * rounds];
+	Thread[] threads = new Thread[found.length];
+	for (int t = 0; t < threads.length; t++) {
+	    final int index = t;
+	    threads[t] = new Thread() {
+		    public void run() {
+			try {
+			    found[index] = tokenPositions(files[index % files.length]);
+			} catch (IOException ex) {
+			    found[index] = ex.toString();
+			}
+		    }
+		};
+	}
+	for (Thread thread : threads) {
+	    thread.start();
+	}
+
+	boolean ok = true;
+	for (int t = 0; t < threads.length; t++) {
+	    try {
+		threads[t].join();
+	    } catch (InterruptedException ex) {
+		ok = false;
+	    }
+	    if (!expected[t % files.length].equals(found[t])) {
+		System.out.println("positions differ for " + files[t % files.length]);
+		ok = false;
+	    }
+	}
+	System.out.println(ok ? "concurrent scanners agree" 
+			   : "concurrent scanners FAILED");
+	if (!ok) {
+	    System.exit(-1);
+	}
+    }
+
+    /**
+     * Scan the given file and return one "line:char kind" line per token.
+     */
+    private static String tokenPositions(String fin) throws IOException {
+	FileReader inFile = new FileReader(fin);
+	StringBuilder positions = new StringBuilder();
+	Yylex scanner = new Yylex(inFile);
+	Symbol token = scanner.next_token();
+	while (token.sym != sym.EOF) {
+	    TokenVal val = (TokenVal)token.value;
+	    positions.append(val.linenum + ":" + val.charnum + " " + token.sym + "\n");
+	    token = scanner.next_token();
+	}
+	inFile.close();
+	return positions.toString();
+    }
+
     /**
        Helper
      */
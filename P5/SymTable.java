@@ -1,11 +1,27 @@
 import java.util.*;
 
+/**
+ * The SymTable class maps each name to its innermost binding, which
+ * links to the binding it shadows, and keeps an undo log of the names
+ * declared in each scope.  So lookupLocal, lookupGlobal and addDecl take
+ * the same time however deeply scopes are nested, and removeScope time
+ * in the number of names the scope declared.
+ */
 public class SymTable {
-    private List<HashMap<String, SemSym>> list;
+    private HashMap<String, Binding> bindings;
+
+    // the names declared, in order, and where each open scope's names
+    // start in that log
+    private List<String> log;
+    private int[] scopeStart;
+    private int depth;
     
     public SymTable() {
-        list = new LinkedList<HashMap<String, SemSym>>();
-        list.add(new HashMap<String, SemSym>());
+        bindings = new HashMap<String, Binding>();
+        log = new ArrayList<String>();
+        scopeStart = new int[8];
+        depth = 0;
+        addScope();
     }
     
     public void addDecl(String name, SemSym sym) 
@@ -13,51 +29,80 @@ public class SymTable {
         if (name == null || sym == null)
             throw new NullPointerException();
         
-        if (list.isEmpty())
+        if (depth == 0)
             throw new EmptySymTableException();
         
-        HashMap<String, SemSym> symTab = list.get(0);
-        if (symTab.containsKey(name))
+        Binding outer = bindings.get(name);
+        if (outer != null && outer.depth == depth)
             throw new DuplicateSymException();
         
-        symTab.put(name, sym);
+        bindings.put(name, new Binding(sym, depth, outer));
+        log.add(name);
     }
     
     public void addScope() {
-        list.add(0, new HashMap<String, SemSym>());
+        if (depth == scopeStart.length)
+            scopeStart = Arrays.copyOf(scopeStart, 2 * depth);
+        scopeStart[depth++] = log.size();
     }
     
     public SemSym lookupLocal(String name) {
-        if (list.isEmpty())
+        Binding binding = bindings.get(name);
+        if (binding == null || binding.depth != depth)
             return null;
-        
-        HashMap<String, SemSym> symTab = list.get(0); 
-        return symTab.get(name);
+        return binding.sym;
     }
     
     public SemSym lookupGlobal(String name) {
-        if (list.isEmpty())
+        Binding binding = bindings.get(name);
+        if (binding == null)
             return null;
-        
-        for (HashMap<String, SemSym> symTab : list) {
-            SemSym sym = symTab.get(name);
-            if (sym != null)
-                return sym;
-        }
-        return null;
+        return binding.sym;
     }
     
     public void removeScope() throws EmptySymTableException {
-        if (list.isEmpty())
+        if (depth == 0)
             throw new EmptySymTableException();
-        list.remove(0);
+        depth--;
+        while (log.size() > scopeStart[depth]) {
+            String name = log.remove(log.size() - 1);
+            Binding shadowed = bindings.get(name).shadowed;
+            if (shadowed == null)
+                bindings.remove(name);
+            else
+                bindings.put(name, shadowed);
+        }
     }
     
     public void print() {
         System.out.print("\nSym Table\n");
-        for (HashMap<String, SemSym> symTab : list) {
+        for (int level = depth; level > 0; level--) {
+            HashMap<String, SemSym> symTab = new HashMap<String, SemSym>();
+            int end = level < depth ? scopeStart[level] : log.size();
+            for (String name : log.subList(scopeStart[level - 1], end)) {
+                Binding binding = bindings.get(name);
+                while (binding.depth != level)
+                    binding = binding.shadowed;
+                symTab.put(name, binding.sym);
+            }
             System.out.println(symTab.toString());
         }
         System.out.println();
     }
+
+    /**
+     * One declaration of a name: its symbol, the level of the scope it is
+     * in and the binding in an enclosing scope that it shadows (or null).
+     */
+    private static class Binding {
+        final SemSym sym;
+        final int depth;
+        final Binding shadowed;
+
+        Binding(SemSym sym, int depth, Binding shadowed) {
+            this.sym = sym;
+            this.depth = depth;
+            this.shadowed = shadowed;
+        }
+    }
 }
@@ -0,0 +1,94 @@
+// **********************************************************************
+// The ASTVisitor class is the base of the passes that are written outside
+// the AST classes (see AnalysisPass).  Each node's accept method calls the
+// visit method for its class; by default that calls the method for the
+// kind of node (visitDecl, visitStmt, visitExp, ...), and those call
+// visitNode, which visits the node's children (visitChildren) in source
+// order.  So a pass overrides the visit methods for the nodes it does
+// something with, and the rest of the tree is still walked.
+//
+// A pass that overrides a method and still wants the children visited
+// calls node.visitChildren(this) itself, where it wants them visited.
+// Adding a pass does not change the AST classes; adding a kind of node
+// means adding its visit method here.
+//
+// visitNode recurses on the Java stack, so a pass only lets it walk the
+// shallow parts of the tree (declarations, types, formals); statement
+// lists and expressions can nest to any depth and are walked with a Walk
+// (see AnalysisPass).
+// **********************************************************************
+
+abstract class ASTVisitor {
+    // ProgramNode, the lists and FnBodyNode
+    public void visit(ProgramNode node)       { visitNode(node); }
+    public void visit(DeclListNode node)      { visitNode(node); }
+    public void visit(FormalsListNode node)   { visitNode(node); }
+    public void visit(FnBodyNode node)        { visitNode(node); }
+    public void visit(StmtListNode node)      { visitNode(node); }
+    public void visit(ExpListNode node)       { visitNode(node); }
+
+    // declarations
+    public void visit(VarDeclNode node)       { visitDecl(node); }
+    public void visit(FnDeclNode node)        { visitDecl(node); }
+    public void visit(FormalDeclNode node)    { visitDecl(node); }
+    public void visit(StructDeclNode node)    { visitDecl(node); }
+
+    // types
+    public void visit(IntNode node)           { visitType(node); }
+    public void visit(BoolNode node)          { visitType(node); }
+    public void visit(VoidNode node)          { visitType(node); }
+    public void visit(StructNode node)        { visitType(node); }
+
+    // statements
+    public void visit(AssignStmtNode node)    { visitStmt(node); }
+    public void visit(PostIncStmtNode node)   { visitStmt(node); }
+    public void visit(PostDecStmtNode node)   { visitStmt(node); }
+    public void visit(ReadStmtNode node)      { visitStmt(node); }
+    public void visit(WriteStmtNode node)     { visitStmt(node); }
+    public void visit(IfStmtNode node)        { visitStmt(node); }
+    public void visit(IfElseStmtNode node)    { visitStmt(node); }
+    public void visit(WhileStmtNode node)     { visitStmt(node); }
+    public void visit(CallStmtNode node)      { visitStmt(node); }
+    public void visit(ReturnStmtNode node)    { visitStmt(node); }
+
+    // expressions
+    public void visit(IntLitNode node)        { visitExp(node); }
+    public void visit(StringLitNode node)     { visitExp(node); }
+    public void visit(TrueNode node)          { visitExp(node); }
+    public void visit(FalseNode node)         { visitExp(node); }
+    public void visit(IdNode node)            { visitExp(node); }
+    public void visit(DotAccessExpNode node)  { visitExp(node); }
+    public void visit(AssignNode node)        { visitExp(node); }
+    public void visit(CallExpNode node)       { visitExp(node); }
+    public void visit(UnaryMinusNode node)    { visitUnary(node); }
+    public void visit(NotNode node)           { visitUnary(node); }
+    public void visit(PlusNode node)          { visitBinary(node); }
+    public void visit(MinusNode node)         { visitBinary(node); }
+    public void visit(TimesNode node)         { visitBinary(node); }
+    public void visit(DivideNode node)        { visitBinary(node); }
+    public void visit(AndNode node)           { visitBinary(node); }
+    public void visit(OrNode node)            { visitBinary(node); }
+    public void visit(EqualsNode node)        { visitBinary(node); }
+    public void visit(NotEqualsNode node)     { visitBinary(node); }
+    public void visit(LessNode node)          { visitBinary(node); }
+    public void visit(GreaterNode node)       { visitBinary(node); }
+    public void visit(LessEqNode node)        { visitBinary(node); }
+    public void visit(GreaterEqNode node)     { visitBinary(node); }
+
+    // the kinds of node
+    public void visitDecl(DeclNode node)          { visitNode(node); }
+    public void visitType(TypeNode node)          { visitNode(node); }
+    public void visitStmt(StmtNode node)          { visitNode(node); }
+    public void visitExp(ExpNode node)            { visitNode(node); }
+    public void visitUnary(UnaryExpNode node)     { visitExp(node); }
+    public void visitBinary(BinaryExpNode node)   { visitExp(node); }
+
+    /**
+     * visitNode
+     * What is done for a node whose visit methods are not overridden:
+     * visit its children.
+     */
+    public void visitNode(ASTnode node) {
+        node.visitChildren(this);
+    }
+}
@@ -0,0 +1,341 @@
+// **********************************************************************
+// The AnalysisPass class does name analysis, offset assignment and type
+// checking in one walk over the AST.  P6 runs it on the whole program,
+// and StreamingCompiler on one top-level declaration at a time.
+//
+// Each statement of a function is name-analyzed and then type-checked
+// right away, while its nodes are still in the cache; each local is given
+// its offset as it is declared.  The work on each node is done by the
+// node's methods (nameAnalysis, markOffset, typeCheck and checkCondition):
+// the same errors are reported, in the same order, as if all of the
+// program were name-analyzed before any of it was type-checked, and the
+// locals are given their offsets in the order they are declared.
+//
+// The statements of a function nest to any depth, so the statement lists
+// and the ifs and whiles are walked with a Walk (myStmts), not by
+// recursing through the visit methods.
+//
+// Type errors are not reported at all when name analysis has found an
+// error, and name analysis of a later declaration may still find one
+// after a function has been checked.  So the type errors are held back
+// (ErrMsg.setDeferring) until releaseTypeErrors, which reports them only
+// if there has been no name error; once there has been one, statements
+// are no longer type-checked and locals no longer given offsets, since
+// the program will not be translated.
+// **********************************************************************
+
+class AnalysisPass extends ASTVisitor {
+    private SymTable mySymTab;
+    private boolean myDeclErrors = false;
+    private boolean myTypeErrors = false;
+
+    // the function being analyzed (null outside of one), and the offset
+    // of the next local
+    private TypeNode myReturnType;
+    private int myOffset;
+
+    // whether the statements being visited are type-checked (typeCheck
+    // skips the body of an if or while whose condition is wrong), and
+    // whether those checked so far were correct
+    private boolean myChecking = false;
+    private boolean myStmtsCorrect = true;
+
+    // whether the statements of the last list walked were correct
+    private boolean myListCorrect;
+
+    // bits of the int a statement list is walked with: whether to check
+    // it, and the state of the list it is in (restored after it)
+    private static final int CHECK = 1;
+    private static final int CHECKING = 2;
+    private static final int CORRECT = 4;
+
+    // walks statement lists and the statements in them (see stmtStep)
+    private final Walk myStmts = new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                return stmtStep(this, node, step);
+            }
+        };
+
+    public AnalysisPass() {
+        this(new SymTable());
+    }
+
+    /**
+     * Analyze declarations in the scope of globals, the global symbol
+     * table.
+     */
+    public AnalysisPass(SymTable globals) {
+        mySymTab = globals;
+    }
+
+    /**
+     * Return true if name analysis has reported an error.
+     */
+    public boolean declErrors() {
+        return myDeclErrors;
+    }
+
+    /**
+     * Return true if type checking has found a function incorrect (as
+     * for FnDeclNode.typeCheck).
+     */
+    public boolean typeErrors() {
+        return myTypeErrors;
+    }
+
+    /**
+     * releaseTypeErrors
+     * Report the type errors held back so far if there has been no name
+     * error, otherwise forget them.
+     */
+    public void releaseTypeErrors() {
+        if (myDeclErrors) {
+            ErrMsg.dropDeferred();
+        } else {
+            ErrMsg.reportDeferred();
+        }
+    }
+
+    /**
+     * checkMain
+     * Report an error if the program has no main function.
+     */
+    public void checkMain() {
+        int main = mySymTab.lookupGlobal("main");
+        if (!(SymAttrs.SHARED.sym(main) instanceof FnSym)) {
+            ErrMsg.fatal(0, 0, "No main function");
+            myDeclErrors = true;
+        }
+    }
+
+    public void visit(ProgramNode node) {
+        node.visitChildren(this);
+        checkMain();
+        releaseTypeErrors();
+    }
+
+    /**
+     * Global variables, struct definitions (with their fields) and locals.
+     */
+    public void visitDecl(DeclNode node) {
+        int errors = ErrMsg.errorCount();
+        node.nameAnalysis(mySymTab);
+        noteErrors(errors);
+    }
+
+    public void visit(VarDeclNode node) {
+        visitDecl(node);
+        if (myReturnType != null && !myDeclErrors) {
+            myOffset = node.markOffset(myOffset);
+        }
+    }
+
+    public void visit(FnDeclNode node) {
+        int errors = ErrMsg.errorCount();
+        FnSym sym = node.declare(mySymTab);
+        noteErrors(errors);
+        visitBody(node, sym);
+    }
+
+    /**
+     * visitBody
+     * Analyze the body of the function node, whose scope has been entered
+     * in this pass's symbol table and its formals declared (sym is its
+     * symbol), then exit that scope.
+     */
+    public void visitBody(FnDeclNode node, FnSym sym) {
+        myReturnType = node.returnType();
+        // (a multiply declared function has no sym, and no code)
+        myOffset = (sym != null ? sym.formalSpace*(-1) : 0) - 8;
+        node.body().accept(this);
+        myReturnType = null;
+
+        node.exitScope(mySymTab);
+    }
+
+    public void visit(FnBodyNode node) {
+        int start = myOffset;
+        node.declList().accept(this);
+        if (!visitStmts(node.stmtList(), true)) {
+            myTypeErrors = true;
+        }
+        node.setLocalSpace(start - myOffset);
+    }
+
+    /**
+     * Assignments, ++, --, cin, cout, calls and returns.
+     */
+    public void visitStmt(StmtNode node) {
+        int errors = ErrMsg.errorCount();
+        node.visitChildren(this);
+        noteErrors(errors);
+        if (checking()) {
+            ErrMsg.setDeferring(true);
+            boolean correct = node.typeCheck(myReturnType);
+            ErrMsg.setDeferring(false);
+            if (!correct) {
+                myStmtsCorrect = false;
+            }
+        }
+    }
+
+    public void visit(IfStmtNode node) {
+        myStmts.walk(node);
+    }
+
+    public void visit(IfElseStmtNode node) {
+        myStmts.walk(node);
+    }
+
+    public void visit(WhileStmtNode node) {
+        myStmts.walk(node);
+    }
+
+    /**
+     * The names in an expression (its nameAnalysis does its children).
+     */
+    public void visitExp(ExpNode node) {
+        node.nameAnalysis(mySymTab);
+    }
+
+    /**
+     * Name-analyze the condition exp of stmt and, if statements are
+     * being checked, type-check it.  Return whether to type-check the
+     * body, which typeCheck only does if the condition is correct.
+     */
+    private boolean visitCondition(StmtNode stmt, ExpNode exp) {
+        int errors = ErrMsg.errorCount();
+        exp.accept(this);
+        noteErrors(errors);
+        if (!checking()) {
+            return false;
+        }
+        ErrMsg.setDeferring(true);
+        boolean correct = stmt.checkCondition();
+        ErrMsg.setDeferring(false);
+        if (!correct) {
+            myStmtsCorrect = false;
+        }
+        return correct;
+    }
+
+    /**
+     * Visit the statements of list, type-checking them if check is true,
+     * and return false if one of them was incorrect.
+     */
+    private boolean visitStmts(StmtListNode list, boolean check) {
+        myStmts.walk(list, check ? CHECK : 0, null);
+        return myListCorrect;
+    }
+
+    /**
+     * stmtStep
+     * Step step of the walk w over node, a statement list or a statement
+     * (see Walk).  A list is walked with CHECK if it is type-checked; at
+     * its end myListCorrect tells whether its statements were correct.
+     * The body of an if or a while is walked as a list, after its
+     * condition and its declarations; other statements are visited.
+     */
+    private boolean stmtStep(Walk w, ASTnode node, int step) {
+        if (node instanceof StmtListNode) {
+            if (step == 0) {
+                w.setArg(w.arg() | (myChecking ? CHECKING : 0) |
+                         (myStmtsCorrect ? CORRECT : 0));
+                myChecking = (w.arg() & CHECK) != 0;
+                myStmtsCorrect = true;
+                w.visitChildren(node);
+                return true;
+            }
+            myListCorrect = myStmtsCorrect;
+            myChecking = (w.arg() & CHECKING) != 0;
+            myStmtsCorrect = (w.arg() & CORRECT) != 0;
+            return false;
+        }
+
+        if (node instanceof IfStmtNode) {
+            IfStmtNode stmt = (IfStmtNode)node;
+            return blockStep(w, stmt, stmt.exp(), stmt.declList(), stmt.stmtList(), step);
+        }
+        if (node instanceof WhileStmtNode) {
+            WhileStmtNode stmt = (WhileStmtNode)node;
+            return blockStep(w, stmt, stmt.exp(), stmt.declList(), stmt.stmtList(), step);
+        }
+        if (!(node instanceof IfElseStmtNode)) {
+            node.accept(this);
+            return false;
+        }
+
+        IfElseStmtNode stmt = (IfElseStmtNode)node;
+        switch (step) {
+        case 0:
+            boolean check = visitCondition(stmt, stmt.exp());
+            mySymTab.addScope();
+            stmt.thenDeclList().accept(this);
+            w.setArg(check ? CHECK : 0);
+            w.visit(stmt.thenStmtList(), w.arg(), null);
+            return true;
+        case 1:
+            // whether the then part was correct is kept (as CORRECT)
+            boolean thenCorrect = myListCorrect;
+            removeScope();
+
+            mySymTab.addScope();
+            stmt.elseDeclList().accept(this);
+            w.visit(stmt.elseStmtList(), thenCorrect ? w.arg() : 0, null);
+            w.setArg(thenCorrect ? CORRECT : 0);
+            return true;
+        default:
+            removeScope();
+
+            if ((w.arg() & CORRECT) == 0 || !myListCorrect) {
+                myStmtsCorrect = false;
+            }
+            return false;
+        }
+    }
+
+    /**
+     * blockStep
+     * Step step of the walk w over stmt, an if or a while whose condition
+     * is exp and whose body is decls and stmts.
+     */
+    private boolean blockStep(Walk w, StmtNode stmt, ExpNode exp,
+                              DeclListNode decls, StmtListNode stmts, int step) {
+        if (step == 0) {
+            boolean check = visitCondition(stmt, exp);
+            mySymTab.addScope();
+            decls.accept(this);
+            w.visit(stmts, check ? CHECK : 0, null);
+            return true;
+        }
+        if (!myListCorrect) {
+            myStmtsCorrect = false;
+        }
+        removeScope();
+        return false;
+    }
+
+    private boolean checking() {
+        return myChecking && !myDeclErrors;
+    }
+
+    /**
+     * Note whether name analysis has reported an error since ErrMsg's
+     * error count was errors (the type errors held back are not counted).
+     */
+    private void noteErrors(int errors) {
+        if (ErrMsg.errorCount() > errors) {
+            myDeclErrors = true;
+        }
+    }
+
+    private void removeScope() {
+        try {
+            mySymTab.removeScope();
+        } catch (EmptySymTableException ex) {
+            System.err.println("Unexpected EmptySymTableException " +
+                               " in AnalysisPass");
+            System.exit(-1);
+        }
+    }
+}
@@ -0,0 +1,603 @@
+import java.io.IOException;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+// **********************************************************************
+// The AstArena class stores the top-level declarations of a program in a
+// few primitive arrays instead of one object per node and per list
+// element.  A node is an int: the index of its kind, its value (the int
+// of an int literal, the name id of an identifier, the index of a string
+// literal's text, the size of a variable declaration) and its link.
+//
+// Nodes are added in post order: children before their parent, and each
+// subtree a consecutive run ending with its root.  The link of a node
+// with a line and character number (a literal or an identifier, which
+// have no children) is the index of its packed position (line in the
+// high 32 bits, character in the low ones); the link of any other node
+// is the first node of its subtree.  So the last child of node n is
+// n - 1, the one before it ends just before the subtree of n - 1 starts,
+// and so on back to the start of n's own subtree.  A missing child (the
+// expression of a bare return) is simply not there.
+//
+// An arena is a DeclSink: each declaration the CUP parser hands it is
+// encoded (see ASTnode.encode) and its nodes can then be dropped; the
+// RDParser adds the nodes of a declaration straight to the arena as it
+// parses them, without building AST objects at all.  Either way a
+// parsed program takes a few large arrays, less than half the heap of
+// its AST objects, instead of millions of small objects for the garbage
+// collector to trace.  The accessors below (kind, value, kids ...) read
+// the nodes directly.  The analysis passes and code generation work on
+// AST objects, so decl(i) builds the nodes of one declaration from the
+// arena; P6 -arena builds, compiles and drops them one declaration at a
+// time (see StreamingCompiler).
+// **********************************************************************
+
+public class AstArena implements DeclSink {
+    // node kinds
+    static final byte DECL_LIST = 1;
+    static final byte FORMALS_LIST = 2;
+    static final byte FN_BODY = 3;
+    static final byte STMT_LIST = 4;
+    static final byte EXP_LIST = 5;
+    static final byte VAR_DECL = 6;
+    static final byte FN_DECL = 7;
+    static final byte FORMAL_DECL = 8;
+    static final byte STRUCT_DECL = 9;
+    static final byte INT_TYPE = 10;
+    static final byte BOOL_TYPE = 11;
+    static final byte VOID_TYPE = 12;
+    static final byte STRUCT_TYPE = 13;
+    static final byte ASSIGN_STMT = 14;
+    static final byte POST_INC_STMT = 15;
+    static final byte POST_DEC_STMT = 16;
+    static final byte READ_STMT = 17;
+    static final byte WRITE_STMT = 18;
+    static final byte IF_STMT = 19;
+    static final byte IF_ELSE_STMT = 20;
+    static final byte WHILE_STMT = 21;
+    static final byte CALL_STMT = 22;
+    static final byte RETURN_STMT = 23;
+    static final byte INT_LIT = 24;
+    static final byte STRING_LIT = 25;
+    static final byte TRUE = 26;
+    static final byte FALSE = 27;
+    static final byte ID = 28;
+    static final byte DOT_ACCESS = 29;
+    static final byte ASSIGN = 30;
+    static final byte CALL_EXP = 31;
+    static final byte UNARY_MINUS = 32;
+    static final byte NOT = 33;
+    static final byte PLUS = 34;
+    static final byte MINUS = 35;
+    static final byte TIMES = 36;
+    static final byte DIVIDE = 37;
+    static final byte AND = 38;
+    static final byte OR = 39;
+    static final byte EQUALS = 40;
+    static final byte NOT_EQUALS = 41;
+    static final byte LESS = 42;
+    static final byte GREATER = 43;
+    static final byte LESS_EQ = 44;
+    static final byte GREATER_EQ = 45;
+
+    private byte[] myKinds = new byte[1024];
+    private int[] myValues = new int[1024];
+    private int[] myLinks = new int[1024];
+    private int myCount = 0;
+
+    private long[] myPositions = new long[1024];  // Spans
+    private int myPositionCount = 0;
+
+    private String[] myStrings = new String[16];
+    private int myStringCount = 0;
+
+    // the root node of each top-level declaration
+    private int[] myDecls = new int[16];
+    private int myDeclCount = 0;
+
+    // the subtrees build has built and not yet given to their parent,
+    // with the first node of each; the node being built takes those from
+    // myKidsFrom up to myKidsTo
+    private ASTnode[] myBuilt = new ASTnode[64];
+    private int[] myBuiltStarts = new int[64];
+    private int myKidsFrom;
+    private int myKidsTo;
+
+    // the counts saved by mark(), three per mark
+    private int[] myMarks = new int[48];
+    private int myMarkCount = 0;
+
+    /**
+     * decl
+     * Encode a top-level declaration and add it to the end of the arena.
+     */
+    public void decl(DeclNode decl) {
+        addDecl(decl.encode(this));
+    }
+
+    /**
+     * Add the top-level declaration whose root is node root, which has
+     * just been added (see RDParser, which adds the nodes as it parses).
+     */
+    void addDecl(int root) {
+        if (myDeclCount == myDecls.length) {
+            myDecls = Arrays.copyOf(myDecls, Math.max(16, 2 * myDeclCount));
+        }
+        myDecls[myDeclCount++] = root;
+    }
+
+    /**
+     * Give back the room the arrays have grown beyond what is used.
+     */
+    public void trim() {
+        myKinds = Arrays.copyOf(myKinds, myCount);
+        myValues = Arrays.copyOf(myValues, myCount);
+        myLinks = Arrays.copyOf(myLinks, myCount);
+        myPositions = Arrays.copyOf(myPositions, myPositionCount);
+        myStrings = Arrays.copyOf(myStrings, myStringCount);
+        myDecls = Arrays.copyOf(myDecls, myDeclCount);
+    }
+
+    public int declCount() {
+        return myDeclCount;
+    }
+
+    /**
+     * Return the root node of top-level declaration i.
+     */
+    public int declRoot(int i) {
+        return myDecls[i];
+    }
+
+    /**
+     * Return the number of nodes, which is also the index the next node
+     * added gets.
+     */
+    public int size() {
+        return myCount;
+    }
+
+    public int kind(int node) {
+        return myKinds[node];
+    }
+
+    public int value(int node) {
+        return myValues[node];
+    }
+
+    public int lineNum(int node) {
+        return hasPosition(myKinds[node]) ? Span.lineNum(myPositions[myLinks[node]]) : 0;
+    }
+
+    public int charNum(int node) {
+        return hasPosition(myKinds[node]) ? Span.charNum(myPositions[myLinks[node]]) : 0;
+    }
+
+    /**
+     * Return the text of a string literal node (with its quotes).
+     */
+    public String string(int node) {
+        return myStrings[myValues[node]];
+    }
+
+    /**
+     * Return the children of node, in order.  A missing child (the
+     * expression of a bare return) is simply not there.
+     */
+    public int[] kids(int node) {
+        int start = subtreeStart(node);
+        int count = 0;
+        for (int kid = node - 1; kid >= start; kid = subtreeStart(kid) - 1) {
+            count++;
+        }
+        int[] kids = new int[count];
+        for (int kid = node - 1; kid >= start; kid = subtreeStart(kid) - 1) {
+            kids[--count] = kid;
+        }
+        return kids;
+    }
+
+    /**
+     * Return the first node of the subtree whose root is node.
+     */
+    private int subtreeStart(int node) {
+        return hasPosition(myKinds[node]) ? node : myLinks[node];
+    }
+
+    private static boolean hasPosition(byte kind) {
+        return kind >= INT_LIT && kind <= ID;
+    }
+
+    // **********************************************************************
+    // adding nodes (called by the encode methods in ast.java)
+    // **********************************************************************
+
+    /**
+     * Add a node whose children (if any) are the nodes added since size()
+     * returned start.
+     */
+    int node(byte kind, int value, int start) {
+        int node = add(kind, value);
+        myLinks[node] = start;
+        return node;
+    }
+
+    /**
+     * Add a node that has a position (a Span) and no children.
+     */
+    int leaf(byte kind, int value, long span) {
+        if (myPositionCount == myPositions.length) {
+            myPositions = Arrays.copyOf(myPositions, Math.max(16, 2 * myPositionCount));
+        }
+        myPositions[myPositionCount] = span;
+        int node = add(kind, value);
+        myLinks[node] = myPositionCount++;
+        return node;
+    }
+
+    int string(String text) {
+        if (myStringCount == myStrings.length) {
+            myStrings = Arrays.copyOf(myStrings, Math.max(16, 2 * myStringCount));
+        }
+        myStrings[myStringCount] = text;
+        return myStringCount++;
+    }
+
+    /**
+     * Remember how many nodes, positions and string literals there are;
+     * rollback drops those added since, release forgets the mark.  Marks
+     * nest: rolling back or releasing one also forgets those made after
+     * it.
+     */
+    int mark() {
+        if (myMarkCount + 3 > myMarks.length) {
+            myMarks = Arrays.copyOf(myMarks, 2 * myMarks.length);
+        }
+        int mark = myMarkCount;
+        myMarks[mark] = myCount;
+        myMarks[mark + 1] = myPositionCount;
+        myMarks[mark + 2] = myStringCount;
+        myMarkCount += 3;
+        return mark;
+    }
+
+    void rollback(int mark) {
+        myCount = myMarks[mark];
+        myPositionCount = myMarks[mark + 1];
+        Arrays.fill(myStrings, myMarks[mark + 2], myStringCount, null);
+        myStringCount = myMarks[mark + 2];
+        myMarkCount = mark;
+    }
+
+    void release(int mark) {
+        myMarkCount = mark;
+    }
+
+    private int add(byte kind, int value) {
+        if (myCount == myKinds.length) {
+            int capacity = Math.max(1024, 2 * myCount);
+            myKinds = Arrays.copyOf(myKinds, capacity);
+            myValues = Arrays.copyOf(myValues, capacity);
+            myLinks = Arrays.copyOf(myLinks, capacity);
+        }
+        myKinds[myCount] = kind;
+        myValues[myCount] = value;
+        return myCount++;
+    }
+
+    // **********************************************************************
+    // saving and loading (for AstCache)
+    // **********************************************************************
+
+    /**
+     * Return the arena in the binary form fromBytes reads:
+     *
+     *     int    number of nodes, positions, declarations, strings, names
+     *     kinds  one byte each, padded to a multiple of 4
+     *     ints   values, links, then the declaration roots
+     *     longs  positions
+     *     the string literals, then the names: int length, UTF-8 bytes
+     *
+     * Name ids are only good for the run that made them, so an
+     * identifier's value is written as the index of its spelling in the
+     * names.
+     */
+    ByteBuffer toBytes() {
+        int[] values = Arrays.copyOf(myValues, myCount);
+        int[] index = new int[NamePool.SHARED.size()];
+        Arrays.fill(index, -1);
+        List<byte[]> names = new ArrayList<byte[]>();
+        for (int n = 0; n < myCount; n++) {
+            if (myKinds[n] == ID) {
+                int id = values[n];
+                if (index[id] < 0) {
+                    index[id] = names.size();
+                    names.add(NamePool.SHARED.name(id).getBytes(StandardCharsets.UTF_8));
+                }
+                values[n] = index[id];
+            }
+        }
+        List<byte[]> strings = new ArrayList<byte[]>();
+        for (int i = 0; i < myStringCount; i++) {
+            strings.add(myStrings[i].getBytes(StandardCharsets.UTF_8));
+        }
+
+        int size = 5 * 4 + padded(myCount) + 4 * (2 * myCount + myDeclCount) +
+            8 * myPositionCount + textSize(strings) + textSize(names);
+        ByteBuffer buf = ByteBuffer.allocate(size);
+        buf.putInt(myCount).putInt(myPositionCount).putInt(myDeclCount)
+           .putInt(myStringCount).putInt(names.size());
+        buf.put(myKinds, 0, myCount);
+        buf.position(buf.position() + padded(myCount) - myCount);
+        buf.asIntBuffer().put(values, 0, myCount);
+        buf.position(buf.position() + 4 * myCount);
+        buf.asIntBuffer().put(myLinks, 0, myCount);
+        buf.position(buf.position() + 4 * myCount);
+        buf.asIntBuffer().put(myDecls, 0, myDeclCount);
+        buf.position(buf.position() + 4 * myDeclCount);
+        buf.asLongBuffer().put(myPositions, 0, myPositionCount);
+        buf.position(buf.position() + 8 * myPositionCount);
+        putTexts(buf, strings);
+        putTexts(buf, names);
+        buf.flip();
+        return buf;
+    }
+
+    /**
+     * Read an arena written by toBytes, interning its names in
+     * NamePool.SHARED.
+     */
+    static AstArena fromBytes(ByteBuffer buf) throws IOException {
+        try {
+            AstArena arena = new AstArena();
+            int count = buf.getInt();
+            int positionCount = buf.getInt();
+            int declCount = buf.getInt();
+            int stringCount = buf.getInt();
+            int nameCount = buf.getInt();
+            arena.myKinds = new byte[count];
+            arena.myValues = new int[count];
+            arena.myLinks = new int[count];
+            arena.myPositions = new long[positionCount];
+            arena.myDecls = new int[declCount];
+            arena.myStrings = new String[stringCount];
+
+            buf.get(arena.myKinds);
+            buf.position(buf.position() + padded(count) - count);
+            buf.asIntBuffer().get(arena.myValues);
+            buf.position(buf.position() + 4 * count);
+            buf.asIntBuffer().get(arena.myLinks);
+            buf.position(buf.position() + 4 * count);
+            buf.asIntBuffer().get(arena.myDecls);
+            buf.position(buf.position() + 4 * declCount);
+            buf.asLongBuffer().get(arena.myPositions);
+            buf.position(buf.position() + 8 * positionCount);
+            for (int i = 0; i < stringCount; i++) {
+                arena.myStrings[i] = getText(buf);
+            }
+            int[] ids = new int[nameCount];
+            for (int i = 0; i < nameCount; i++) {
+                ids[i] = NamePool.SHARED.intern(getText(buf));
+            }
+            for (int n = 0; n < count; n++) {
+                if (arena.myKinds[n] == ID) {
+                    arena.myValues[n] = ids[arena.myValues[n]];
+                }
+            }
+            arena.myCount = count;
+            arena.myPositionCount = positionCount;
+            arena.myDeclCount = declCount;
+            arena.myStringCount = stringCount;
+            return arena;
+        } catch (RuntimeException ex) {
+            // a BufferUnderflowException, NegativeArraySizeException, ...
+            throw new IOException("bad AST data: " + ex);
+        }
+    }
+
+    private static int padded(int n) {
+        return (n + 3) & ~3;
+    }
+
+    private static int textSize(List<byte[]> texts) {
+        int size = 0;
+        for (byte[] text : texts) {
+            size += 4 + text.length;
+        }
+        return size;
+    }
+
+    private static void putTexts(ByteBuffer buf, List<byte[]> texts) {
+        for (byte[] text : texts) {
+            buf.putInt(text.length).put(text);
+        }
+    }
+
+    private static String getText(ByteBuffer buf) {
+        byte[] text = new byte[buf.getInt()];
+        buf.get(text);
+        return new String(text, StandardCharsets.UTF_8);
+    }
+
+    // **********************************************************************
+    // building AST objects
+    // **********************************************************************
+
+    /**
+     * Build the nodes of top-level declaration i.
+     */
+    public DeclNode decl(int i) {
+        return (DeclNode)build(myDecls[i]);
+    }
+
+    /**
+     * Build the nodes of the declaration whose root is node root.
+     */
+    DeclNode buildDecl(int root) {
+        return (DeclNode)build(root);
+    }
+
+    /**
+     * Build the nodes of the whole program.
+     */
+    public ProgramNode program() {
+        List<DeclNode> decls = new LinkedList<DeclNode>();
+        for (int i = 0; i < myDeclCount; i++) {
+            decls.add(decl(i));
+        }
+        return new ProgramNode(new DeclListNode(decls));
+    }
+
+    /**
+     * Build the nodes of the subtree whose root is node root, going
+     * through them in order: each node is built from the subtrees just
+     * built before it that start inside its own.
+     */
+    private ASTnode build(int root) {
+        int depth = 0;
+        for (int n = subtreeStart(root); n <= root; n++) {
+            int start = subtreeStart(n);
+            int kids = depth;
+            while (kids > 0 && myBuiltStarts[kids - 1] >= start) {
+                kids--;
+            }
+            myKidsFrom = kids;
+            myKidsTo = depth;
+            ASTnode node = buildNode(n);
+            Arrays.fill(myBuilt, kids, depth, null);
+            if (kids == myBuilt.length) {
+                myBuilt = Arrays.copyOf(myBuilt, 2 * kids);
+                myBuiltStarts = Arrays.copyOf(myBuiltStarts, 2 * kids);
+            }
+            myBuilt[kids] = node;
+            myBuiltStarts[kids] = start;
+            depth = kids + 1;
+        }
+        ASTnode node = myBuilt[0];
+        myBuilt[0] = null;
+        return node;
+    }
+
+    /**
+     * Build node n, whose children are myBuilt[myKidsFrom] up to (not
+     * including) myBuilt[myKidsTo].
+     */
+    private ASTnode buildNode(int n) {
+        switch (myKinds[n]) {
+        case DECL_LIST:
+            return new DeclListNode(this.<DeclNode>buildList());
+        case FORMALS_LIST:
+            return new FormalsListNode(this.<FormalDeclNode>buildList());
+        case FN_BODY:
+            return new FnBodyNode((DeclListNode)kidNode(0), (StmtListNode)kidNode(1));
+        case STMT_LIST:
+            return new StmtListNode(this.<StmtNode>buildList());
+        case EXP_LIST:
+            return new ExpListNode(this.<ExpNode>buildList());
+        case VAR_DECL:
+            return new VarDeclNode((TypeNode)kidNode(0), (IdNode)kidNode(1),
+                                   myValues[n]);
+        case FN_DECL:
+            return new FnDeclNode((TypeNode)kidNode(0), (IdNode)kidNode(1),
+                                  (FormalsListNode)kidNode(2),
+                                  (FnBodyNode)kidNode(3));
+        case FORMAL_DECL:
+            return new FormalDeclNode((TypeNode)kidNode(0), (IdNode)kidNode(1));
+        case STRUCT_DECL:
+            return new StructDeclNode((IdNode)kidNode(0), (DeclListNode)kidNode(1));
+        case INT_TYPE:
+            return new IntNode();
+        case BOOL_TYPE:
+            return new BoolNode();
+        case VOID_TYPE:
+            return new VoidNode();
+        case STRUCT_TYPE:
+            return new StructNode((IdNode)kidNode(0));
+        case ASSIGN_STMT:
+            return new AssignStmtNode((AssignNode)kidNode(0));
+        case POST_INC_STMT:
+            return new PostIncStmtNode((ExpNode)kidNode(0));
+        case POST_DEC_STMT:
+            return new PostDecStmtNode((ExpNode)kidNode(0));
+        case READ_STMT:
+            return new ReadStmtNode((ExpNode)kidNode(0));
+        case WRITE_STMT:
+            return new WriteStmtNode((ExpNode)kidNode(0));
+        case IF_STMT:
+            return new IfStmtNode((ExpNode)kidNode(0), (DeclListNode)kidNode(1),
+                                  (StmtListNode)kidNode(2));
+        case IF_ELSE_STMT:
+            return new IfElseStmtNode((ExpNode)kidNode(0),
+                                      (DeclListNode)kidNode(1),
+                                      (StmtListNode)kidNode(2),
+                                      (DeclListNode)kidNode(3),
+                                      (StmtListNode)kidNode(4));
+        case WHILE_STMT:
+            return new WhileStmtNode((ExpNode)kidNode(0), (DeclListNode)kidNode(1),
+                                     (StmtListNode)kidNode(2));
+        case CALL_STMT:
+            return new CallStmtNode((CallExpNode)kidNode(0));
+        case RETURN_STMT:
+            return new ReturnStmtNode((ExpNode)kidNode(0));
+        case INT_LIT:
+            return new IntLitNode(lineNum(n), charNum(n), myValues[n]);
+        case STRING_LIT:
+            return new StringLitNode(lineNum(n), charNum(n), string(n));
+        case TRUE:
+            return new TrueNode(lineNum(n), charNum(n));
+        case FALSE:
+            return new FalseNode(lineNum(n), charNum(n));
+        case ID:
+            return new IdNode(lineNum(n), charNum(n), myValues[n]);
+        case DOT_ACCESS:
+            return new DotAccessExpNode((ExpNode)kidNode(0), (IdNode)kidNode(1));
+        case ASSIGN:
+            return new AssignNode((ExpNode)kidNode(0), (ExpNode)kidNode(1));
+        case CALL_EXP:
+            return new CallExpNode((IdNode)kidNode(0), (ExpListNode)kidNode(1));
+        case UNARY_MINUS:
+            return new UnaryMinusNode((ExpNode)kidNode(0));
+        case NOT:
+            return new NotNode((ExpNode)kidNode(0));
+        default:
+            return buildBinary(n, (ExpNode)kidNode(0), (ExpNode)kidNode(1));
+        }
+    }
+
+    private ExpNode buildBinary(int n, ExpNode exp1, ExpNode exp2) {
+        switch (myKinds[n]) {
+        case PLUS:       return new PlusNode(exp1, exp2);
+        case MINUS:      return new MinusNode(exp1, exp2);
+        case TIMES:      return new TimesNode(exp1, exp2);
+        case DIVIDE:     return new DivideNode(exp1, exp2);
+        case AND:        return new AndNode(exp1, exp2);
+        case OR:         return new OrNode(exp1, exp2);
+        case EQUALS:     return new EqualsNode(exp1, exp2);
+        case NOT_EQUALS: return new NotEqualsNode(exp1, exp2);
+        case LESS:       return new LessNode(exp1, exp2);
+        case GREATER:    return new GreaterNode(exp1, exp2);
+        case LESS_EQ:    return new LessEqNode(exp1, exp2);
+        case GREATER_EQ: return new GreaterEqNode(exp1, exp2);
+        default:
+            throw new IllegalStateException("bad node kind " + myKinds[n] +
+                                            " at node " + n);
+        }
+    }
+
+    private ASTnode kidNode(int k) {
+        return myKidsFrom + k < myKidsTo ? myBuilt[myKidsFrom + k] : null;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T extends ASTnode> List<T> buildList() {
+        List<T> list = new LinkedList<T>();
+        for (int k = myKidsFrom; k < myKidsTo; k++) {
+            list.add((T)myBuilt[k]);
+        }
+        return list;
+    }
+}
@@ -0,0 +1,130 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.FileChannel;
+import java.nio.file.*;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+// **********************************************************************
+// The AstCache class saves the parsed program of a source file in a
+// binary .cfast file and loads it back on later compiles, so that a file
+// that is compiled again unchanged is not scanned and parsed again (P6
+// -cache).
+//
+// The cache file for foo.cf is foo.cfast, next to it (for a source not
+// named .cf, the name with .cfast added).  It holds
+//
+//     int       MAGIC
+//     int       VERSION
+//     32 bytes  SHA-256 of the source
+//     the program's AstArena (see AstArena.toBytes)
+//
+// A cache file whose magic, version or hash does not match is ignored,
+// and replaced once the source has been parsed.  VERSION must change
+// whenever the format or what the parser builds does.  The file is
+// written under a temporary name and renamed into place, so a compile
+// running at the same time never reads half of it; failing to read or
+// write it is not an error, the source is just parsed.
+//
+// Only the parse is cached.  The symbols, the IdNode links to them and
+// the struct field tables are made by name analysis, which P6 runs on the
+// declarations built from the loaded arena just as it does after a parse;
+// it costs a small part of what scanning and parsing do.
+// **********************************************************************
+
+public class AstCache {
+    static final int MAGIC = 0x43464153;  // "CFAS"
+    static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 8 + 32;
+
+    private File myCacheFile;
+    private byte[] myHash;  // null if the source could not be read
+
+    public AstCache(String sourceFile) {
+        String name = sourceFile.endsWith(".cf")
+            ? sourceFile.substring(0, sourceFile.length() - 3) : sourceFile;
+        myCacheFile = new File(name + ".cfast");
+        try {
+            myHash = hash(sourceFile);
+        } catch (IOException ex) {
+            myHash = null;
+        }
+    }
+
+    /**
+     * Return the cached program if the cache file is there and was made
+     * from the source as it is now, otherwise null.
+     */
+    public AstArena load() {
+        if (myHash == null || !myCacheFile.isFile()) {
+            return null;
+        }
+        try {
+            ByteBuffer buf = ByteBuffer.wrap(Files.readAllBytes(myCacheFile.toPath()));
+            if (buf.remaining() < HEADER_SIZE || buf.getInt() != MAGIC ||
+                buf.getInt() != VERSION) {
+                return null;
+            }
+            byte[] hash = new byte[32];
+            buf.get(hash);
+            if (!Arrays.equals(hash, myHash)) {
+                return null;
+            }
+            return AstArena.fromBytes(buf);
+        } catch (IOException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * Save program, which was parsed from the source, to the cache file.
+     */
+    public void save(AstArena program) {
+        if (myHash == null) {
+            return;
+        }
+        File temp = null;
+        try {
+            File dir = myCacheFile.getAbsoluteFile().getParentFile();
+            temp = File.createTempFile(myCacheFile.getName(), ".tmp", dir);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).put(myHash).flip();
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                FileChannel channel = out.getChannel();
+                ByteBuffer body = program.toBytes();
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                while (body.hasRemaining()) {
+                    channel.write(body);
+                }
+            } finally {
+                out.close();
+            }
+            Files.move(temp.toPath(), myCacheFile.toPath(),
+                       StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            temp = null;
+        } catch (IOException ex) {
+            // no cache this time
+        } finally {
+            if (temp != null) {
+                temp.delete();
+            }
+        }
+    }
+
+    private static byte[] hash(String sourceFile) throws IOException {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IOException(ex.getMessage());
+        }
+        digest.update(MappedScanner.map(sourceFile));
+        return digest.digest();
+    }
+}
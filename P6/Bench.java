@@ -0,0 +1,211 @@
+import java.io.*;
+import java.lang.management.*;
+import java.util.*;
+
+// **********************************************************************
+// The Bench class holds what LexBench and ParseBench share: their
+// command line, the timed runs and the table they print.
+//
+// The command line is
+//    -<what> C,...   which of the benchmark's choices to run (default:
+//                    all of them)
+//    -warmup N       untimed runs before measuring (default 3)
+//    -runs N         timed runs, at least 1 (default 5)
+//    <file> ...      the inputs
+//
+// A run does one pass over the input after another until at least
+// MIN_BYTES have been gone through, so that small inputs still give
+// stable numbers, and the median run is reported as tokens per second,
+// MB per second and bytes allocated per token.  Allocation is counted
+// with the JVM's per-thread allocation counters, summed over all live
+// threads (so worker threads are included).  Warnings and errors are
+// thrown away while measuring.
+// **********************************************************************
+
+class Bench {
+    static final long MIN_BYTES = 16L << 20;
+
+    private static com.sun.management.ThreadMXBean threads =
+        (com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+
+    private final String myName;
+    private final String myWhat;
+    private List<String> myChoices;
+    private List<String> myFiles = new ArrayList<String>();
+    private int myWarmup = 3;
+    private int myRuns = 5;
+
+    /**
+     * Parse the command line of the benchmark called name, whose choices
+     * are picked with -what; print the usage and exit if it is wrong.
+     */
+    Bench(String name, String what, String[] choices, String[] args) {
+        myName = name;
+        myWhat = what;
+        myChoices = Arrays.asList(choices);
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                myFiles.add(arg);
+            } else if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            } else if (arg.equals("-" + what)) {
+                myChoices = Arrays.asList(args[++i].split(","));
+                for (String c : myChoices) {
+                    if (!Arrays.asList(choices).contains(c)) {
+                        usage("unknown " + what + " " + c);
+                    }
+                }
+            } else if (arg.equals("-warmup")) {
+                myWarmup = number(arg, args[++i], 0);
+            } else if (arg.equals("-runs")) {
+                myRuns = number(arg, args[++i], 1);
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (myFiles.isEmpty()) {
+            usage("please supply the input files");
+        }
+    }
+
+    /**
+     * Return the choices to run, in the order given.
+     */
+    List<String> choices() {
+        return myChoices;
+    }
+
+    /**
+     * Return the input files, in the order given.
+     */
+    List<String> files() {
+        return myFiles;
+    }
+
+    /**
+     * Print the heading of the table.
+     */
+    void printHeader() {
+        System.out.printf("%-10s %-28s %10s %12s %10s %8s %10s%n", myWhat,
+                          "file", "MB", "tokens", "Mtok/s", "MB/s", "B/token");
+    }
+
+    /**
+     * Time pass over file, which is size bytes long, and print a line of
+     * the table for it.
+     */
+    void measure(String choice, String file, long size, Pass pass)
+    throws Exception {
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new NullOutputStream()));
+        Result[] results = new Result[myRuns];
+        try {
+            for (int r = 0; r < myWarmup; r++) {
+                run(size, pass);
+            }
+            for (int r = 0; r < myRuns; r++) {
+                results[r] = run(size, pass);
+            }
+        } finally {
+            System.setErr(err);
+        }
+        Arrays.sort(results);
+        Result median = results[myRuns / 2];
+        System.out.printf("%-10s %-28s %10.2f %12d %10.2f %8.1f %10.2f%n",
+                          choice, new File(file).getName(), size / 1e6,
+                          median.tokens / median.passes,
+                          median.tokens / median.seconds / 1e6,
+                          median.bytes / median.seconds / 1e6,
+                          median.allocated / (double)median.tokens);
+    }
+
+    /**
+     * Do pass after pass of an input of size bytes until at least
+     * MIN_BYTES have been gone through.
+     */
+    private static Result run(long size, Pass pass) throws Exception {
+        Result result = new Result();
+        long allocated = allocatedBytes();
+        long start = System.nanoTime();
+        do {
+            result.tokens += pass.run();
+            result.bytes += size;
+            result.passes++;
+        } while (result.bytes < MIN_BYTES);
+        result.seconds = (System.nanoTime() - start) / 1e9;
+        result.allocated = allocatedBytes() - allocated;
+        return result;
+    }
+
+    /**
+     * Return the number of bytes allocated so far by all live threads.
+     */
+    static long allocatedBytes() {
+        long total = 0;
+        for (long bytes : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+            if (bytes > 0) {
+                total += bytes;
+            }
+        }
+        return total;
+    }
+
+    private int number(String option, String value, int min) {
+        int n = 0;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("bad number for " + option + ": " + value);
+        }
+        if (n < min) {
+            usage(option + " must be at least " + min);
+        }
+        return n;
+    }
+
+    private void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java " + myName + " [-" + myWhat + " " +
+                           myWhat.substring(0, 1).toUpperCase() + ",...] " +
+                           "[-warmup N] [-runs N] <file> ...");
+        System.exit(-1);
+    }
+
+    /**
+     * Pass
+     * One pass over an input; returns the number of tokens it went
+     * through.
+     */
+    interface Pass {
+        long run() throws Exception;
+    }
+
+    /**
+     * Result
+     * What one timed run did; runs are ordered by throughput.
+     */
+    private static class Result implements Comparable<Result> {
+        long tokens;
+        long bytes;
+        long passes;
+        double seconds;
+        long allocated;
+
+        public int compareTo(Result other) {
+            return Double.compare(bytes / seconds, other.bytes / other.seconds);
+        }
+    }
+
+    /**
+     * NullOutputStream
+     * Throws away everything written to it.
+     */
+    static class NullOutputStream extends OutputStream {
+        public void write(int b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+        }
+    }
+}
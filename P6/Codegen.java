@@ -251,4 +251,12 @@ public class Codegen {
         String tmp = ".L" + k;
         return(tmp);
     }
+
+    // **********************************************************************
+    // Start the labels at L0 again, for another compile in the same run
+    // (see P6 -watch)
+    // **********************************************************************
+    public static void resetLabels() {
+        currLabel = 0;
+    }
 }
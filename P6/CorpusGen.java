@@ -0,0 +1,240 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The CorpusGen class writes a generated CFlat program of (about) a given
+// size, for benchmarking the scanners and the rest of the compiler.
+//
+// Usage: java CorpusGen [options] <outfile>
+//    -size N        size of the program in bytes; N may end in K, M or G
+//                   (default 1M)
+//    -literals P    fraction (0..1) of the operands in expressions that
+//                   are int literals rather than identifiers (default 0.3)
+//    -strings P     fraction of statements that write a string literal
+//                   (default 0.05)
+//    -comments P    chance (0..1) of a comment line before each statement
+//                   (default 0.1)
+//    -idlen N       length of the identifiers (default 6)
+//    -seed N        seed for the random choices (default 1)
+//
+// The program is correct CFlat: a few globals, then functions that
+// declare some int locals and use them in assignments, ifs, whiles,
+// writes and calls of earlier functions, and finally main.  The same
+// options always give the same program.
+// **********************************************************************
+
+public class CorpusGen {
+    private static final int GLOBALS = 16;
+    private static final int LOCALS = 8;
+    private static final int STATEMENTS = 24;
+
+    private double myLiterals = 0.3;
+    private double myStrings = 0.05;
+    private double myComments = 0.1;
+    private int myIdLength = 6;
+    private Random myRandom = new Random(1);
+
+    private Writer myOut;
+    private long mySize;      // bytes written so far
+    private int myFunctions;  // functions written so far
+
+    public static void main(String[] args) throws IOException {
+        CorpusGen gen = new CorpusGen();
+        long size = 1 << 20;
+        String outFile = null;
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                outFile = arg;
+            } else if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            } else if (arg.equals("-size")) {
+                size = parseSize(args[++i]);
+            } else if (arg.equals("-literals")) {
+                gen.myLiterals = Double.parseDouble(args[++i]);
+            } else if (arg.equals("-strings")) {
+                gen.myStrings = Double.parseDouble(args[++i]);
+            } else if (arg.equals("-comments")) {
+                gen.myComments = Double.parseDouble(args[++i]);
+            } else if (arg.equals("-idlen")) {
+                gen.myIdLength = Integer.parseInt(args[++i]);
+            } else if (arg.equals("-seed")) {
+                gen.myRandom = new Random(Long.parseLong(args[++i]));
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (outFile == null) {
+            usage("please supply the name of the file to write");
+        }
+
+        Writer out = new BufferedWriter(new FileWriter(outFile), 1 << 16);
+        gen.write(out, size);
+        out.close();
+    }
+
+    /**
+     * Write a program of about size bytes to out.
+     */
+    public void write(Writer out, long size) throws IOException {
+        myOut = out;
+        mySize = 0;
+        myFunctions = 0;
+
+        for (int g = 0; g < GLOBALS; g++) {
+            line("int " + name("g", g) + ";");
+        }
+        line("");
+        while (mySize < size) {
+            function();
+        }
+        line("void main() {");
+        line("    " + name("f", myFunctions - 1) + "(1);");
+        line("}");
+    }
+
+    /**
+     * Write one function.  Function k takes one parameter and may call
+     * any function before it.
+     */
+    private void function() throws IOException {
+        int k = myFunctions++;
+        comment("");
+        line("int " + name("f", k) + "(int " + name("p", 0) + ") {");
+        for (int v = 0; v < LOCALS; v++) {
+            line("    int " + name("v", v) + ";");
+        }
+        for (int s = 0; s < STATEMENTS; s++) {
+            comment("    ");
+            statement(k, "    ");
+        }
+        line("    return " + operand() + ";");
+        line("}");
+        line("");
+    }
+
+    private void statement(int function, String indent) throws IOException {
+        if (myRandom.nextDouble() < myStrings) {
+            line(indent + "cout << \"" + text() + "\";");
+            return;
+        }
+        int kind = myRandom.nextInt(8);
+        switch (kind) {
+        case 0:
+            line(indent + "if (" + operand() + " < " + operand() + ") {");
+            line(indent + "    " + assignment());
+            line(indent + "} else {");
+            line(indent + "    " + local() + "++;");
+            line(indent + "}");
+            break;
+        case 1:
+            line(indent + "while (" + local() + " > " + operand() + ") {");
+            line(indent + "    " + local() + "--;");
+            line(indent + "}");
+            break;
+        case 2:
+        case 3:
+            // a call, unless there is no function to call yet
+            if (kind == 2 && function > 0) {
+                line(indent + local() + " = " +
+                     name("f", myRandom.nextInt(function)) + "(" + expression(1) + ");");
+            } else {
+                line(indent + "cout << " + expression(2) + ";");
+            }
+            break;
+        default:
+            line(indent + assignment());
+        }
+    }
+
+    private String assignment() {
+        return local() + " = " + expression(3) + ";";
+    }
+
+    /**
+     * Return an int expression with up to depth levels of operators.
+     */
+    private String expression(int depth) {
+        if (depth == 0 || myRandom.nextInt(3) == 0) {
+            return operand();
+        }
+        char op = "+-*/".charAt(myRandom.nextInt(4));
+        String exp = expression(depth - 1) + " " + op + " " + expression(depth - 1);
+        return depth > 1 && myRandom.nextBoolean() ? "(" + exp + ")" : exp;
+    }
+
+    private String operand() {
+        if (myRandom.nextDouble() < myLiterals) {
+            return Integer.toString(myRandom.nextInt(1000));
+        }
+        switch (myRandom.nextInt(4)) {
+        case 0:  return name("g", myRandom.nextInt(GLOBALS));
+        case 1:  return name("p", 0);
+        default: return local();
+        }
+    }
+
+    private String local() {
+        return name("v", myRandom.nextInt(LOCALS));
+    }
+
+    /**
+     * Return the name of the k-th identifier with the given prefix, padded
+     * to the identifier length.
+     */
+    private String name(String prefix, int k) {
+        StringBuilder name = new StringBuilder(prefix).append(k);
+        while (name.length() < myIdLength) {
+            name.append('_');
+        }
+        return name.toString();
+    }
+
+    private String text() {
+        StringBuilder text = new StringBuilder();
+        int words = 1 + myRandom.nextInt(6);
+        for (int w = 0; w < words; w++) {
+            text.append(w == 0 ? "" : " ").append(WORDS[myRandom.nextInt(WORDS.length)]);
+        }
+        if (myRandom.nextInt(4) == 0) {
+            text.append("\\n");
+        }
+        return text.toString();
+    }
+
+    private static final String[] WORDS = {
+        "the", "value", "of", "result", "is", "done", "loop", "count", "sum"
+    };
+
+    private void comment(String indent) throws IOException {
+        if (myRandom.nextDouble() < myComments) {
+            line(indent + "// " + text());
+        }
+    }
+
+    private void line(String text) throws IOException {
+        myOut.write(text);
+        myOut.write('\n');
+        mySize += text.length() + 1;
+    }
+
+    private static long parseSize(String size) {
+        long unit = 1;
+        switch (Character.toUpperCase(size.charAt(size.length() - 1))) {
+        case 'K': unit = 1L << 10; break;
+        case 'M': unit = 1L << 20; break;
+        case 'G': unit = 1L << 30; break;
+        }
+        if (unit > 1) {
+            size = size.substring(0, size.length() - 1);
+        }
+        return Long.parseLong(size) * unit;
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java CorpusGen [-size N[K|M|G]] [-literals P] " +
+                           "[-strings P] [-comments P] [-idlen N] [-seed N] <outfile>");
+        System.exit(-1);
+    }
+}
@@ -0,0 +1,8 @@
+/**
+ * A DeclSink is handed each top-level declaration as soon as the parser
+ * has built it, instead of the declaration being added to the program's
+ * DeclListNode (see StreamingCompiler).
+ */
+interface DeclSink {
+    void decl(DeclNode decl);
+}
@@ -0,0 +1,133 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The DepthBench class checks that the compiler copes with deeply nested
+// programs: for each shape and depth it writes a program nested that
+// deep, compiles it the way P6 does (on this thread, whose stack is an
+// ordinary one: the parsers and passes keep their place in the nesting
+// on stacks of their own) and reports the time per level, which should
+// stay about the same as the depth grows.
+//
+// Usage: java DepthBench [options] [P6 flags]
+//    -shape S,...   which programs (default: all of them)
+//                     plus   a = a + a + ... + a;
+//                     minus  a = a - a - ... - a;
+//                     paren  a = a + (a + (a + ... + a));
+//                     if     if (b) { if (b) { ... a++; } }
+//                     while  while (b) { while (b) { ... b = false; } }
+//    -depth N,...   nesting depths (default 10000,100000,1000000)
+// Any other argument is passed on to P6 as a flag (-rd, -mmap, ...).
+//
+// Every shape is as deep in the AST as in the source, a chain of + as
+// much as a chain of -; each block of the if and while shapes is a scope
+// of its own in the symbol table.  Each program is written to depth.cf
+// and compiled to depth.s in the current directory.
+// **********************************************************************
+
+public class DepthBench {
+    private static final String[] SHAPES = { "plus", "minus", "paren", "if",
+                                             "while" };
+
+    public static void main(String[] args) throws IOException {
+        List<String> shapes = Arrays.asList(SHAPES);
+        List<Integer> depths = Arrays.asList(10000, 100000, 1000000);
+        List<String> flags = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (arg.equals("-shape") && i + 1 < args.length) {
+                shapes = Arrays.asList(args[++i].split(","));
+                for (String s : shapes) {
+                    if (!Arrays.asList(SHAPES).contains(s)) {
+                        usage("unknown shape " + s);
+                    }
+                }
+            } else if (arg.equals("-depth") && i + 1 < args.length) {
+                depths = new ArrayList<Integer>();
+                for (String d : args[++i].split(",")) {
+                    depths.add(Integer.parseInt(d));
+                }
+            } else {
+                flags.add(arg);
+            }
+        }
+
+        System.out.printf("%-6s %10s %10s %10s %12s%n", "shape", "depth", "MB",
+                          "ms", "ns/level");
+        PrintStream out = System.out;
+        for (String shape : shapes) {
+            for (int depth : depths) {
+                File file = new File("depth.cf");
+                Writer w = new BufferedWriter(new FileWriter(file), 1 << 16);
+                write(w, shape, depth);
+                w.close();
+
+                List<String> p6Args = new ArrayList<String>();
+                p6Args.add("depth.cf");
+                p6Args.add("depth.s");
+                p6Args.addAll(flags);
+                P6 compiler = new P6(p6Args.toArray(new String[0]));
+                int result;
+                System.setOut(new PrintStream(new ByteArrayOutputStream()));
+                long start = System.nanoTime();
+                try {
+                    result = compiler.process();
+                    compiler.cleanup();
+                } finally {
+                    System.setOut(out);
+                }
+                long nanos = System.nanoTime() - start;
+                if (result != P6.RESULT_CORRECT) {
+                    System.err.println(shape + " " + depth + ": compile failed (" +
+                                       result + ")");
+                    System.exit(-1);
+                }
+                System.out.printf("%-6s %10d %10.2f %10.1f %12.1f%n", shape, depth,
+                                  file.length() / 1e6, nanos / 1e6,
+                                  (double)nanos / depth);
+            }
+        }
+    }
+
+    /**
+     * Write a program of the given shape and depth.
+     */
+    private static void write(Writer out, String shape, int depth) throws IOException {
+        out.write("int a;\nbool b;\n\nvoid main() {\n    a = 1;\n    b = true;\n");
+        if (shape.equals("if") || shape.equals("while")) {
+            String block = shape + " (b) {\n";
+            for (int i = 0; i < depth; i++) {
+                out.write(block);
+            }
+            out.write(shape.equals("if") ? "a++;\n" : "b = false;\n");
+            for (int i = 0; i < depth; i++) {
+                out.write("}\n");
+            }
+        } else {
+            String op = shape.equals("minus") ? " - " : " + ";
+            boolean paren = shape.equals("paren");
+            out.write("    a = a");
+            for (int i = 1; i < depth; i++) {
+                out.write(op);
+                out.write(paren ? "(a" : "a");
+                if (i % 16 == 0) {
+                    out.write("\n");
+                }
+            }
+            if (paren) {
+                for (int i = 1; i < depth; i++) {
+                    out.write(i % 64 == 0 ? ")\n" : ")");
+                }
+            }
+            out.write(";\n");
+        }
+        out.write("    cout << a;\n}\n");
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java DepthBench [-shape S,...] [-depth N,...] " +
+                           "[P6 flags]");
+        System.exit(-1);
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.ArrayList;
+import java.util.List;
+
 /**
  * ErrMsg
  *
@@ -5,6 +8,32 @@
  */
 class ErrMsg {
 	private static boolean err = false;
+	private static int errors = 0;
+	private static int warnings = 0;
+	private static boolean deferring = false;
+	private static List<String> deferred = new ArrayList<String>();
+
+	// the bucket each thread is collecting its errors into, if any
+	private static final ThreadLocal<Bucket> bucket = new ThreadLocal<Bucket>();
+
+	/**
+	 * A Bucket holds the fatal errors found on a thread while it collects
+	 * into it (see collect), both those reported right away and those
+	 * kept back (see setDeferring), so that the errors found on several
+	 * threads can be reported in source order afterwards.
+	 */
+	static class Bucket {
+		private final List<String> errors = new ArrayList<String>();
+		private final List<String> deferred = new ArrayList<String>();
+		private boolean deferring = false;
+
+		/**
+		 * Returns true if an error that is not kept back is in the bucket.
+		 */
+		boolean hasErrors() {
+			return !errors.isEmpty();
+		}
+	}
 	
     /**
      * Generates a fatal error message.
@@ -13,10 +42,95 @@ class ErrMsg {
      * @param msg associated message for error
      */
     static void fatal(int lineNum, int charNum, String msg) {
+		String text = lineNum + ":" + charNum + " ***ERROR*** " + msg;
+		Bucket b = bucket.get();
+		if (b != null) {
+			(b.deferring ? b.deferred : b.errors).add(text);
+			return;
+		}
+		if (deferring) {
+			deferred.add(text);
+			return;
+		}
 		err = true;
-        System.err.println(lineNum + ":" + charNum + " ***ERROR*** " + msg);
+		errors++;
+        System.err.println(text);
+    }
+
+    /**
+     * Generates a fatal error message at span (see Span).
+     * @param span error location
+     * @param msg associated message for error
+     */
+    static void fatal(long span, String msg) {
+		fatal(Span.lineNum(span), Span.charNum(span), msg);
     }
 
+	/**
+	 * While on is true, fatal errors are kept back instead of reported
+	 * (and are not counted): reportDeferred reports them later, or
+	 * dropDeferred forgets them.
+	 */
+	static void setDeferring(boolean on) {
+		Bucket b = bucket.get();
+		if (b != null) {
+			b.deferring = on;
+		} else {
+			deferring = on;
+		}
+	}
+
+	/**
+	 * From now on, fatal errors found on this thread go into b instead
+	 * of being reported (they are counted by errorCount on this thread
+	 * only); null stops that.
+	 */
+	static void collect(Bucket b) {
+		bucket.set(b);
+	}
+
+	/**
+	 * Reports the errors in b that were not kept back, in the order they
+	 * were found.
+	 */
+	static void report(Bucket b) {
+		for (String text : b.errors) {
+			err = true;
+			errors++;
+			System.err.println(text);
+		}
+	}
+
+	/**
+	 * Reports the errors kept back in b, in the order they were found.
+	 */
+	static void reportDeferred(Bucket b) {
+		for (String text : b.deferred) {
+			err = true;
+			errors++;
+			System.err.println(text);
+		}
+	}
+
+	/**
+	 * Reports the errors kept back, in the order they were found.
+	 */
+	static void reportDeferred() {
+		for (String text : deferred) {
+			err = true;
+			errors++;
+			System.err.println(text);
+		}
+		deferred.clear();
+	}
+
+	/**
+	 * Forgets the errors kept back.
+	 */
+	static void dropDeferred() {
+		deferred.clear();
+	}
+
     /**
      * Generates a warning message.
      * @param lineNum line number for warning location
@@ -24,6 +138,7 @@ class ErrMsg {
      * @param msg associated message for warning
      */
     static void warn(int lineNum, int charNum, String msg) {
+		warnings++;
         System.err.println(lineNum + ":" + charNum + " ***WARNING*** " + msg);
     }
 	
@@ -33,4 +148,31 @@ class ErrMsg {
 	static boolean getErr() {
 		return err;
 	}
+
+	/**
+	 * Returns the number of fatal errors reported so far, plus those in
+	 * the bucket this thread is collecting into.
+	 */
+	static int errorCount() {
+		Bucket b = bucket.get();
+		return b != null ? errors + b.errors.size() : errors;
+	}
+
+	/**
+	 * Returns the number of warnings reported so far.
+	 */
+	static int warningCount() {
+		return warnings;
+	}
+
+	/**
+	 * Forgets the errors and warnings reported so far, and those kept
+	 * back, for another compile in the same run (see P6 -watch).
+	 */
+	static void reset() {
+		err = false;
+		errors = 0;
+		warnings = 0;
+		deferred.clear();
+	}
 }
@@ -0,0 +1,58 @@
+// **********************************************************************
+// The FieldPath class is what a dot-access chain a.b.c resolves to in
+// name analysis: the symbol id of the struct variable a and the ids of
+// the fields b and c, in that order.  A path is immutable; the path of
+// a.b.c is that of a.b extended by c, and shares it.
+//
+// The offset of the word a path names is the offset of its base in the
+// frame plus the structOffsets of its fields (see StructLayout).  Both
+// are only final once the base's function has been laid out and, with
+// P6 -hotfields, its structs' fields placed, so offset is folded from
+// them when it is first needed in code generation and kept by the
+// DotAccessExpNode (see DotAccessExpNode.frameOffset).
+// **********************************************************************
+
+class FieldPath {
+    private final int myBase;            // the struct variable's id
+    private final FieldPath myPrefix;    // the path this extends, or null
+    private final int myField;           // the last field's id
+
+    /**
+     * The path base.field.
+     */
+    public FieldPath(int base, int field) {
+        this(base, null, field);
+    }
+
+    private FieldPath(int base, FieldPath prefix, int field) {
+        myBase = base;
+        myPrefix = prefix;
+        myField = field;
+    }
+
+    /**
+     * Return the path to field in the struct this path names.
+     */
+    public FieldPath extend(int field) {
+        return new FieldPath(myBase, this, field);
+    }
+
+    public int base() {
+        return myBase;
+    }
+
+    public int field() {
+        return myField;
+    }
+
+    /**
+     * Return the offset from the fp of the word this path names.
+     */
+    public int offset() {
+        int offset = SymAttrs.SHARED.offset(myBase);
+        for (FieldPath path = this; path != null; path = path.myPrefix) {
+            offset += SymAttrs.SHARED.structOffset(path.myField);
+        }
+        return offset;
+    }
+}
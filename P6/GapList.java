@@ -0,0 +1,133 @@
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+// **********************************************************************
+// The GapList class is a list kept in an array with a gap in it at the
+// place of the last change (a "gap buffer", as text editors use).
+// Replacing a range costs the size of the range and of what replaces it,
+// plus the distance the gap moves to get there; so a run of changes
+// close to each other, as editing gives, never copies the rest of the
+// list.  Reading any element is an array read.
+//
+// Moving the gap moves the elements it passes from one side of it to the
+// other, and a subclass is told about each one (movedBeforeGap,
+// movedAfterGap).  IncrementalParser uses this to keep the offsets of
+// the chunks after the gap relative to a shift that an edit changes once,
+// instead of changing the offset of every later chunk.
+// **********************************************************************
+
+class GapList<T> extends AbstractList<T> implements RandomAccess {
+    private Object[] myItems = new Object[16];
+    private int myGapStart = 0;   // the elements before the gap
+    private int myGapEnd = 16;    // the first element after it
+
+    public int size() {
+        return myItems.length - (myGapEnd - myGapStart);
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int index) {
+        return (T)myItems[slot(index)];
+    }
+
+    public T set(int index, T item) {
+        T old = get(index);
+        myItems[slot(index)] = item;
+        return old;
+    }
+
+    public void add(int index, T item) {
+        replace(index, index, Arrays.asList(item));
+    }
+
+    public T remove(int index) {
+        T old = get(index);
+        replace(index, index + 1, Arrays.<T>asList());
+        return old;
+    }
+
+    /**
+     * Return true if the element at index is after the gap.
+     */
+    boolean afterGap(int index) {
+        return index >= myGapStart;
+    }
+
+    /**
+     * Replace the elements from index from up to (not including) index
+     * to by items, which end up just before the gap.
+     */
+    void replace(int from, int to, List<? extends T> items) {
+        if (from < 0 || from > to || to > size()) {
+            throw new IndexOutOfBoundsException("replace " + from + ".." + to +
+                                                " in list of size " + size());
+        }
+        moveGap(to);
+        Arrays.fill(myItems, from, myGapStart, null);
+        myGapStart = from;
+        int n = items.size();
+        if (n > myGapEnd - myGapStart) {
+            grow(n);
+        }
+        for (T item : items) {
+            myItems[myGapStart++] = item;
+        }
+        modCount++;
+    }
+
+    /**
+     * Called for an element that the gap moved over and that is now
+     * before it.
+     */
+    protected void movedBeforeGap(T item) {
+    }
+
+    /**
+     * Called for an element that the gap moved over and that is now
+     * after it.
+     */
+    protected void movedAfterGap(T item) {
+    }
+
+    private int slot(int index) {
+        if (index < 0 || index >= size()) {
+            throw new IndexOutOfBoundsException("index " + index +
+                                                " in list of size " + size());
+        }
+        return index < myGapStart ? index : index + myGapEnd - myGapStart;
+    }
+
+    /**
+     * Move the gap to just before the element at index.
+     */
+    @SuppressWarnings("unchecked")
+    private void moveGap(int index) {
+        while (myGapStart > index) {
+            Object item = myItems[--myGapStart];
+            myItems[myGapStart] = null;
+            myItems[--myGapEnd] = item;
+            movedAfterGap((T)item);
+        }
+        while (myGapStart < index) {
+            Object item = myItems[myGapEnd];
+            myItems[myGapEnd++] = null;
+            myItems[myGapStart++] = item;
+            movedBeforeGap((T)item);
+        }
+    }
+
+    /**
+     * Make the gap at least n long.
+     */
+    private void grow(int n) {
+        int after = myItems.length - myGapEnd;
+        int capacity = Math.max(2 * myItems.length, myGapStart + n + after);
+        Object[] items = new Object[capacity];
+        System.arraycopy(myItems, 0, items, 0, myGapStart);
+        System.arraycopy(myItems, myGapEnd, items, capacity - after, after);
+        myItems = items;
+        myGapEnd = capacity - after;
+    }
+}
@@ -0,0 +1,236 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// **********************************************************************
+// The IncrementalCheck class checks that IncrementalParser keeps the
+// same program as parsing the text from scratch would give, over many
+// random edits of the programs it is given.
+//
+// Usage: java IncrementalCheck [options] <file> ...
+//    -edits N       number of edits of each program (default 2000)
+//    -seed N        seed for the random edits (default 1)
+//
+// An edit replaces a random range of up to a few lines by a copy of
+// another range of the text, by one of a few tokens or line ends that
+// open or close declarations ("{", "}", ";", "\n", "struct s {"), or by
+// nothing.  Two times out of three the last edit not yet undone is undone
+// instead (with update(text) half of those times), so the text keeps
+// coming back to the program it started as.
+//
+// After each edit the text must be the edited text and, if a parse of
+// the whole text with RDParser reports no errors, the incremental parse
+// must not either and its declarations (line numbers included, compared
+// as AstArena bytes) must be those of the whole parse; if the whole
+// parse reports errors, so must the incremental one.  The exit status is
+// -1 if any check fails; the text before and after the first failing
+// edit is written to incrementalcheck.cf and incrementalcheck-edit.cf.
+// **********************************************************************
+
+public class IncrementalCheck {
+    private static final String[] INSERTS = { "{", "}", ";", "\n", "struct s {" };
+
+    private int myEdits = 2000;
+    private Random myRandom = new Random(1);
+    private int myCorrect;  // edits that gave a correct program
+
+    public static void main(String[] args) throws IOException {
+        IncrementalCheck check = new IncrementalCheck();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(arg);
+            } else if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            } else if (arg.equals("-edits")) {
+                check.myEdits = number(arg, args[++i], 0);
+            } else if (arg.equals("-seed")) {
+                check.myRandom = new Random(number(arg, args[++i], 0));
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (files.isEmpty()) {
+            usage("please supply the input files");
+        }
+
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new Bench.NullOutputStream()));
+        int failures = 0;
+        try {
+            for (String file : files) {
+                ByteBuffer buf = MappedScanner.map(file);
+                String text = MappedScanner.text(buf, 0, buf.limit());
+                check.myCorrect = 0;
+                int failed = check.check(text);
+                System.out.println(file + ": " + check.myEdits + " edits, " +
+                                   check.myCorrect + " to a correct program, " +
+                                   failed + " failed");
+                failures += failed;
+            }
+        } finally {
+            System.setErr(err);
+        }
+        if (failures > 0) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Edit text myEdits times and return the number of edits after which
+     * the incremental parse was wrong.
+     */
+    private int check(String text) throws IOException {
+        IncrementalParser parser = new IncrementalParser(text);
+        int failures = 0;
+        // the text before each edit not yet undone, the last one first
+        Deque<String> undone = new ArrayDeque<String>();
+        for (int e = 0; e < myEdits; e++) {
+            String edited;
+            if (!undone.isEmpty() && myRandom.nextInt(3) > 0) {
+                edited = undone.pop();
+                if (myRandom.nextBoolean()) {
+                    parser.update(edited);
+                } else {
+                    undo(parser, text, edited);
+                }
+            } else {
+                int offset = myRandom.nextInt(text.length() + 1);
+                int removed = Math.min(text.length() - offset, span(text, offset));
+                String inserted = insert(text);
+                edited = text.substring(0, offset) + inserted +
+                    text.substring(offset + removed);
+                parser.edit(offset, removed, inserted);
+                undone.push(text);
+            }
+            if (!same(parser, edited)) {
+                if (failures == 0) {
+                    write("incrementalcheck.cf", text);
+                    write("incrementalcheck-edit.cf", edited);
+                }
+                failures++;
+            }
+            text = edited;
+        }
+        return failures;
+    }
+
+    /**
+     * Turn text into edited with edit(), as an editor would undo.
+     */
+    private static void undo(IncrementalParser parser, String text, String edited) {
+        int prefix = 0;
+        int most = Math.min(text.length(), edited.length());
+        while (prefix < most && text.charAt(prefix) == edited.charAt(prefix)) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < most - prefix &&
+               text.charAt(text.length() - 1 - suffix) ==
+               edited.charAt(edited.length() - 1 - suffix)) {
+            suffix++;
+        }
+        parser.edit(prefix, text.length() - prefix - suffix,
+                    edited.substring(prefix, edited.length() - suffix));
+    }
+
+    /**
+     * Return the length of a range to replace at offset: up to a few
+     * lines, often much less.
+     */
+    private int span(String text, int offset) {
+        switch (myRandom.nextInt(3)) {
+        case 0:
+            return 0;
+        case 1:
+            return myRandom.nextInt(8);
+        default:
+            int end = offset;
+            for (int lines = myRandom.nextInt(4); end < text.length(); end++) {
+                if (text.charAt(end) == '\n' && lines-- == 0) {
+                    break;
+                }
+            }
+            return end - offset;
+        }
+    }
+
+    /**
+     * Return the text to insert: a copy of some of text, or one of
+     * INSERTS, or nothing.
+     */
+    private String insert(String text) {
+        switch (myRandom.nextInt(3)) {
+        case 0:
+            return "";
+        case 1:
+            return INSERTS[myRandom.nextInt(INSERTS.length)];
+        default:
+            int from = myRandom.nextInt(text.length() + 1);
+            return text.substring(from, from + Math.min(text.length() - from,
+                                                        span(text, from)));
+        }
+    }
+
+    /**
+     * Return true if parser has text and parses it as RDParser parses it
+     * in one go.
+     */
+    private boolean same(IncrementalParser parser, String text) {
+        if (!parser.text().equals(text)) {
+            return false;
+        }
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        RDParser whole = new RDParser(new MappedScanner(buf));
+        int errors = ErrMsg.errorCount();
+        ProgramNode program = null;
+        try {
+            program = (ProgramNode)whole.parse().value;
+        } catch (Exception ex) {
+            // gave up after a syntax error, which has been reported
+        }
+        if (ErrMsg.errorCount() > errors) {
+            return parser.hasErrors();
+        }
+        myCorrect++;
+        if (parser.hasErrors()) {
+            return false;
+        }
+        AstArena wholeNodes = new AstArena();
+        program.encode(wholeNodes);
+        AstArena nodes = new AstArena();
+        parser.program().encode(nodes);
+        return nodes.toBytes().equals(wholeNodes.toBytes());
+    }
+
+    private static void write(String name, String text) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(name),
+                                            StandardCharsets.ISO_8859_1);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int number(String option, String value, int min) {
+        int n = 0;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("bad number for " + option + ": " + value);
+        }
+        if (n < min) {
+            usage(option + " must be at least " + min);
+        }
+        return n;
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java IncrementalCheck [-edits N] [-seed N] <file> ...");
+        System.exit(-1);
+    }
+}
@@ -0,0 +1,450 @@
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// **********************************************************************
+// The IncrementalLexer class keeps the token stream of a source text up to
+// date while the text is being edited (e.g. in an editor).
+//
+// No CFlat token can span a newline and the scanner carries no state past
+// one, so the text is kept as a list of segments that each end just after
+// a '\n' (the last one runs to the end of the text), each with its own
+// tokens.  An edit (offset, removed length, inserted text) only re-scans
+// the segments it touches.  The new segments are then compared with the
+// old ones from both ends: segments whose tokens did not change are
+// resynchronized and left out of the returned LexDelta.  Segments after
+// the edit are never looked at again; only their positions move.
+//
+// A segment is usually one line.  It can be more than one when it holds a
+// lone '\r', which the scanners count as a line end but which, like in
+// CFlat.jlex, does not end a string literal or comment or reset the
+// character number.
+//
+// IDs are interned in the given NamePool.  Warnings and errors from the
+// scanner are not reported here; run a full scan for those.
+// **********************************************************************
+
+public class IncrementalLexer {
+    // the segments of the text, in order
+    private List<Segment> mySegments;
+
+    // for each segment i:
+    //   myStarts[i]  its offset in the text
+    //   myLines[i]   the line number its first line has
+    //   myFirsts[i]  the index of its first token in the whole stream
+    // and one more entry for the end of the text (myCount entries in all)
+    private int[] myStarts;
+    private int[] myLines;
+    private int[] myFirsts;
+    private int myCount;
+
+    // An edit moves every segment after it.  Instead of updating all those
+    // entries, the entries from myPending on are stored without the shifts
+    // below, which are added when they are read.  Moving the pending point
+    // costs time proportional to the distance moved, so a run of edits
+    // close to each other (typing) costs the same in a file of any size.
+    private int myPending;
+    private int myStartShift;
+    private int myLineShift;
+    private int myTokenShift;
+
+    private final NamePool myNames;
+
+    public IncrementalLexer(String text) {
+        this(text, NamePool.SHARED);
+    }
+
+    public IncrementalLexer(String text, NamePool names) {
+        myNames = names;
+        mySegments = new ArrayList<Segment>();
+        lexSegments(bytes(text), true, mySegments);
+        myCount = mySegments.size() + 1;
+        myStarts = new int[myCount];
+        myLines = new int[myCount];
+        myFirsts = new int[myCount];
+        myLines[0] = 1;
+        computePositions(0, mySegments.size());
+        myPending = myCount;
+    }
+
+    /**
+     * Replace removedLength characters at offset by inserted and return
+     * how the token stream changed.
+     */
+    public LexDelta edit(int offset, int removedLength, String inserted) {
+        int length = length();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" +
+                                                removedLength + " in text of " +
+                                                "length " + length);
+        }
+
+        // the segments the edit touches
+        int first = segmentOf(offset);
+        int last = segmentOf(offset + removedLength);
+        boolean toEnd = last == mySegments.size() - 1;
+        settle(last + 2);
+
+        // build their new text
+        byte[] insertedBytes = bytes(inserted);
+        int windowStart = myStarts[first];
+        int windowEnd = myStarts[last + 1];
+        byte[] window = new byte[windowEnd - windowStart - removedLength +
+                                 insertedBytes.length];
+        int before = offset - windowStart;
+        int after = windowEnd - offset - removedLength;
+        copyText(first, windowStart, window, 0, before);
+        System.arraycopy(insertedBytes, 0, window, before, insertedBytes.length);
+        copyText(first, offset + removedLength, window,
+                 before + insertedBytes.length, after);
+
+        List<Segment> newSegments = new ArrayList<Segment>();
+        lexSegments(window, toEnd, newSegments);
+        int oldCount = last - first + 1;
+        int newCount = newSegments.size();
+
+        // resynchronize: skip the segments at both ends whose tokens are the
+        // same as before (their text may still differ, e.g. in a comment)
+        int head = 0;
+        while (head < oldCount && head < newCount &&
+               mySegments.get(first + head).sameTokens(newSegments.get(head))) {
+            head++;
+        }
+        int tail = 0;
+        while (tail < oldCount - head && tail < newCount - head &&
+               mySegments.get(last - tail).sameTokens(newSegments.get(newCount - 1 - tail))) {
+            tail++;
+        }
+
+        // what the delta replaces
+        int firstToken = myFirsts[first + head];
+        int removedTokens = myFirsts[last + 1 - tail] - firstToken;
+        int oldEnd = myStarts[last + 1];
+        int oldLines = myLines[last + 1];
+        int oldTokens = myFirsts[last + 1];
+
+        // put the new segments in place
+        List<Segment> range = mySegments.subList(first, last + 1);
+        range.clear();
+        range.addAll(newSegments);
+        if (newCount != oldCount) {
+            moveEntries(last + 2, first + newCount + 1);
+        }
+        computePositions(first, first + newCount);
+
+        // and shift everything after them
+        int end = first + newCount;
+        unsettle(end + 1);
+        myStartShift += myStarts[end] - oldEnd;
+        myLineShift += myLines[end] - oldLines;
+        myTokenShift += myFirsts[end] - oldTokens;
+
+        LexDelta delta = new LexDelta(firstToken, removedTokens,
+                                      myLines[end] - oldLines);
+        for (int i = first + head; i < first + newCount - tail; i++) {
+            mySegments.get(i).addTo(delta.tokens(), myLines[i]);
+        }
+        return delta;
+    }
+
+    /**
+     * Return the whole token stream (without EOF).
+     */
+    public TokenBuffer tokens() {
+        TokenBuffer tokens = new TokenBuffer(tokenCount());
+        for (int i = 0; i < mySegments.size(); i++) {
+            mySegments.get(i).addTo(tokens, line(i));
+        }
+        return tokens;
+    }
+
+    /**
+     * Return the current text.
+     */
+    public String text() {
+        byte[] text = new byte[length()];
+        copyText(0, 0, text, 0, text.length);
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    public int length() {
+        return start(mySegments.size());
+    }
+
+    /**
+     * Return the number of lines (as the scanners count them).
+     */
+    public int lineCount() {
+        return line(mySegments.size());
+    }
+
+    /**
+     * Return the number of tokens (not counting EOF).
+     */
+    public int tokenCount() {
+        return first(mySegments.size());
+    }
+
+    /**
+     * Return the index of the segment that contains offset (the last one
+     * for the offset just past the end of the text).
+     */
+    private int segmentOf(int offset) {
+        int lo = 0;
+        int hi = mySegments.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (start(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Copy length bytes of the text, starting at offset (which lies in
+     * segment i or a later one), to dest.
+     */
+    private void copyText(int i, int offset, byte[] dest, int destPos, int length) {
+        while (i < mySegments.size() - 1 && start(i + 1) <= offset) {
+            i++;
+        }
+        while (length > 0) {
+            byte[] text = mySegments.get(i).text;
+            int from = offset - start(i);
+            int n = Math.min(length, text.length - from);
+            System.arraycopy(text, from, dest, destPos, n);
+            offset += n;
+            destPos += n;
+            length -= n;
+            i++;
+        }
+    }
+
+    private int start(int i) {
+        return i < myPending ? myStarts[i] : myStarts[i] + myStartShift;
+    }
+
+    private int line(int i) {
+        return i < myPending ? myLines[i] : myLines[i] + myLineShift;
+    }
+
+    private int first(int i) {
+        return i < myPending ? myFirsts[i] : myFirsts[i] + myTokenShift;
+    }
+
+    /**
+     * Add the pending shifts to the entries before index upTo.
+     */
+    private void settle(int upTo) {
+        for (int i = myPending; i < upTo; i++) {
+            myStarts[i] += myStartShift;
+            myLines[i] += myLineShift;
+            myFirsts[i] += myTokenShift;
+        }
+        myPending = Math.max(myPending, upTo);
+    }
+
+    /**
+     * Take the pending shifts out of the entries from index from on.
+     */
+    private void unsettle(int from) {
+        for (int i = from; i < myPending; i++) {
+            myStarts[i] -= myStartShift;
+            myLines[i] -= myLineShift;
+            myFirsts[i] -= myTokenShift;
+        }
+        myPending = Math.min(myPending, from);
+    }
+
+    /**
+     * Move the entries from index from on to index to, making room for
+     * new segments or closing the gap left by removed ones.
+     */
+    private void moveEntries(int from, int to) {
+        int newCount = myCount + to - from;
+        if (newCount > myStarts.length) {
+            int capacity = Math.max(newCount, 2 * myStarts.length);
+            myStarts = Arrays.copyOf(myStarts, capacity);
+            myLines = Arrays.copyOf(myLines, capacity);
+            myFirsts = Arrays.copyOf(myFirsts, capacity);
+        }
+        System.arraycopy(myStarts, from, myStarts, to, myCount - from);
+        System.arraycopy(myLines, from, myLines, to, myCount - from);
+        System.arraycopy(myFirsts, from, myFirsts, to, myCount - from);
+        myCount = newCount;
+        if (myPending >= from) {
+            myPending += to - from;
+        }
+    }
+
+    /**
+     * Compute the entries of segments first+1 to end (which may be the end
+     * of the text) from the entry of segment first.  All of them must be
+     * settled.
+     */
+    private void computePositions(int first, int end) {
+        for (int i = first; i < end; i++) {
+            Segment segment = mySegments.get(i);
+            myStarts[i + 1] = myStarts[i] + segment.text.length;
+            myLines[i + 1] = myLines[i] + segment.lineEnds;
+            myFirsts[i + 1] = myFirsts[i] + segment.tokens.length / 4;
+        }
+    }
+
+    /**
+     * Cut text into segments, scan each of them and add them to segments.
+     * If text runs to the end of the source, its last segment is the
+     * (possibly empty) one without a '\n'; otherwise text ends with '\n'.
+     */
+    private void lexSegments(byte[] text, boolean toEnd, List<Segment> segments) {
+        int start = 0;
+        for (int k = 0; k < text.length; k++) {
+            if (text[k] == '\n') {
+                segments.add(lex(Arrays.copyOfRange(text, start, k + 1)));
+                start = k + 1;
+            }
+        }
+        if (toEnd) {
+            segments.add(lex(Arrays.copyOfRange(text, start, text.length)));
+        }
+    }
+
+    /**
+     * Scan one segment.
+     */
+    private Segment lex(byte[] text) {
+        MappedScanner scanner = new MappedScanner(ByteBuffer.wrap(text), 0, myNames) {
+            protected void fatal(int lineNum, int charNum, String msg) {
+            }
+            protected void warn(int lineNum, int charNum, String msg) {
+            }
+        };
+        int[] tokens = new int[4 * 4];
+        String[] strings = null;
+        int count = 0;
+        for (int k = scanner.next(); k != sym.EOF; k = scanner.next()) {
+            int val = 0;
+            switch (k) {
+            case sym.ID:
+                val = scanner.nameId();
+                break;
+            case sym.INTLITERAL:
+                val = scanner.intValue();
+                break;
+            case sym.STRINGLITERAL:
+                val = strings == null ? 0 : strings.length;
+                strings = strings == null ? new String[1] : Arrays.copyOf(strings, val + 1);
+                strings[val] = scanner.text();
+                break;
+            }
+            if (4 * count == tokens.length) {
+                tokens = Arrays.copyOf(tokens, 2 * tokens.length);
+            }
+            tokens[4 * count] = k;
+            tokens[4 * count + 1] = scanner.lineNum();
+            tokens[4 * count + 2] = scanner.charNum();
+            tokens[4 * count + 3] = val;
+            count++;
+        }
+        return new Segment(text, Arrays.copyOf(tokens, 4 * count), strings,
+                           scanner.lineNum());
+    }
+
+    /**
+     * Segment
+     * The text of one segment and its tokens, stored as (kind, line within
+     * the segment, character number, value) quadruples; the value of a
+     * string literal is its index in strings.
+     */
+    private static class Segment {
+        final byte[] text;
+        final int[] tokens;
+        final String[] strings;
+        final int lineEnds;  // number of line ends in text
+
+        Segment(byte[] text, int[] tokens, String[] strings, int lineEnds) {
+            this.text = text;
+            this.tokens = tokens;
+            this.strings = strings;
+            this.lineEnds = lineEnds;
+        }
+
+        boolean sameTokens(Segment other) {
+            return lineEnds == other.lineEnds &&
+                Arrays.equals(tokens, other.tokens) &&
+                Arrays.equals(strings, other.strings);
+        }
+
+        /**
+         * Append the tokens of this segment, which starts on line lineNum,
+         * to buf.
+         */
+        void addTo(TokenBuffer buf, int lineNum) {
+            for (int k = 0; k < tokens.length; k += 4) {
+                if (tokens[k] == sym.STRINGLITERAL) {
+                    buf.addString(lineNum + tokens[k + 1], tokens[k + 2],
+                                  strings[tokens[k + 3]]);
+                } else {
+                    buf.add(tokens[k], lineNum + tokens[k + 1], tokens[k + 2],
+                            tokens[k + 3]);
+                }
+            }
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
+
+/**
+ * LexDelta
+ * How an edit changed the token stream of an IncrementalLexer: the
+ * removedTokens() tokens starting at index firstToken() were replaced by
+ * tokens() (with their new line numbers), and the line numbers of all the
+ * tokens after them moved by lineShift().  All other tokens are unchanged.
+ */
+class LexDelta {
+    private int myFirstToken;
+    private int myRemovedTokens;
+    private int myLineShift;
+    private TokenBuffer myTokens;
+
+    LexDelta(int firstToken, int removedTokens, int lineShift) {
+        myFirstToken = firstToken;
+        myRemovedTokens = removedTokens;
+        myLineShift = lineShift;
+        myTokens = new TokenBuffer(16);
+    }
+
+    public int firstToken() {
+        return myFirstToken;
+    }
+
+    public int removedTokens() {
+        return myRemovedTokens;
+    }
+
+    public int lineShift() {
+        return myLineShift;
+    }
+
+    /**
+     * Return the tokens that replace the removed ones.
+     */
+    public TokenBuffer tokens() {
+        return myTokens;
+    }
+
+    /**
+     * Return true if the edit did not change any token.
+     */
+    public boolean isEmpty() {
+        return myRemovedTokens == 0 && myTokens.size() == 0;
+    }
+}
@@ -0,0 +1,312 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// **********************************************************************
+// The IncrementalLexerCheck class checks that IncrementalLexer keeps the
+// same token stream as scanning the text from scratch would give, over
+// many random edits of the programs it is given, and measures how long an
+// edit takes while typing.
+//
+// Usage: java IncrementalLexerCheck [options] <file> ...
+//    -edits N       number of random edits of each program (default 2000)
+//    -keys N        number of keystrokes timed on each (default 20000)
+//    -seed N        seed for the random edits (default 1)
+//
+// A random edit replaces a random range of up to a few lines by a copy
+// of another range of the text, by one of a few pieces of text that
+// start or end a token across the rest of a line ("\"", "//", "/*", "\\",
+// "\r", "\n", ...), or by nothing.  Two times out of three the last edit
+// not yet undone is undone instead, by the opposite edit, so the text
+// keeps coming back to the program it started as.
+//
+// After each edit the LexDelta returned by edit() is applied to the token
+// stream as it was before, which must then be what TokenBuffer.lex gives
+// for the edited text: the same kinds, line and character numbers and
+// values (the text of a string literal, the name id of an ID).  The
+// exit status is -1 if any check fails; the text before and after the
+// first failing edit is written to incrementallexercheck.cf and
+// incrementallexercheck-edit.cf.
+//
+// Then keystrokes are timed: a word is typed a character at a time at the
+// start of a random line and deleted again a character at a time, each
+// keystroke one edit(), until -keys have been timed (after as many
+// untimed ones, to warm up).  The median, 99th percentile and slowest
+// keystroke are reported next to the time of one scan of the whole text,
+// which is what each keystroke would cost without IncrementalLexer.
+// **********************************************************************
+
+public class IncrementalLexerCheck {
+    private static final String[] INSERTS = { "\"", "//", "/*", "*/", "\\",
+                                              "\r", "\n", "x", "1", " " };
+    private static final String WORD = "counter";
+
+    private int myEdits = 2000;
+    private int myKeys = 20000;
+    private Random myRandom = new Random(1);
+
+    public static void main(String[] args) throws IOException {
+        IncrementalLexerCheck check = new IncrementalLexerCheck();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(arg);
+            } else if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            } else if (arg.equals("-edits")) {
+                check.myEdits = number(arg, args[++i], 0);
+            } else if (arg.equals("-keys")) {
+                check.myKeys = number(arg, args[++i], 1);
+            } else if (arg.equals("-seed")) {
+                check.myRandom = new Random(number(arg, args[++i], 0));
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (files.isEmpty()) {
+            usage("please supply the input files");
+        }
+
+        // the scanner reports bad characters and unterminated strings
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(new Bench.NullOutputStream()));
+        int failures = 0;
+        try {
+            for (String file : files) {
+                ByteBuffer buf = MappedScanner.map(file);
+                String text = MappedScanner.text(buf, 0, buf.limit());
+                int failed = check.check(text);
+                System.out.println(file + ": " + check.myEdits + " edits, " +
+                                   failed + " failed");
+                failures += failed;
+                if (!check.time(file, text)) {
+                    failures++;
+                }
+            }
+        } finally {
+            System.setErr(err);
+        }
+        if (failures > 0) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Edit text myEdits times and return the number of edits after which
+     * the token stream was wrong.
+     */
+    private int check(String text) throws IOException {
+        IncrementalLexer lexer = new IncrementalLexer(text);
+        TokenBuffer tokens = lex(text);
+        int failures = 0;
+        // the edits not yet undone, the last one first: the offset, the
+        // text it removed and the text it inserted
+        Deque<Object[]> undone = new ArrayDeque<Object[]>();
+        for (int e = 0; e < myEdits; e++) {
+            int offset;
+            String removed;
+            String inserted;
+            if (!undone.isEmpty() && myRandom.nextInt(3) > 0) {
+                Object[] edit = undone.pop();
+                offset = (Integer)edit[0];
+                removed = (String)edit[2];
+                inserted = (String)edit[1];
+            } else {
+                offset = myRandom.nextInt(text.length() + 1);
+                removed = text.substring(offset, offset +
+                                         Math.min(text.length() - offset,
+                                                  span(text, offset)));
+                inserted = insert(text);
+                undone.push(new Object[] { offset, removed, inserted });
+            }
+            String edited = text.substring(0, offset) + inserted +
+                text.substring(offset + removed.length());
+            LexDelta delta = lexer.edit(offset, removed.length(), inserted);
+            tokens = apply(tokens, delta);
+            if (!lexer.text().equals(edited) || !same(tokens, lex(edited))) {
+                if (failures == 0) {
+                    write("incrementallexercheck.cf", text);
+                    write("incrementallexercheck-edit.cf", edited);
+                }
+                failures++;
+                // go on from a correct stream
+                tokens = lex(edited);
+            }
+            text = edited;
+        }
+        return failures;
+    }
+
+    /**
+     * Time myKeys keystrokes on text and report them; return false if the
+     * tokens were then wrong.
+     */
+    private boolean time(String file, String text) {
+        IncrementalLexer lexer = new IncrementalLexer(text);
+        long[] nanos = new long[myKeys];
+        int keys = 2 * WORD.length();  // to type the word and delete it
+        for (int k = -myKeys; k < myKeys; ) {
+            int offset = lineStart(text, myRandom.nextInt(text.length() + 1));
+            for (int c = 0; c < keys; c++, k++) {
+                long start = System.nanoTime();
+                if (c < WORD.length()) {
+                    lexer.edit(offset + c, 0, WORD.substring(c, c + 1));
+                } else {
+                    lexer.edit(offset + keys - c - 1, 1, "");
+                }
+                long time = System.nanoTime() - start;
+                if (k >= 0 && k < myKeys) {
+                    nanos[k] = time;
+                }
+            }
+        }
+        long[] scans = new long[5];
+        for (int r = 0; r < scans.length; r++) {
+            long start = System.nanoTime();
+            lex(text);
+            scans[r] = System.nanoTime() - start;
+        }
+        Arrays.sort(nanos);
+        Arrays.sort(scans);
+        System.out.printf("%s: %d lines, %d keystrokes: median %.1f us, " +
+                          "99%% %.1f us, max %.1f us; whole scan %.2f ms%n",
+                          file, lexer.lineCount(), myKeys, nanos[myKeys / 2] / 1e3,
+                          nanos[(int)(myKeys * 0.99)] / 1e3,
+                          nanos[myKeys - 1] / 1e3, scans[scans.length / 2] / 1e6);
+        return same(lexer.tokens(), lex(text));
+    }
+
+    /**
+     * Return the offset of the start of the line offset is in.
+     */
+    private static int lineStart(String text, int offset) {
+        while (offset > 0 && text.charAt(offset - 1) != '\n') {
+            offset--;
+        }
+        return offset;
+    }
+
+    /**
+     * Return tokens with delta applied, in a new buffer.
+     */
+    private static TokenBuffer apply(TokenBuffer tokens, LexDelta delta) {
+        TokenBuffer result = new TokenBuffer(tokens.size());
+        copy(tokens, 0, delta.firstToken(), 0, result);
+        copy(delta.tokens(), 0, delta.tokens().size(), 0, result);
+        copy(tokens, delta.firstToken() + delta.removedTokens(), tokens.size(),
+             delta.lineShift(), result);
+        return result;
+    }
+
+    /**
+     * Append tokens from up to to of from to to, moved by lineShift lines.
+     */
+    private static void copy(TokenBuffer from, int first, int end, int lineShift,
+                             TokenBuffer to) {
+        for (int i = first; i < end; i++) {
+            if (from.kind(i) == sym.STRINGLITERAL) {
+                to.addString(from.lineNum(i) + lineShift, from.charNum(i),
+                             from.stringValue(i));
+            } else {
+                to.add(from.kind(i), from.lineNum(i) + lineShift, from.charNum(i),
+                       from.value(i));
+            }
+        }
+    }
+
+    /**
+     * Return true if a and b hold the same tokens.
+     */
+    private static boolean same(TokenBuffer a, TokenBuffer b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.kind(i) != b.kind(i) || a.lineNum(i) != b.lineNum(i) ||
+                a.charNum(i) != b.charNum(i)) {
+                return false;
+            }
+            if (a.kind(i) == sym.STRINGLITERAL ?
+                !a.stringValue(i).equals(b.stringValue(i)) :
+                a.value(i) != b.value(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static TokenBuffer lex(String text) {
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        return TokenBuffer.lex(new MappedScanner(buf));
+    }
+
+    /**
+     * Return the length of a range to replace at offset: up to a few
+     * lines, often much less.
+     */
+    private int span(String text, int offset) {
+        switch (myRandom.nextInt(3)) {
+        case 0:
+            return 0;
+        case 1:
+            return myRandom.nextInt(8);
+        default:
+            int end = offset;
+            for (int lines = myRandom.nextInt(4); end < text.length(); end++) {
+                if (text.charAt(end) == '\n' && lines-- == 0) {
+                    break;
+                }
+            }
+            return end - offset;
+        }
+    }
+
+    /**
+     * Return the text to insert: a copy of some of text, or one of
+     * INSERTS, or nothing.
+     */
+    private String insert(String text) {
+        switch (myRandom.nextInt(3)) {
+        case 0:
+            return "";
+        case 1:
+            return INSERTS[myRandom.nextInt(INSERTS.length)];
+        default:
+            int from = myRandom.nextInt(text.length() + 1);
+            return text.substring(from, from + Math.min(text.length() - from,
+                                                        span(text, from)));
+        }
+    }
+
+    private static void write(String name, String text) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(name),
+                                            StandardCharsets.ISO_8859_1);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static int number(String option, String value, int min) {
+        int n = 0;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("bad number for " + option + ": " + value);
+        }
+        if (n < min) {
+            usage(option + " must be at least " + min);
+        }
+        return n;
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java IncrementalLexerCheck [-edits N] [-keys N] " +
+                           "[-seed N] <file> ...");
+        System.exit(-1);
+    }
+}
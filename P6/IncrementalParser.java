@@ -0,0 +1,510 @@
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// **********************************************************************
+// The IncrementalParser class keeps the AST of a source text up to date
+// while the text changes (in an editor, or between compiles of the same
+// file in one run), parsing again only the top-level declarations whose
+// text changed.
+//
+// The text is kept as a list of chunks.  A chunk holds whole top-level
+// declarations: it starts at the beginning of a line and ends just after
+// the '\n' ending the line its last declaration ends on (the last chunk
+// runs to the end of the text).  Usually a chunk is one declaration with
+// the comments and blank lines before it; declarations that share a line
+// share a chunk.  Each chunk records its span (offset in the text and
+// length), the line it starts on, a hash of its text, and the
+// declarations RDParser built from it, which are also in the program's
+// DeclListNode.
+//
+// An edit (offset, removed length, inserted text) re-cuts only the chunks
+// it touches.  Where a declaration ends is found by scanning the tokens
+// and counting braces, and nothing else carries over from one
+// declaration to the next; so once a new chunk ends where an old one
+// did, the rest of the text is cut as before and is left alone.  A new
+// chunk whose hash and text are those of one of the old chunks it
+// replaces (the edit only moved it) takes over that chunk's declarations;
+// the others are parsed.  The declarations of the new chunks are then
+// spliced into the DeclListNode in place of the old ones.
+//
+// The chunks and the declarations are kept in GapLists whose gap is at
+// the last edit.  The offsets, lines and declaration indexes of the
+// chunks after the gap are kept relative to shifts that an edit changes
+// once, and are only made absolute when the gap moves past them; so an
+// edit costs the size of the text it re-cuts plus the distance from the
+// last edit, not the size of the whole text.
+//
+// Chunks after an edit that adds or removes lines keep their
+// declarations, but the line numbers in them are out of date.  They are
+// moved (with shiftLines, a walk over the nodes that is much cheaper than
+// parsing) when program() is next called.
+//
+// Syntax and lexical errors are reported as chunks are parsed, so an
+// edit reports only the errors in the text it touched; reportErrors
+// parses the chunks that have errors again to report all of them (for a
+// compile of the current text, say).  Since each chunk is parsed on its
+// own, what follows an error can be reported differently than in a parse
+// of the whole text.
+// **********************************************************************
+
+public class IncrementalParser {
+    // what to add to the start, line and first declaration index stored
+    // in a chunk after the gap in myChunks
+    private int myStartShift = 0;
+    private int myLineShift = 0;
+    private int myDeclShift = 0;
+
+    // the chunks of the text, in order
+    private GapList<Chunk> myChunks = new GapList<Chunk>() {
+        protected void movedBeforeGap(Chunk chunk) {
+            chunk.start += myStartShift;
+            chunk.line += myLineShift;
+            chunk.firstDecl += myDeclShift;
+        }
+
+        protected void movedAfterGap(Chunk chunk) {
+            chunk.start -= myStartShift;
+            chunk.line -= myLineShift;
+            chunk.firstDecl -= myDeclShift;
+        }
+    };
+    private int myErrorChunks = 0;  // chunks whose parse reported errors
+
+    // the declarations of all the chunks, in order; this is the list in
+    // myProgram's DeclListNode
+    private GapList<DeclNode> myDecls = new GapList<DeclNode>();
+    private ProgramNode myProgram = new ProgramNode(new DeclListNode(myDecls));
+
+    public IncrementalParser(String text) {
+        byte[] bytes = bytes(text);
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        cut(bytes, 0, 1, true, chunks);
+        List<DeclNode> decls = new ArrayList<DeclNode>();
+        for (Chunk chunk : chunks) {
+            parse(chunk, chunk.line);
+            chunk.firstDecl = decls.size();
+            decls.addAll(chunk.decls);
+        }
+        myChunks.replace(0, 0, chunks);
+        myDecls.replace(0, 0, decls);
+    }
+
+    /**
+     * Replace removedLength characters at offset by inserted and return
+     * the number of declarations that were parsed again.
+     */
+    public int edit(int offset, int removedLength, String inserted) {
+        return edit(offset, removedLength, bytes(inserted));
+    }
+
+    /**
+     * Replace the whole text by text, which usually differs from it in one
+     * place; the differing part is handed to edit.
+     */
+    public int update(String text) {
+        byte[] bytes = bytes(text);
+        int length = length();
+        int prefix = 0;
+      prefix:
+        for (Chunk chunk : myChunks) {
+            for (byte b : chunk.text) {
+                if (prefix == bytes.length || bytes[prefix] != b) {
+                    break prefix;
+                }
+                prefix++;
+            }
+        }
+        int suffix = 0;
+        int most = Math.min(length, bytes.length) - prefix;
+      suffix:
+        for (int i = myChunks.size() - 1; i >= 0; i--) {
+            byte[] chunkText = myChunks.get(i).text;
+            for (int k = chunkText.length - 1; k >= 0; k--) {
+                if (suffix == most || bytes[bytes.length - 1 - suffix] != chunkText[k]) {
+                    break suffix;
+                }
+                suffix++;
+            }
+        }
+        return edit(prefix, length - prefix - suffix,
+                    Arrays.copyOfRange(bytes, prefix, bytes.length - suffix));
+    }
+
+    /**
+     * Return the program.  The same ProgramNode is returned after every
+     * edit; its DeclListNode holds the current declarations.
+     */
+    public ProgramNode program() {
+        for (int i = 0; i < myChunks.size(); i++) {
+            Chunk chunk = myChunks.get(i);
+            int line = line(i);
+            if (line != chunk.parsedLine) {
+                for (DeclNode decl : chunk.decls) {
+                    decl.shiftLines(line - chunk.parsedLine);
+                }
+                chunk.parsedLine = line;
+            }
+        }
+        return myProgram;
+    }
+
+    /**
+     * Return true if parsing the current text reported errors.
+     */
+    public boolean hasErrors() {
+        return myErrorChunks > 0;
+    }
+
+    /**
+     * Report the errors in the current text again, by parsing the chunks
+     * that have errors again (which gives the same declarations).
+     */
+    public void reportErrors() {
+        for (int i = 0; i < myChunks.size(); i++) {
+            Chunk chunk = myChunks.get(i);
+            if (chunk.errors) {
+                int declIndex = firstDecl(i);
+                parse(chunk, line(i));
+                for (DeclNode decl : chunk.decls) {
+                    myDecls.set(declIndex++, decl);
+                }
+            }
+        }
+    }
+
+    /**
+     * Return the current text.
+     */
+    public String text() {
+        byte[] text = new byte[length()];
+        for (int i = 0; i < myChunks.size(); i++) {
+            byte[] chunkText = myChunks.get(i).text;
+            System.arraycopy(chunkText, 0, text, start(i), chunkText.length);
+        }
+        return new String(text, StandardCharsets.ISO_8859_1);
+    }
+
+    public int length() {
+        if (myChunks.isEmpty()) {
+            return 0;
+        }
+        int last = myChunks.size() - 1;
+        return start(last) + myChunks.get(last).text.length;
+    }
+
+    private int edit(int offset, int removedLength, byte[] inserted) {
+        int length = length();
+        if (offset < 0 || removedLength < 0 || offset + removedLength > length) {
+            throw new IndexOutOfBoundsException("edit " + offset + "+" +
+                                                removedLength + " in text of " +
+                                                "length " + length);
+        }
+
+        // the chunks the edit touches, first up to (not including) next
+        int first = chunkOf(offset);
+        int next = myChunks.isEmpty() ? 0 : chunkOf(offset + removedLength) + 1;
+        int windowStart = first < myChunks.size() ? start(first) : 0;
+        int line = first < myChunks.size() ? line(first) : 1;
+
+        // their new text
+        byte[] window = new byte[end(next) - windowStart - removedLength +
+                                 inserted.length];
+        int before = offset - windowStart;
+        copyText(first, windowStart, window, 0, before);
+        System.arraycopy(inserted, 0, window, before, inserted.length);
+        copyText(first, offset + removedLength, window, before + inserted.length,
+                 end(next) - offset - removedLength);
+
+        // cut it into chunks; while the last one runs on past the window,
+        // take in more of the old chunks (twice as many each time)
+        List<Chunk> newChunks = new ArrayList<Chunk>();
+        int pos = 0;
+        for (int more = 1; ; more *= 2) {
+            boolean toEnd = next == myChunks.size();
+            pos = cut(window, pos, line, toEnd, newChunks);
+            if (pos == window.length) {
+                break;
+            }
+            if (!newChunks.isEmpty()) {
+                Chunk last = newChunks.get(newChunks.size() - 1);
+                line = last.line + last.lineEnds;
+            }
+            int upTo = Math.min(next + more, myChunks.size());
+            int oldLength = window.length;
+            window = Arrays.copyOf(window, oldLength + end(upTo) - end(next));
+            copyText(next, end(next), window, oldLength, end(upTo) - end(next));
+            next = upTo;
+        }
+
+        // the old chunks that are replaced, by hash, for reuse
+        Map<Long, Chunk> old = new HashMap<Long, Chunk>();
+        int oldDecls = 0;
+        for (int i = first; i < next; i++) {
+            Chunk chunk = myChunks.get(i);
+            oldDecls += chunk.decls.size();
+            if (chunk.errors) {
+                myErrorChunks--;
+            } else {
+                old.put(chunk.hash, chunk);
+            }
+        }
+        int oldLines = next < myChunks.size() ? line(next) : 0;
+        int oldEnd = end(next);
+
+        // put the new chunks in place
+        int parsed = 0;
+        int declIndex = first < myChunks.size() ? firstDecl(first) : 0;
+        List<DeclNode> newDecls = new ArrayList<DeclNode>();
+        for (Chunk chunk : newChunks) {
+            chunk.start += windowStart;
+            chunk.firstDecl = declIndex + newDecls.size();
+            Chunk same = old.remove(chunk.hash);
+            if (same != null && Arrays.equals(same.text, chunk.text)) {
+                chunk.decls = same.decls;
+                chunk.parsedLine = same.parsedLine;
+            } else {
+                parse(chunk, chunk.line);
+                parsed += chunk.decls.size();
+            }
+            newDecls.addAll(chunk.decls);
+        }
+        boolean later = next < myChunks.size();
+        myDecls.replace(declIndex, declIndex + oldDecls, newDecls);
+        myChunks.replace(first, next, newChunks);
+
+        // and move the ones after them, which are now after the gap
+        if (later) {
+            Chunk last = newChunks.isEmpty() ? null : newChunks.get(newChunks.size() - 1);
+            myLineShift += (last == null ? line : last.line + last.lineEnds) - oldLines;
+            myStartShift += windowStart + window.length - oldEnd;
+            myDeclShift += newDecls.size() - oldDecls;
+        } else {
+            myLineShift = myStartShift = myDeclShift = 0;
+        }
+        return parsed;
+    }
+
+    /**
+     * Return the index of the chunk that contains offset (the last one for
+     * the offset just past the end of the text, 0 if there are none).
+     */
+    private int chunkOf(int offset) {
+        int lo = 0;
+        int hi = myChunks.size() - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (start(mid) <= offset) {
+                lo = mid;
+            } else {
+                hi = mid - 1;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * Return the offset where chunk i starts, or the length of the text if
+     * i is the number of chunks.
+     */
+    private int end(int i) {
+        return i < myChunks.size() ? start(i) : length();
+    }
+
+    /**
+     * Return the offset where chunk i starts.
+     */
+    private int start(int i) {
+        int start = myChunks.get(i).start;
+        return myChunks.afterGap(i) ? start + myStartShift : start;
+    }
+
+    /**
+     * Return the line number chunk i starts on.
+     */
+    private int line(int i) {
+        int line = myChunks.get(i).line;
+        return myChunks.afterGap(i) ? line + myLineShift : line;
+    }
+
+    /**
+     * Return the index in myDecls of the first declaration of chunk i.
+     */
+    private int firstDecl(int i) {
+        int firstDecl = myChunks.get(i).firstDecl;
+        return myChunks.afterGap(i) ? firstDecl + myDeclShift : firstDecl;
+    }
+
+    /**
+     * Copy length bytes of the text, starting at offset (which lies in
+     * chunk i or a later one), to dest.
+     */
+    private void copyText(int i, int offset, byte[] dest, int destPos, int length) {
+        while (i < myChunks.size() - 1 && start(i + 1) <= offset) {
+            i++;
+        }
+        while (length > 0) {
+            Chunk chunk = myChunks.get(i);
+            int from = offset - start(i);
+            int n = Math.min(length, chunk.text.length - from);
+            System.arraycopy(chunk.text, from, dest, destPos, n);
+            offset += n;
+            destPos += n;
+            length -= n;
+            i++;
+        }
+    }
+
+    /**
+     * Cut text, from offset pos (where line number line starts) on, into
+     * chunks and add them to chunks; the starts of the chunks are offsets
+     * in text.  Return where the part that could not be cut off starts:
+     * the last declaration in text may be unfinished or followed by more
+     * on its line.  If text runs to the end of the source, that part
+     * becomes the last chunk and the length of text is returned.
+     */
+    private int cut(byte[] text, int pos, int line, boolean toEnd, List<Chunk> chunks) {
+        MappedScanner scanner = silentScanner(text, pos, text.length - pos, line);
+        int depth = 0;
+        int count = 0;             // tokens so far in the current declaration
+        boolean structDef = false;
+        int end = -1;              // where the chunk can end, or -1
+        int endLine = 0;           // the line that starts there
+        int k;
+        do {
+            k = scanner.next();
+            if (end >= 0 && (k == sym.EOF || scanner.offset() >= end)) {
+                chunks.add(new Chunk(text, pos, end, line, endLine - line));
+                pos = end;
+                line = endLine;
+            }
+            end = -1;
+            if (k == sym.EOF) {
+                break;
+            }
+
+            // a struct definition, unlike a function, ends at the ';'
+            // after its '}'
+            if (count == 0) {
+                structDef = k == sym.STRUCT;
+            } else if (count < 3) {
+                structDef &= k == (count == 1 ? sym.ID : sym.LCURLY);
+            }
+            count++;
+            if (k == sym.LCURLY) {
+                depth++;
+            } else if (k == sym.RCURLY && depth > 0) {
+                depth--;
+            }
+            if (depth == 0 && (k == sym.SEMICOLON || (k == sym.RCURLY && !structDef))) {
+                // the declaration ends here; the chunk can end after the
+                // line, unless another declaration starts on it
+                count = 0;
+                int tokenEnd = scanner.offset() + scanner.length();
+                for (int i = tokenEnd; i < text.length; i++) {
+                    if (text[i] == '\n') {
+                        end = i + 1;
+                        endLine = lineAfter(text, tokenEnd, end, scanner.lineNum());
+                        break;
+                    }
+                }
+            }
+        } while (true);
+        if (toEnd && pos < text.length) {
+            chunks.add(new Chunk(text, pos, text.length, line, scanner.lineNum() - line));
+            pos = text.length;
+        }
+        return pos;
+    }
+
+    /**
+     * Return the line number at offset to in text, given that the text
+     * from offset from to it holds no tokens and that line number line
+     * starts at from.  (A comment can hold a lone '\r'.)
+     */
+    private static int lineAfter(byte[] text, int from, int to, int line) {
+        MappedScanner scanner = silentScanner(text, from, to - from, line);
+        while (scanner.next() != sym.EOF) {
+        }
+        return scanner.lineNum();
+    }
+
+    private static MappedScanner silentScanner(byte[] text, int offset, int length,
+                                               int line) {
+        return new MappedScanner(ByteBuffer.wrap(text, offset, length), line) {
+            protected void fatal(int lineNum, int charNum, String msg) {
+            }
+            protected void warn(int lineNum, int charNum, String msg) {
+            }
+        };
+    }
+
+    /**
+     * Parse a chunk that starts on the given line, reporting its errors.
+     */
+    private void parse(Chunk chunk, int line) {
+        final List<DeclNode> decls = new ArrayList<DeclNode>();
+        int errors = ErrMsg.errorCount();
+        RDParser parser = new RDParser(new MappedScanner(ByteBuffer.wrap(chunk.text),
+                                                         line));
+        parser.setDeclSink(new DeclSink() {
+            public void decl(DeclNode decl) {
+                decls.add(decl);
+            }
+        });
+        try {
+            parser.parse();
+        } catch (Exception ex) {
+            // gave up after a syntax error, which has been reported
+        }
+        if (chunk.errors) {
+            myErrorChunks--;
+        }
+        chunk.decls = decls;
+        chunk.parsedLine = line;
+        chunk.errors = ErrMsg.errorCount() > errors;
+        if (chunk.errors) {
+            myErrorChunks++;
+        }
+    }
+
+    private static byte[] bytes(String text) {
+        return text.getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * Chunk
+     * A run of whole top-level declarations and its text.
+     */
+    private static class Chunk {
+        final byte[] text;
+        final long hash;
+        final int lineEnds;          // number of line ends in text
+        // (for a chunk after the gap, these are relative to the shifts)
+        int start;                   // offset in the whole text
+        int line;                    // the line number it starts on
+        int firstDecl;               // index of its first declaration in
+                                     // the program's declaration list
+        List<DeclNode> decls;
+        int parsedLine;              // the line it started on when decls
+                                     // got their line numbers
+        boolean errors;              // parsing it reported errors
+
+        Chunk(byte[] text, int from, int to, int line, int lineEnds) {
+            this.text = Arrays.copyOfRange(text, from, to);
+            this.start = from;
+            this.line = line;
+            this.lineEnds = lineEnds;
+            // 64-bit FNV-1a
+            long h = 0xcbf29ce484222325L;
+            for (byte b : this.text) {
+                h = (h ^ (b & 0xff)) * 0x100000001b3L;
+            }
+            this.hash = h;
+        }
+    }
+}
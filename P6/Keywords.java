@@ -0,0 +1,96 @@
+import java.nio.*;
+
+// **********************************************************************
+// The Keywords class tells the scanners whether the text of an identifier
+// is one of the CFlat keywords.  classify returns the token kind (a sym
+// constant) of the keyword, or sym.ID for an ordinary identifier.
+//
+// The scanners lex keywords and identifiers with one rule and classify
+// the text afterwards, so the scanner DFA needs no states of its own for
+// the keywords.  The lookup is a perfect hash: for the twelve keywords
+//
+//     (first char + last char + length) & 31
+//
+// is different for every word, so classify looks at one table slot and
+// compares at most one word.  The table is built (and the hash checked)
+// when the class is loaded.
+// **********************************************************************
+
+class Keywords {
+    private static final String[] WORDS = {
+        "bool", "int", "void", "true", "false", "struct",
+        "cin", "cout", "if", "else", "while", "return"
+    };
+
+    private static final int[] KINDS = {
+        sym.BOOL, sym.INT, sym.VOID, sym.TRUE, sym.FALSE, sym.STRUCT,
+        sym.CIN, sym.COUT, sym.IF, sym.ELSE, sym.WHILE, sym.RETURN
+    };
+
+    // the shortest and longest keyword
+    private static final int MIN_LENGTH = 2;
+    private static final int MAX_LENGTH = 6;
+
+    private static final int TABLE_SIZE = 32;
+
+    // TABLE[hash] is the keyword with that hash (or null), KIND[hash] its kind
+    private static final char[][] TABLE = new char[TABLE_SIZE][];
+    private static final int[] KIND = new int[TABLE_SIZE];
+
+    static {
+        for (int k = 0; k < WORDS.length; k++) {
+            char[] word = WORDS[k].toCharArray();
+            int h = hash(word[0], word[word.length - 1], word.length);
+            if (TABLE[h] != null) {
+                throw new Error("keyword hash is not perfect: " + WORDS[k] +
+                                " collides with " + new String(TABLE[h]));
+            }
+            TABLE[h] = word;
+            KIND[h] = KINDS[k];
+        }
+    }
+
+    private static int hash(int first, int last, int length) {
+        return (first + last + length) & (TABLE_SIZE - 1);
+    }
+
+    /**
+     * Classify the identifier of the given length at offset in buf.
+     */
+    static int classify(ByteBuffer buf, int offset, int length) {
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return sym.ID;
+        }
+        int h = hash(buf.get(offset), buf.get(offset + length - 1), length);
+        char[] word = TABLE[h];
+        if (word == null || word.length != length) {
+            return sym.ID;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf.get(offset + i) != word[i]) {
+                return sym.ID;
+            }
+        }
+        return KIND[h];
+    }
+
+    /**
+     * Classify the identifier of the given length at offset in buf.
+     */
+    static int classify(char[] buf, int offset, int length) {
+        if (length < MIN_LENGTH || length > MAX_LENGTH) {
+            return sym.ID;
+        }
+        int h = hash(buf[offset], buf[offset + length - 1], length);
+        char[] word = TABLE[h];
+        if (word == null || word.length != length) {
+            return sym.ID;
+        }
+        for (int i = 0; i < length; i++) {
+            if (buf[offset + i] != word[i]) {
+                return sym.ID;
+            }
+        }
+        return KIND[h];
+    }
+}
@@ -0,0 +1,78 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+// **********************************************************************
+// The LexBench class measures how fast the scanners run.
+//
+// Usage: java LexBench [options] <file> ...
+//    -scanner S,...  which scanners to run (default: all of them)
+//                      yylex     Yylex.next_token() reading a FileReader
+//                      mmap      MappedScanner.next() (no Symbols)
+//                      mmap-sym  MappedScanner.next_token()
+//                      tokens    TokenBuffer.lex() over a MappedScanner
+//                      plex      ParallelLexer.lex()
+//    -warmup N       untimed runs before measuring (default 3)
+//    -runs N         timed runs, at least 1 (default 5)
+//
+// Each run scans the file over and over until at least Bench.MIN_BYTES
+// have been scanned, so that small inputs (like the P2 test files) still
+// give stable numbers; for every scanner and file the median run is
+// reported (see Bench).  CorpusGen writes inputs of any size to run this
+// on.
+// **********************************************************************
+
+public class LexBench {
+    private static final String[] SCANNERS = {
+        "yylex", "mmap", "mmap-sym", "tokens", "plex"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Bench bench = new Bench("LexBench", "scanner", SCANNERS, args);
+        bench.printHeader();
+        for (final String file : bench.files()) {
+            long size = new File(file).length();
+            final ByteBuffer mapped = MappedScanner.map(file);
+            for (final String scanner : bench.choices()) {
+                bench.measure(scanner, file, size, new Bench.Pass() {
+                        public long run() throws Exception {
+                            return scan(scanner, file, mapped.duplicate());
+                        }
+                    });
+            }
+        }
+    }
+
+    /**
+     * Scan file (or mapped, its contents) once and return the number of
+     * tokens (not counting EOF).  The MappedScanner based scanners scan
+     * mapped, the file mapped into memory once up front.
+     */
+    private static long scan(String scanner, String file, ByteBuffer mapped)
+    throws Exception {
+        long count = 0;
+        if (scanner.equals("yylex")) {
+            FileReader in = new FileReader(file);
+            Yylex yylex = new Yylex(in);
+            while (yylex.next_token().sym != sym.EOF) {
+                count++;
+            }
+            in.close();
+        } else if (scanner.equals("mmap")) {
+            MappedScanner mappedScanner = new MappedScanner(mapped);
+            while (mappedScanner.next() != sym.EOF) {
+                count++;
+            }
+        } else if (scanner.equals("mmap-sym")) {
+            MappedScanner mappedScanner = new MappedScanner(mapped);
+            while (mappedScanner.next_token().sym != sym.EOF) {
+                count++;
+            }
+        } else if (scanner.equals("tokens")) {
+            count = TokenBuffer.lex(new MappedScanner(mapped)).size();
+        } else {
+            count = ParallelLexer.lex(mapped).size();
+        }
+        return count;
+    }
+}
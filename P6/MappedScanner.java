@@ -0,0 +1,511 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.channels.*;
+
+import java_cup.runtime.*;
+
+// **********************************************************************
+// The MappedScanner class is a hand-written scanner for CFlat that reads
+// its input straight out of a ByteBuffer (normally a read-only memory map
+// of the source file) instead of going through a Reader the way the
+// JLex-generated Yylex does.
+//
+// It recognizes exactly the tokens described in CFlat.jlex, reports the
+// same warnings and errors, and keeps the same line / character numbers
+// (including the quirks of the JLex rules, e.g. "--" only advancing the
+// character number by one).
+//
+// There are two ways to use it:
+//   next()        returns the kind (a sym constant) of the next token and
+//                 leaves its position, offset, length and value in the
+//                 scanner.  Nothing is allocated, so keywords, punctuation,
+//                 whitespace and comments never create a String; callers
+//                 ask for the NamePool id of an ID with nameId() and for
+//                 the text of a string literal with text().
+//   next_token()  wraps next() into a Symbol + TokenVal so that the CUP
+//                 parser can use this scanner in place of Yylex.
+//
+// CFlat source is plain ASCII, so one byte is one character.
+// **********************************************************************
+
+public class MappedScanner implements java_cup.runtime.Scanner {
+    // the source and the position of the next unread byte
+    private final ByteBuffer myBuf;
+    private final int myLimit;
+    private int myPos;
+
+    // the pool that IDs are interned in
+    private final NamePool myNames;
+
+    // position of the next character: line and character number
+    private int myLine;
+    private int myCharNum;
+    private boolean myLastWasCr;
+
+    // the token returned by the last call to next()
+    private int myKind;
+    private int myTokLine;
+    private int myTokCharNum;
+    private int myTokOffset;
+    private int myTokLength;
+    private int myIntVal;
+
+    /**
+     * Scan the remaining bytes of the given buffer, which is taken to start
+     * at line 1, character 1.
+     */
+    public MappedScanner(ByteBuffer buf) {
+        this(buf, 1);
+    }
+
+    /**
+     * Scan the remaining bytes of the given buffer, which is taken to start
+     * at the beginning of line firstLine.
+     */
+    public MappedScanner(ByteBuffer buf, int firstLine) {
+        this(buf, firstLine, NamePool.SHARED);
+    }
+
+    /**
+     * Scan the remaining bytes of the given buffer, which is taken to start
+     * at the beginning of line firstLine, interning IDs in the given pool.
+     */
+    public MappedScanner(ByteBuffer buf, int firstLine, NamePool names) {
+        myBuf = buf;
+        myNames = names;
+        myPos = buf.position();
+        myLimit = buf.limit();
+        myLine = firstLine;
+        myCharNum = 1;
+        myLastWasCr = false;
+        myKind = sym.EOF;
+    }
+
+    /**
+     * Map the given file read-only into memory and return a scanner for it.
+     */
+    public static MappedScanner open(String filename) throws IOException {
+        return new MappedScanner(map(filename));
+    }
+
+    /**
+     * Map the given file read-only into memory.  The mapping stays valid
+     * after the file is closed.
+     */
+    public static ByteBuffer map(String filename) throws IOException {
+        RandomAccessFile file = new RandomAccessFile(filename, "r");
+        try {
+            FileChannel channel = file.getChannel();
+            return channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        } finally {
+            file.close();
+        }
+    }
+
+    /**
+     * Return the kind of the token found by the last call to next().
+     */
+    public int kind() {
+        return myKind;
+    }
+
+    /**
+     * Return the line number of the last token.
+     */
+    public int lineNum() {
+        return myTokLine;
+    }
+
+    /**
+     * Return the character number of the last token.
+     */
+    public int charNum() {
+        return myTokCharNum;
+    }
+
+    /**
+     * Return the offset of the last token in the buffer.
+     */
+    public int offset() {
+        return myTokOffset;
+    }
+
+    /**
+     * Return the length (in bytes) of the last token.
+     */
+    public int length() {
+        return myTokLength;
+    }
+
+    /**
+     * Return the value of the last token if it was an INTLITERAL.
+     */
+    public int intValue() {
+        return myIntVal;
+    }
+
+    /**
+     * Return the id (in this scanner's NamePool) of the last token if it
+     * was an ID.  The
+     * spelling is only copied out of the buffer the first time it is seen.
+     */
+    public int nameId() {
+        return myNames.intern(myBuf, myTokOffset, myTokLength);
+    }
+
+    /**
+     * Return the buffer this scanner reads from.
+     */
+    public ByteBuffer buffer() {
+        return myBuf;
+    }
+
+    /**
+     * Return the text of the last token.  This is the only method that
+     * creates a String, so only call it for IDs and string literals.
+     */
+    public String text() {
+        return text(myBuf, myTokOffset, myTokLength);
+    }
+
+    /**
+     * Return the text of length bytes at the given offset of buf.
+     */
+    public static String text(ByteBuffer buf, int offset, int length) {
+        char[] chars = new char[length];
+        for (int k = 0; k < length; k++) {
+            chars[k] = (char)(buf.get(offset + k) & 0xff);
+        }
+        return new String(chars);
+    }
+
+    /**
+     * next_token
+     * Return the next token as a Symbol whose value is a TokenVal (or one
+     * of its subclasses), exactly as Yylex does.
+     */
+    public Symbol next_token() {
+        int kind = next();
+        switch (kind) {
+        case sym.EOF:
+            return TokenVal.symbol(sym.EOF, null);
+        case sym.ID:
+            // the parser takes the ids of IdTokenVals to be SHARED ids
+            int id = NamePool.SHARED.intern(myBuf, myTokOffset, myTokLength);
+            return TokenVal.symbol(sym.ID,
+                                   new IdTokenVal(myTokLine, myTokCharNum, id));
+        case sym.INTLITERAL:
+            return TokenVal.symbol(sym.INTLITERAL,
+                                   new IntLitTokenVal(myTokLine, myTokCharNum, myIntVal));
+        case sym.STRINGLITERAL:
+            return TokenVal.symbol(sym.STRINGLITERAL,
+                                   new StrLitTokenVal(myTokLine, myTokCharNum, text()));
+        default:
+            return TokenVal.symbol(kind, new TokenVal(myTokLine, myTokCharNum));
+        }
+    }
+
+    /**
+     * next
+     * Scan the next token and return its kind (sym.EOF at the end of the
+     * input).  Whitespace, comments and erroneous input are skipped, with
+     * the same error messages that Yylex gives.
+     */
+    public int next() {
+        while (myPos < myLimit) {
+            int start = myPos;
+            int c = at(start);
+            boolean afterCr = myLastWasCr;
+            myLastWasCr = false;
+
+            if (isLetter(c) || c == '_') {
+                int end = start + 1;
+                while (end < myLimit && isIdChar(at(end))) {
+                    end++;
+                }
+                int kind = Keywords.classify(myBuf, start, end - start);
+                return token(kind, start, end - start, end - start);
+            }
+
+            if (isDigit(c)) {
+                return intLiteral(start);
+            }
+
+            switch (c) {
+            case '"':
+                if (stringLiteral(start)) {
+                    return myKind;
+                }
+                continue;
+
+            case '\n':
+                myPos++;
+                if (!afterCr) {  // CR LF is one line end
+                    myLine++;
+                }
+                myCharNum = 1;
+                continue;
+
+            case ' ':
+            case '\t':
+                int end = start + 1;
+                while (end < myLimit && (at(end) == ' ' || at(end) == '\t')) {
+                    end++;
+                }
+                myCharNum += end - start;
+                myPos = end;
+                continue;
+
+            case '#':
+                skipComment();
+                continue;
+
+            case '/':
+                if (at(start + 1) == '/') {
+                    skipComment();
+                    continue;
+                }
+                return token(sym.DIVIDE, start, 1, 1);
+
+            case '{': return token(sym.LCURLY, start, 1, 1);
+            case '}': return token(sym.RCURLY, start, 1, 1);
+            case '(': return token(sym.LPAREN, start, 1, 1);
+            case ')': return token(sym.RPAREN, start, 1, 1);
+            case ';': return token(sym.SEMICOLON, start, 1, 1);
+            case ',': return token(sym.COMMA, start, 1, 1);
+            case '.': return token(sym.DOT, start, 1, 1);
+            case '*': return token(sym.TIMES, start, 1, 1);
+
+            case '<':
+                if (at(start + 1) == '<') return token(sym.WRITE, start, 2, 2);
+                if (at(start + 1) == '=') return token(sym.LESSEQ, start, 2, 2);
+                return token(sym.LESS, start, 1, 1);
+
+            case '>':
+                if (at(start + 1) == '>') return token(sym.READ, start, 2, 2);
+                if (at(start + 1) == '=') return token(sym.GREATEREQ, start, 2, 2);
+                return token(sym.GREATER, start, 1, 1);
+
+            case '+':
+                if (at(start + 1) == '+') return token(sym.PLUSPLUS, start, 2, 2);
+                return token(sym.PLUS, start, 1, 1);
+
+            case '-':
+                // note: CFlat.jlex only advances the char number by 1 for "--"
+                if (at(start + 1) == '-') return token(sym.MINUSMINUS, start, 2, 1);
+                return token(sym.MINUS, start, 1, 1);
+
+            case '!':
+                if (at(start + 1) == '=') return token(sym.NOTEQUALS, start, 2, 2);
+                return token(sym.NOT, start, 1, 1);
+
+            case '=':
+                if (at(start + 1) == '=') return token(sym.EQUALS, start, 2, 2);
+                return token(sym.ASSIGN, start, 1, 1);
+
+            case '&':
+                if (at(start + 1) == '&') return token(sym.AND, start, 2, 2);
+                break;
+
+            case '|':
+                if (at(start + 1) == '|') return token(sym.OR, start, 2, 2);
+                break;
+
+            default:
+                break;
+            }
+
+            // anything else is an illegal character
+            fatal(myLine, myCharNum, "illegal character ignored: " + (char)c);
+            myCharNum++;
+            myPos++;
+            if (c == '\r') {  // JLex counts a lone CR as the end of a line
+                myLine++;
+                myLastWasCr = true;
+            }
+        }
+
+        myKind = sym.EOF;
+        myTokLine = myLine;
+        myTokCharNum = myCharNum;
+        myTokOffset = myLimit;
+        myTokLength = 0;
+        return sym.EOF;
+    }
+
+    /**
+     * Record a token of the given kind and length that starts at start and
+     * advance past it; advance is how far the character number moves.
+     */
+    private int token(int kind, int start, int length, int advance) {
+        myKind = kind;
+        myTokLine = myLine;
+        myTokCharNum = myCharNum;
+        myTokOffset = start;
+        myTokLength = length;
+        myPos = start + length;
+        myCharNum += advance;
+        return kind;
+    }
+
+    /**
+     * Scan an integer literal starting at start.  As in CFlat.jlex, values
+     * that are too large are replaced by Integer.MAX_VALUE with a warning.
+     */
+    private int intLiteral(int start) {
+        int end = start;
+        long val = 0;
+        while (end < myLimit && isDigit(at(end))) {
+            if (val <= Integer.MAX_VALUE) {
+                val = val * 10 + (at(end) - '0');
+            }
+            end++;
+        }
+        if (val > Integer.MAX_VALUE) {
+            warn(myLine, myCharNum, "integer literal too large; using max value");
+            val = Integer.MAX_VALUE;
+        }
+        myIntVal = (int)val;
+        return token(sym.INTLITERAL, start, end - start, end - start);
+    }
+
+    /**
+     * Scan a string literal starting at the double quote at start.
+     * CFlat.jlex has four rules for strings (good, unterminated, bad escape,
+     * unterminated with bad escape); the JLex longest-match rule decides
+     * between them, so the lengths of the candidate matches are worked out
+     * here the same way.
+     * Returns true if a good string literal was found.
+     */
+    private boolean stringLiteral(int start) {
+        int i = start + 1;
+        int badEscape = -1;
+
+        while (true) {
+            int c = at(i);
+            if (c < 0 || c == '\n') {  // unterminated
+                fatal(myLine, myCharNum, "unterminated string literal ignored");
+                myPos = i;
+                return false;
+            }
+            if (c == '"') {  // good string
+                int length = i + 1 - start;
+                token(sym.STRINGLITERAL, start, length, length);
+                return true;
+            }
+            if (c == '\\') {
+                int d = at(i + 1);
+                if (isEscapedChar(d)) {
+                    i += 2;
+                    continue;
+                }
+                if (d < 0 || d == '\n') {  // trailing backslash
+                    unterminatedBadEscape(i + 1);
+                    return false;
+                }
+                badEscape = i;
+                break;
+            }
+            i++;
+        }
+
+        // a bad escape: either the rest of the line up to the next quote is
+        // taken as a (bad) string, or it is unterminated, whichever is longer
+        int quote = -1;
+        for (int k = badEscape + 2; k < myLimit; k++) {
+            int c = at(k);
+            if (c == '\n') break;
+            if (c == '"') {
+                quote = k;
+                break;
+            }
+        }
+
+        int end = badEscape + 2;
+        while (true) {
+            int c = at(end);
+            if (c < 0 || c == '\n' || c == '"') break;
+            if (c == '\\') {
+                if (isEscapedChar(at(end + 1))) {
+                    end += 2;
+                    continue;
+                }
+                end++;  // a single trailing backslash ends the match
+                break;
+            }
+            end++;
+        }
+
+        if (quote >= 0 && quote + 1 >= end) {
+            fatal(myLine, myCharNum,
+                  "string literal with bad escaped character ignored");
+            myCharNum += quote + 1 - start;
+            myPos = quote + 1;
+        } else {
+            unterminatedBadEscape(end);
+        }
+        return false;
+    }
+
+    /**
+     * Report an unterminated string literal with a bad escape that ends
+     * just before end.  (Yylex does not advance the char number here.)
+     */
+    private void unterminatedBadEscape(int end) {
+        fatal(myLine, myCharNum,
+              "unterminated string literal with bad escaped character ignored");
+        myPos = end;
+    }
+
+    /**
+     * Report an error in the input.  Subclasses can override this (and
+     * warn) to collect the messages instead of printing them.
+     */
+    protected void fatal(int lineNum, int charNum, String msg) {
+        ErrMsg.fatal(lineNum, charNum, msg);
+    }
+
+    /**
+     * Report a warning about the input.
+     */
+    protected void warn(int lineNum, int charNum, String msg) {
+        ErrMsg.warn(lineNum, charNum, msg);
+    }
+
+    /**
+     * Skip a comment, i.e., everything up to the end of the line.  The char
+     * number is not updated (the newline resets it anyway).
+     */
+    private void skipComment() {
+        while (myPos < myLimit && at(myPos) != '\n') {
+            myPos++;
+        }
+    }
+
+    /**
+     * Return the byte at index, or -1 past the end of the input.
+     */
+    private int at(int index) {
+        if (index >= myLimit) {
+            return -1;
+        }
+        return myBuf.get(index) & 0xff;
+    }
+
+    private static boolean isLetter(int c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
+    }
+
+    private static boolean isDigit(int c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static boolean isIdChar(int c) {
+        return isLetter(c) || isDigit(c) || c == '_';
+    }
+
+    private static boolean isEscapedChar(int c) {
+        return c == 'n' || c == 't' || c == '\'' || c == '"' || c == '?'
+            || c == '\\';
+    }
+}
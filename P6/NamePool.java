@@ -0,0 +1,199 @@
+import java.nio.*;
+
+// **********************************************************************
+// The NamePool class holds one copy of every identifier spelling and
+// gives each distinct spelling a dense int id (0, 1, 2, ...).
+//
+// The scanners intern each ID token as they find it, IdNodes carry the id
+// and every SymTable is keyed by it, so after scanning two names are the
+// same exactly when their ids are equal and no duplicate Strings are kept.
+//
+// SHARED is the pool used by the whole compiler.  A pool is thread-safe,
+// so scanners running at the same time may all intern in SHARED; code that
+// scans many IDs on several threads (ParallelLexer) still gives each
+// thread a pool of its own so the threads do not wait on each other, and
+// maps the ids to SHARED afterwards.
+// **********************************************************************
+
+class NamePool {
+    // the pool shared by the scanners, the parser and all SymTables
+    static final NamePool SHARED = new NamePool();
+
+    private static final int INITIAL_CAPACITY = 256;
+
+    // names[id] is the spelling of id, hashes[id] its String hash code
+    private String[] names;
+    private int[] hashes;
+    private int count;
+
+    // open-addressing hash table of id+1 (0 marks an empty slot)
+    private int[] table;
+
+    NamePool() {
+        names = new String[INITIAL_CAPACITY];
+        hashes = new int[INITIAL_CAPACITY];
+        table = new int[INITIAL_CAPACITY * 2];
+        count = 0;
+    }
+
+    /**
+     * Return the number of distinct names in the pool.
+     */
+    synchronized int size() {
+        return count;
+    }
+
+    /**
+     * Return the spelling of the name with the given id.
+     */
+    synchronized String name(int id) {
+        return names[id];
+    }
+
+    /**
+     * Return the id of the given name, adding it to the pool if needed.
+     */
+    synchronized int intern(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return add(name, hash, slot);
+            }
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the id of the name of the given length at offset in buf,
+     * adding it to the pool if needed.  A String is only created the first
+     * time a spelling is seen.
+     */
+    synchronized int intern(ByteBuffer buf, int offset, int length) {
+        int hash = 0;
+        for (int k = 0; k < length; k++) {
+            hash = 31 * hash + (buf.get(offset + k) & 0xff);
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return add(MappedScanner.text(buf, offset, length), hash, slot);
+            }
+            if (hashes[id] == hash && sameName(names[id], buf, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the id of the name of the given length at offset in buf,
+     * adding it to the pool if needed.
+     */
+    synchronized int intern(char[] buf, int offset, int length) {
+        int hash = 0;
+        for (int k = 0; k < length; k++) {
+            hash = 31 * hash + buf[offset + k];
+        }
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return add(new String(buf, offset, length), hash, slot);
+            }
+            if (hashes[id] == hash && sameName(names[id], buf, offset, length)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Return the id of the given name, or -1 if it is not in the pool.
+     */
+    synchronized int lookup(String name) {
+        int hash = name.hashCode();
+        int mask = table.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = table[slot] - 1;
+            if (id < 0) {
+                return -1;
+            }
+            if (hashes[id] == hash && names[id].equals(name)) {
+                return id;
+            }
+        }
+    }
+
+    /**
+     * Add a new name whose empty hash-table slot has already been found.
+     */
+    private int add(String name, int hash, int slot) {
+        int id = count++;
+        if (id == names.length) {
+            String[] newNames = new String[2 * names.length];
+            int[] newHashes = new int[2 * names.length];
+            System.arraycopy(names, 0, newNames, 0, id);
+            System.arraycopy(hashes, 0, newHashes, 0, id);
+            names = newNames;
+            hashes = newHashes;
+        }
+        names[id] = name;
+        hashes[id] = hash;
+        table[slot] = id + 1;
+        if (2 * count > table.length) {
+            rehash();
+        }
+        return id;
+    }
+
+    /**
+     * Double the size of the hash table.
+     */
+    private void rehash() {
+        int[] newTable = new int[2 * table.length];
+        int mask = newTable.length - 1;
+        for (int id = 0; id < count; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (newTable[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            newTable[slot] = id + 1;
+        }
+        table = newTable;
+    }
+
+    private static boolean sameName(String name, ByteBuffer buf, int offset,
+                                    int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (name.charAt(k) != (buf.get(offset + k) & 0xff)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean sameName(String name, char[] buf, int offset,
+                                    int length) {
+        if (name.length() != length) {
+            return false;
+        }
+        for (int k = 0; k < length; k++) {
+            if (name.charAt(k) != buf[offset + k]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // spread the bits of a String hash code over the table
+    private static int mix(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+}
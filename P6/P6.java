@@ -1,4 +1,7 @@
 import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 
 import java_cup.runtime.*;
 
@@ -9,12 +12,54 @@ import java_cup.runtime.*;
  *    1. the file to be parsed
  *    2. the output file into which the AST built by the parser should be
  *       unparsed
+ * and optionally some flags after them:
+ *    -mmap   scan the input with the memory-mapped MappedScanner instead
+ *            of the JLex-generated Yylex
+ *    -tokens scan the whole input into a TokenBuffer before parsing
+ *    -plex   like -mmap -tokens, but scan line-aligned chunks of the
+ *            input in parallel (see ParallelLexer)
+ *    -rd     parse with the hand-written RDParser instead of the
+ *            CUP-generated parser
+ *    -stream compile each top-level declaration as soon as it has been
+ *            parsed, instead of the whole program after parsing (see
+ *            StreamingCompiler); memory then stays bounded unless
+ *            -tokens or -plex keeps every token of the input
+ *    -arena  parse the whole program into an AstArena (with -rd, with
+ *            no AST objects in between), then compile it one
+ *            declaration at a time from there; the parsed program takes
+ *            a fraction of the memory of its AST
+ *    -cache  like -arena, but load the parsed program from the .cfast
+ *            file next to the input if it was made from the same text,
+ *            and otherwise save it there after parsing (see AstCache)
+ *    -pcheck analyze the function bodies of the parsed program on
+ *            several threads (see ParallelAnalysis); not with -stream,
+ *            -arena or -cache, which analyze one declaration at a time
+ *    -hotfields
+ *            place the fields of each struct most accessed first (see
+ *            StructLayout); not with -stream, -arena or -cache either
+ *    -watch  compile the input, then again each time it changes, until
+ *            stopped; the text is kept in an IncrementalParser, so only
+ *            the declarations that changed are parsed again (with
+ *            RDParser); not with -tokens, -plex, -stream, -arena or
+ *            -cache
  * The program opens the two files, creates a scanner and a parser, and
  * calls the parser.  If the parse is successful, the AST is unparsed.
  */
 public class P6 {
     FileReader inFile;
+    private String inFileName;
+    private boolean useMappedScanner = false;
+    private boolean useTokenBuffer = false;
+    private boolean useParallelLexer = false;
+    private boolean useRDParser = false;
+    private boolean useStreaming = false;
+    private boolean useArena = false;
+    private boolean useCache = false;
+    private boolean useParallelAnalysis = false;
+    private boolean useHotFields = false;
+    private boolean useWatch = false;
     private PrintWriter outFile;
+    private String outFileName;
     private static PrintStream outStream = System.err;
 	
     public static final int RESULT_CORRECT = 0;
@@ -24,6 +69,9 @@ public class P6 {
     public static final int RESULT_CODEGEN_ERROR = 4;
     public static final int RESULT_OTHER_ERROR = -1;
 
+    // how often -watch looks for a change to the input (milliseconds)
+    static final int WATCH_INTERVAL = 250;
+
     // private PrintWriter co;
 
     /**
@@ -40,7 +88,7 @@ public class P6 {
      * it 
      * @param args command line args array for [<infile> <outfile>]
      */
-    private P6(String[] args){
+    P6(String[] args){
     	//Parse arguments    	
         if (args.length < 2) {
 	    String msg = "please supply name of file to be parsed"
@@ -56,6 +104,51 @@ public class P6 {
 	} catch(BadOutfileException e){
 	    pukeAndDie(e.getMessage());
 	}
+
+	for (int i = 2; i < args.length; i++) {
+	    if (args[i].equals("-mmap")) {
+		setMappedScanner(true);
+	    } else if (args[i].equals("-tokens")) {
+		setTokenBuffer(true);
+	    } else if (args[i].equals("-plex")) {
+		setParallelLexer(true);
+	    } else if (args[i].equals("-rd")) {
+		setRDParser(true);
+	    } else if (args[i].equals("-stream")) {
+		setStreaming(true);
+	    } else if (args[i].equals("-arena")) {
+		setArena(true);
+	    } else if (args[i].equals("-cache")) {
+		setCache(true);
+	    } else if (args[i].equals("-pcheck")) {
+		setParallelAnalysis(true);
+	    } else if (args[i].equals("-hotfields")) {
+		setHotFields(true);
+	    } else if (args[i].equals("-watch")) {
+		setWatch(true);
+	    } else {
+		pukeAndDie("unknown flag: " + args[i]);
+	    }
+	}
+
+	// these compile one declaration at a time, so there is never a
+	// whole program to analyze in parallel or to count field uses in
+	if (useStreaming || useArena || useCache) {
+	    String mode = useStreaming ? "-stream" : useArena ? "-arena" : "-cache";
+	    if (useParallelAnalysis) {
+		pukeAndDie("-pcheck cannot be used with " + mode);
+	    }
+	    if (useHotFields) {
+		pukeAndDie("-hotfields cannot be used with " + mode);
+	    }
+	}
+	// the incremental parser scans and parses each chunk of the text
+	// itself, so it has no use for a token buffer
+	if (useWatch && (useTokenBuffer || useParallelLexer || useStreaming ||
+			 useArena || useCache)) {
+	    pukeAndDie("-watch cannot be used with -tokens, -plex, -stream, " +
+		       "-arena or -cache");
+	}
     }
 
     /**
@@ -65,11 +158,102 @@ public class P6 {
     public void setInfile(String filename) throws BadInfileException{
         try {
             inFile = new FileReader(filename);
+            inFileName = filename;
         } catch (FileNotFoundException ex) {
 	    throw new BadInfileException(ex, filename);
         }
     }
 
+    /**
+     * Choose the scanner: the memory-mapped MappedScanner if mapped is
+     * true, otherwise the JLex-generated Yylex (the default)
+     * @param mapped whether to use the memory-mapped scanner
+     */
+    public void setMappedScanner(boolean mapped){
+	useMappedScanner = mapped;
+    }
+
+    /**
+     * If buffered is true, the whole input is scanned into a TokenBuffer
+     * in one pass and the parser then reads its tokens from there
+     * @param buffered whether to scan ahead into a TokenBuffer
+     */
+    public void setTokenBuffer(boolean buffered){
+	useTokenBuffer = buffered;
+    }
+
+    /**
+     * If parallel is true, the input is memory-mapped and scanned into a
+     * TokenBuffer on several threads before parsing
+     * @param parallel whether to scan in parallel
+     */
+    public void setParallelLexer(boolean parallel){
+	useParallelLexer = parallel;
+    }
+
+    /**
+     * Choose the parser: the hand-written RDParser if rd is true,
+     * otherwise the CUP-generated parser (the default)
+     * @param rd whether to use the recursive-descent parser
+     */
+    public void setRDParser(boolean rd){
+	useRDParser = rd;
+    }
+
+    /**
+     * If streaming is true, each top-level declaration is analyzed and
+     * translated as soon as it has been parsed, and then dropped
+     * @param streaming whether to compile one declaration at a time
+     */
+    public void setStreaming(boolean streaming){
+	useStreaming = streaming;
+    }
+
+    /**
+     * If arena is true, the parsed program is kept in an AstArena and
+     * its declarations are compiled one at a time from there
+     * @param arena whether to keep the program in an AstArena
+     */
+    public void setArena(boolean arena){
+	useArena = arena;
+    }
+
+    /**
+     * If cache is true, the parsed program is loaded from (or saved to)
+     * a .cfast file next to the input; this implies setArena(true)
+     * @param cache whether to cache the parsed program
+     */
+    public void setCache(boolean cache){
+	useCache = cache;
+    }
+
+    /**
+     * If parallel is true, the function bodies of a program that is
+     * parsed whole are analyzed on several threads
+     * @param parallel whether to use ParallelAnalysis
+     */
+    public void setParallelAnalysis(boolean parallel){
+	useParallelAnalysis = parallel;
+    }
+
+    /**
+     * If hot is true, the fields of each struct of a program that is
+     * parsed whole are placed most accessed first
+     * @param hot whether to reorder struct fields by access count
+     */
+    public void setHotFields(boolean hot){
+	useHotFields = hot;
+    }
+
+    /**
+     * If watch is true, the input is compiled again each time it
+     * changes, until the run is stopped
+     * @param watch whether to keep compiling the input
+     */
+    public void setWatch(boolean watch){
+	useWatch = watch;
+    }
+
     /**
      * Text file output 
      * @param filename path to destination file
@@ -77,6 +261,7 @@ public class P6 {
     public void setOutfile(String filename) throws BadOutfileException{
         try {
             outFile = new PrintWriter(filename);
+            outFileName = filename;
 	    // co = new PrintWriter("check_offset.out");
         } catch (FileNotFoundException ex) {
 	    throw new BadOutfileException(ex, filename);
@@ -133,42 +318,251 @@ public class P6 {
     /** the parser will return a Symbol whose value
      * field is the translation of the root nonterminal
      * (i.e., of the nonterminal "program")
+     * @param sink if not null, gets the top-level declarations as they
+     *        are parsed (and the program's declaration list stays empty)
      * @return root of the CFG
      */
-    private Symbol parseCFG(){
+    private Symbol parseCFG(DeclSink sink){
 	try {
-	    parser P = new parser(new Yylex(inFile));
+	    Scanner scanner = makeScanner();
+	    if (useRDParser) {
+		RDParser P = new RDParser(scanner);
+		P.setDeclSink(sink);
+		return P.parse();
+	    }
+	    parser P = parser.create(scanner);
+	    P.setDeclSink(sink);
 	    return P.parse();
 	} catch (Exception e){
 	    return null;
 	}
     }
 	
+    /**
+     * Create the scanner selected by the flags
+     * @return scanner for the input file
+     */
+    private Scanner makeScanner() throws Exception{
+	if (useParallelLexer) {
+	    ByteBuffer src = MappedScanner.map(inFileName);
+	    return new TokenBufferScanner(ParallelLexer.lex(src));
+	}
+
+	if (useMappedScanner) {
+	    MappedScanner scanner = MappedScanner.open(inFileName);
+	    if (useTokenBuffer) {
+		return new TokenBufferScanner(TokenBuffer.lex(scanner));
+	    }
+	    return scanner;
+	}
+
+	Scanner scanner = new Yylex(inFile);
+	if (useTokenBuffer) {
+	    return new TokenBufferScanner(TokenBuffer.lexSymbols(scanner));
+	}
+	return scanner;
+    }
+	
     public int process(){
-	Symbol cfgRoot = parseCFG();
+	// forget the symbols of any earlier compile in this run (DepthBench
+	// runs several)
+	SymAttrs.reset();
+	StructLayout.reset();
+	if (useStreaming) {
+	    return emptyOutputUnlessCorrect(processStreaming());
+	}
+	if (useArena || useCache) {
+	    return emptyOutputUnlessCorrect(processArena());
+	}
+	if (useWatch) {
+	    return processWatch();
+	}
+
+	Symbol cfgRoot = parseCFG(null);
 		
 	if (ErrMsg.getErr()) {  
 	    return P6.RESULT_SYNTAX_ERROR;
 	}
 		
-        ProgramNode astRoot = (ProgramNode)cfgRoot.value; 
-	astRoot.nameAnalysis();  // perform name analysis
+	return compile((ProgramNode)cfgRoot.value, outFile);
+    }
+
+    /**
+     * Analyze a parsed program and, if it has no errors, translate it
+     * @param astRoot the program
+     * @param out where the code goes
+     * @return one of the RESULT_ codes, as for process
+     */
+    private int compile(ProgramNode astRoot, PrintWriter out){
+	// name analysis, offsets and type checking, in one walk
+	boolean declErrors, typeErrors;
+	if (useParallelAnalysis) {
+	    ParallelAnalysis analysis = new ParallelAnalysis();
+	    astRoot.accept(analysis);
+	    declErrors = analysis.declErrors();
+	    typeErrors = analysis.typeErrors();
+	} else {
+	    AnalysisPass analysis = new AnalysisPass();
+	    astRoot.accept(analysis);
+	    declErrors = analysis.declErrors();
+	    typeErrors = analysis.typeErrors();
+	}
 	// astRoot.unparse(outFile, 0);
-	if(ErrMsg.getErr())
+	if(declErrors)
 	    return P6.RESULT_DECL_ERROR;
 		
-	if (!astRoot.typeCheck()){
+	if (typeErrors){
 	    //Giving up due to type checking errors
 	    return P6.RESULT_TYPE_ERROR;
 	}
 
-	astRoot.codeGen(outFile);
+	if (useHotFields) {
+	    StructLayout.placeAllHotFirst();
+	}
+
+	astRoot.codeGen(out);
 
 
 	// astRoot.unparse(co, 0);
 	return P6.RESULT_CORRECT;
     }
-	
+
+    /**
+     * Compile the program, then again each time the input file changes
+     * (its time or length, looked at every WATCH_INTERVAL ms), writing
+     * the output file anew each time; only stops when the run is
+     * stopped.  The text is kept in an IncrementalParser, which parses
+     * again only the declarations that changed
+     * @return RESULT_OTHER_ERROR, if the thread is interrupted
+     */
+    private int processWatch(){
+	File file = new File(inFileName);
+	IncrementalParser source = null;
+	long modified = -1;
+	long length = -1;
+	while (true) {
+	    if (file.lastModified() != modified || file.length() != length) {
+		modified = file.lastModified();
+		length = file.length();
+		try {
+		    String text = new String(Files.readAllBytes(file.toPath()),
+					     StandardCharsets.ISO_8859_1);
+		    source = recompile(source, text);
+		} catch (IOException e) {
+		    // the input is being replaced, say: try again when it
+		    // changes
+		    outStream.println("Could not compile " + inFileName + ": " + e);
+		}
+	    }
+	    try {
+		Thread.sleep(WATCH_INTERVAL);
+	    } catch (InterruptedException e) {
+		return P6.RESULT_OTHER_ERROR;
+	    }
+	}
+    }
+
+    /**
+     * Compile text, the new text of the input, for -watch
+     * @param source the input's text before, or null the first time
+     * @param text its text now
+     * @return source updated to text (or a new one the first time)
+     */
+    private IncrementalParser recompile(IncrementalParser source, String text)
+	throws IOException{
+	ErrMsg.reset();
+	Codegen.resetLabels();
+	SymAttrs.reset();
+	StructLayout.reset();
+	if (source == null) {
+	    source = new IncrementalParser(text);
+	} else {
+	    // the chunks parsed again report their errors, and so does
+	    // reportErrors: keep the first ones quiet
+	    ErrMsg.collect(new ErrMsg.Bucket());
+	    source.update(text);
+	    ErrMsg.collect(null);
+	    source.reportErrors();
+	}
+	int resultCode = RESULT_SYNTAX_ERROR;
+	if (!source.hasErrors()) {
+	    PrintWriter out = new PrintWriter(outFileName);
+	    try {
+		resultCode = compile(source.program(), out);
+	    } finally {
+		out.close();
+	    }
+	}
+	outStream.println(resultCode == RESULT_CORRECT ? "Compiled " + inFileName
+			  : resultMessage(resultCode));
+	return source;
+    }
+
+    /**
+     * After a compile one declaration at a time that found an error,
+     * empty the output file, which holds the code of the declarations
+     * compiled before it, so that it is left as the batch compiler leaves
+     * it: a truncated program would look like a complete one
+     * @param resultCode the result of the compile
+     * @return resultCode
+     */
+    private int emptyOutputUnlessCorrect(int resultCode){
+	if (resultCode != RESULT_CORRECT) {
+	    outFile.close();
+	    try {
+		outFile = new PrintWriter(outFileName);
+	    } catch (FileNotFoundException e) {
+		// it could be opened a moment ago: leave it as it is
+		outFile = null;
+	    }
+	}
+	return resultCode;
+    }
+
+    /**
+     * Compile the program one declaration at a time while parsing it
+     * @return one of the RESULT_ codes, as for process
+     */
+    private int processStreaming(){
+	StreamingCompiler compiler = new StreamingCompiler(outFile);
+	if (parseCFG(compiler) == null) {
+	    if (compiler.failure() != null) {
+		throw compiler.failure();
+	    }
+	    return P6.RESULT_SYNTAX_ERROR;
+	}
+	return compiler.finish();
+    }
+
+    /**
+     * Parse the whole program into an AstArena (or, with -cache, load it
+     * from the cache), then compile the declarations one at a time, each
+     * built from the arena and dropped after it has been compiled.  A
+     * program whose parse reported warnings is not cached, since loading
+     * it would not report them again
+     * @return one of the RESULT_ codes, as for process
+     */
+    private int processArena(){
+	AstCache cache = useCache ? new AstCache(inFileName) : null;
+	AstArena arena = cache != null ? cache.load() : null;
+	if (arena == null) {
+	    int warnings = ErrMsg.warningCount();
+	    arena = new AstArena();
+	    if (parseCFG(arena) == null || ErrMsg.getErr()) {
+		return P6.RESULT_SYNTAX_ERROR;
+	    }
+	    arena.trim();
+	    if (cache != null && ErrMsg.warningCount() == warnings) {
+		cache.save(arena);
+	    }
+	}
+	StreamingCompiler compiler = new StreamingCompiler(outFile);
+	for (int i = 0; i < arena.declCount(); i++) {
+	    compiler.decl(arena.decl(i));
+	}
+	return compiler.finish();
+    }
+
     public void run(){
 	int resultCode = process();
 	if (resultCode == RESULT_CORRECT){
@@ -176,15 +570,22 @@ public class P6 {
 	    return;
 	}
 		
+	pukeAndDie(resultMessage(resultCode), resultCode);
+    }
+
+    /**
+     * Return the message for a RESULT_ code other than RESULT_CORRECT
+     */
+    private static String resultMessage(int resultCode){
 	switch(resultCode){
 	case RESULT_SYNTAX_ERROR:
-	    pukeAndDie("Syntax error", resultCode);
+	    return "Syntax error";
 	case RESULT_DECL_ERROR:
-	    pukeAndDie("Name Analyze error", resultCode);
+	    return "Name Analyze error";
 	case RESULT_TYPE_ERROR:
-	    pukeAndDie("Type checking error", resultCode);
+	    return "Type checking error";
 	default:
-	    pukeAndDie("Type checking error", RESULT_OTHER_ERROR);
+	    return "Type checking error";
 	}
     }
 	
@@ -220,6 +621,6 @@ public class P6 {
 	
     public static void main(String[] args){
     	P6 instance = new P6(args);
-    	instance.run();
+	instance.run();
     }
 }
@@ -0,0 +1,201 @@
+import java.util.*;
+import java.util.concurrent.*;
+
+// **********************************************************************
+// The ParallelAnalysis class does what AnalysisPass does for a whole
+// program, with the function bodies analyzed on several threads (P6
+// -pcheck).
+//
+// A function body depends only on the globals declared before it and on
+// its own formals and locals.  So the program is analyzed in two phases:
+//   - the top-level declarations are entered in order on this thread:
+//     global variables and struct definitions are name-analyzed as usual,
+//     and each function is added to the global table and its formals are
+//     declared in a SymTable of its own, which reads the global table but
+//     sees only the symbols declared before the body;
+//   - the bodies are then analyzed, each by an AnalysisPass on its
+//     function's table, as tasks on a pool of threads.
+// The errors found for each top-level declaration, in either phase, go
+// into a bucket of its own (see ErrMsg.Bucket).  Once all bodies are done
+// the buckets are reported in source order: the name errors first, and
+// the type errors only if there was no name error.  So the same messages
+// are reported in the same order as AnalysisPass reports them.
+//
+// Each body is a task of its own on a fixed pool of threads, no more of
+// them than there are bodies.  Each thread is given a WORKER_STACK_SIZE
+// stack, whatever the JVM's default: AnalysisPass keeps its place in a
+// deeply nested body on stacks of its own (see Walk), so a small stack
+// does for any body, and the pool reserves little even on a machine with
+// many processors.
+// **********************************************************************
+
+class ParallelAnalysis extends ASTVisitor {
+    // the stack size of the pool's threads
+    static final long WORKER_STACK_SIZE = 256 << 10;
+
+    private int myThreads;
+    private SymTable myGlobals = new SymTable();
+    private AnalysisPass myGlobalPass = new AnalysisPass(myGlobals);
+
+    // one bucket per top-level declaration, in source order, and the
+    // function bodies left for the second phase
+    private List<ErrMsg.Bucket> myBuckets = new ArrayList<ErrMsg.Bucket>();
+    private List<Body> myBodies = new ArrayList<Body>();
+
+    private boolean myDeclErrors = false;
+    private boolean myTypeErrors = false;
+
+    /**
+     * Analyze function bodies on as many threads as there are processors.
+     */
+    public ParallelAnalysis() {
+        this(Runtime.getRuntime().availableProcessors());
+    }
+
+    public ParallelAnalysis(int threads) {
+        myThreads = threads;
+    }
+
+    /**
+     * Return true if name analysis has reported an error.
+     */
+    public boolean declErrors() {
+        return myDeclErrors;
+    }
+
+    /**
+     * Return true if type checking has found a function incorrect.
+     */
+    public boolean typeErrors() {
+        return myTypeErrors;
+    }
+
+    public void visit(ProgramNode node) {
+        node.visitChildren(this);
+        analyzeBodies();
+
+        for (ErrMsg.Bucket bucket : myBuckets) {
+            ErrMsg.report(bucket);
+            if (bucket.hasErrors()) {
+                myDeclErrors = true;
+            }
+        }
+        myGlobalPass.checkMain();
+        if (myGlobalPass.declErrors()) {
+            myDeclErrors = true;
+        }
+        if (!myDeclErrors) {
+            for (ErrMsg.Bucket bucket : myBuckets) {
+                ErrMsg.reportDeferred(bucket);
+            }
+        }
+    }
+
+    /**
+     * Global variables and struct definitions.
+     */
+    public void visitDecl(DeclNode node) {
+        ErrMsg.collect(newBucket());
+        try {
+            node.accept(myGlobalPass);
+        } finally {
+            ErrMsg.collect(null);
+        }
+    }
+
+    public void visit(FnDeclNode node) {
+        Body body = new Body(node, newBucket());
+        ErrMsg.collect(body.bucket);
+        try {
+            body.sym = node.declareName(myGlobals);
+            body.symTab = new SymTable(myGlobals, SymAttrs.SHARED.size());
+            node.declareFormals(body.symTab, body.sym);
+        } finally {
+            ErrMsg.collect(null);
+        }
+        myBodies.add(body);
+    }
+
+    private ErrMsg.Bucket newBucket() {
+        ErrMsg.Bucket bucket = new ErrMsg.Bucket();
+        myBuckets.add(bucket);
+        return bucket;
+    }
+
+    /**
+     * The second phase: analyze all function bodies on the pool, and
+     * wait for them.  An exception or error thrown by one is thrown
+     * again here.
+     */
+    private void analyzeBodies() {
+        int threads = Math.min(myThreads, myBodies.size());
+        if (threads == 0) {
+            return;
+        }
+        ExecutorService pool = Executors.newFixedThreadPool(threads, new ThreadFactory() {
+                public Thread newThread(Runnable task) {
+                    Thread thread = new Thread(null, task, "analysis",
+                                               WORKER_STACK_SIZE);
+                    thread.setDaemon(true);
+                    return thread;
+                }
+            });
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for (Body body : myBodies) {
+                results.add(pool.submit(body));
+            }
+            for (Future<?> result : results) {
+                result.get();
+            }
+        } catch (InterruptedException ex) {
+            throw new RuntimeException(ex);
+        } catch (ExecutionException ex) {
+            if (ex.getCause() instanceof RuntimeException) {
+                throw (RuntimeException)ex.getCause();
+            }
+            throw (Error)ex.getCause();
+        } finally {
+            pool.shutdownNow();
+        }
+
+        for (Body body : myBodies) {
+            if (body.declErrors) {
+                myDeclErrors = true;
+            }
+            if (body.typeErrors) {
+                myTypeErrors = true;
+            }
+        }
+    }
+
+    /**
+     * Body
+     * The task that analyzes one function's body, and its results.
+     */
+    private static class Body implements Runnable {
+        final FnDeclNode node;
+        final ErrMsg.Bucket bucket;
+        FnSym sym;
+        SymTable symTab;  // the function's own (see SymTable(SymTable, int))
+        boolean declErrors;
+        boolean typeErrors;
+
+        Body(FnDeclNode node, ErrMsg.Bucket bucket) {
+            this.node = node;
+            this.bucket = bucket;
+        }
+
+        public void run() {
+            ErrMsg.collect(bucket);
+            try {
+                AnalysisPass pass = new AnalysisPass(symTab);
+                pass.visitBody(node, sym);
+                declErrors = pass.declErrors();
+                typeErrors = pass.typeErrors();
+            } finally {
+                ErrMsg.collect(null);
+            }
+        }
+    }
+}
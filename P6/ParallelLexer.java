@@ -0,0 +1,192 @@
+import java.nio.*;
+import java.util.*;
+import java.util.concurrent.*;
+
+// **********************************************************************
+// The ParallelLexer class scans one large source file on several threads.
+//
+// No CFlat token can span a line: string literals cannot contain a
+// newline and the only comments run to the end of the line.  So the
+// input is cut into chunks that each end just after a newline, every
+// chunk is scanned on its own by a MappedScanner (on a ForkJoin pool),
+// and the chunks' token streams are joined in order:
+//   - each chunk is scanned as if it started on line 1, and its line
+//     numbers are shifted by the number of lines in the chunks before it;
+//   - each chunk interns its IDs in a NamePool of its own (so that the
+//     threads do not wait on each other for SHARED), and the ids are
+//     mapped to NamePool.SHARED when joining;
+//   - warnings and errors are held back and reported in source order
+//     after all chunks have been scanned.
+// The result is the same TokenBuffer that TokenBuffer.lex would build.
+// **********************************************************************
+
+public class ParallelLexer {
+    // chunks smaller than this are not worth a task of their own
+    private static final int MIN_CHUNK = 1 << 20;
+
+    /**
+     * Scan the given source with the common ForkJoin pool.
+     */
+    public static TokenBuffer lex(ByteBuffer src) {
+        return lex(src, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Scan the given source with the given pool.
+     */
+    public static TokenBuffer lex(ByteBuffer src, ForkJoinPool pool) {
+        List<Chunk> chunks = split(src, pool.getParallelism());
+        if (chunks.size() == 1) {
+            return TokenBuffer.lex(new MappedScanner(src.duplicate()));
+        }
+
+        pool.invoke(new ScanTask(chunks, 0, chunks.size()));
+
+        // join the chunks in order
+        int total = 0;
+        for (Chunk chunk : chunks) {
+            total += chunk.tokens.size();
+        }
+        TokenBuffer tokens = new TokenBuffer(total);
+        int lineDelta = 0;
+        for (Chunk chunk : chunks) {
+            chunk.report(lineDelta);
+
+            int[] nameMap = new int[chunk.names.size()];
+            for (int id = 0; id < nameMap.length; id++) {
+                nameMap[id] = NamePool.SHARED.intern(chunk.names.name(id));
+            }
+            tokens.append(chunk.tokens, lineDelta, nameMap);
+            lineDelta += chunk.lines;
+            chunk.tokens = null;  // let the chunk's buffer go
+        }
+        return tokens;
+    }
+
+    /**
+     * Cut src into pieces of about equal size (several per thread, so that
+     * uneven pieces still balance) that each end just after a newline.
+     */
+    private static List<Chunk> split(ByteBuffer src, int parallelism) {
+        int start = src.position();
+        int limit = src.limit();
+        int size = Math.max(MIN_CHUNK, (limit - start) / (4 * parallelism));
+
+        List<Chunk> chunks = new ArrayList<Chunk>();
+        while (start < limit) {
+            int end = start + size;
+            if (end >= limit) {
+                end = limit;
+            } else {
+                while (end < limit && src.get(end - 1) != '\n') {
+                    end++;
+                }
+            }
+            ByteBuffer slice = src.duplicate();
+            slice.limit(end);
+            slice.position(start);
+            chunks.add(new Chunk(slice));
+            start = end;
+        }
+        if (chunks.isEmpty()) {
+            chunks.add(new Chunk(src.duplicate()));
+        }
+        return chunks;
+    }
+
+    /**
+     * ScanTask
+     * Scans chunks [lo, hi), splitting the range in half until only one
+     * chunk is left.
+     */
+    private static class ScanTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final List<Chunk> chunks;
+        private final int lo;
+        private final int hi;
+
+        ScanTask(List<Chunk> chunks, int lo, int hi) {
+            this.chunks = chunks;
+            this.lo = lo;
+            this.hi = hi;
+        }
+
+        protected void compute() {
+            if (hi - lo == 1) {
+                chunks.get(lo).scan();
+                return;
+            }
+            int mid = (lo + hi) >>> 1;
+            invokeAll(new ScanTask(chunks, lo, mid), new ScanTask(chunks, mid, hi));
+        }
+    }
+
+    /**
+     * Chunk
+     * One line-aligned piece of the input and the result of scanning it.
+     */
+    private static class Chunk {
+        final ByteBuffer src;
+        final NamePool names = new NamePool();
+        TokenBuffer tokens;
+        int lines;  // number of lines in the chunk
+
+        // messages held back until the chunks are joined
+        final List<Message> messages = new ArrayList<Message>();
+
+        Chunk(ByteBuffer src) {
+            this.src = src;
+        }
+
+        void scan() {
+            MappedScanner scanner = new MappedScanner(src, 1, names) {
+                protected void fatal(int lineNum, int charNum, String msg) {
+                    hold(lineNum, charNum, msg, true);
+                }
+                protected void warn(int lineNum, int charNum, String msg) {
+                    hold(lineNum, charNum, msg, false);
+                }
+            };
+            tokens = new TokenBuffer(src.remaining() / 4);
+            tokens.addAll(scanner);
+            lines = scanner.lineNum() - 1;  // after EOF: the line past the end
+        }
+
+        void hold(int lineNum, int charNum, String msg, boolean isFatal) {
+            messages.add(new Message(lineNum, charNum, msg, isFatal));
+        }
+
+        /**
+         * Report the held-back messages, with line numbers shifted by
+         * lineDelta.
+         */
+        void report(int lineDelta) {
+            for (Message m : messages) {
+                if (m.fatal) {
+                    ErrMsg.fatal(m.lineNum + lineDelta, m.charNum, m.msg);
+                } else {
+                    ErrMsg.warn(m.lineNum + lineDelta, m.charNum, m.msg);
+                }
+            }
+        }
+    }
+
+    /**
+     * Message
+     * A warning or error found while scanning a chunk.
+     */
+    private static class Message {
+        final int lineNum;
+        final int charNum;
+        final String msg;
+        final boolean fatal;
+
+        Message(int lineNum, int charNum, String msg, boolean fatal) {
+            this.lineNum = lineNum;
+            this.charNum = charNum;
+            this.msg = msg;
+            this.fatal = fatal;
+        }
+    }
+}
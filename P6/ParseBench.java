@@ -0,0 +1,117 @@
+import java.io.*;
+import java.nio.*;
+import java.util.*;
+
+import java_cup.runtime.Symbol;
+
+// **********************************************************************
+// The ParseBench class compares the CUP-generated parser with the
+// hand-written RDParser: it checks that they build the same AST and
+// measures how fast they run.
+//
+// Usage: java ParseBench [options] <file> ...
+//    -parser P,...   which parsers to run (default: all of them)
+//                      cup       parser over a TokenBufferScanner
+//                      rd        RDParser over the same TokenBuffer
+//                      rd-arena  RDParser over the same TokenBuffer into
+//                                an AstArena (no AST objects)
+//                      cup-mmap  parser reading a MappedScanner
+//                      rd-mmap   RDParser reading a MappedScanner
+//    -warmup N       untimed runs before measuring (default 3)
+//    -runs N         timed runs, at least 1 (default 5)
+//
+// Each file is scanned into a TokenBuffer once; cup, rd and rd-arena
+// parse that buffer, so they time the parsers alone, while cup-mmap and
+// rd-mmap scan as they parse.  Before timing, the file is parsed by both
+// parsers (and into an arena, whose AST is then built) and the ASTs are
+// unparsed (after name analysis, which unparse needs for struct field
+// accesses); if the output differs the benchmark stops.
+//
+// As in LexBench every run parses the file until at least Bench.MIN_BYTES
+// have been parsed, and the median run is reported (see Bench).
+// **********************************************************************
+
+public class ParseBench {
+    private static final String[] PARSERS = {
+        "cup", "rd", "rd-arena", "cup-mmap", "rd-mmap"
+    };
+
+    public static void main(String[] args) throws Exception {
+        Bench bench = new Bench("ParseBench", "parser", PARSERS, args);
+        bench.printHeader();
+        PrintStream err = System.err;
+        for (final String file : bench.files()) {
+            long size = new File(file).length();
+            final ByteBuffer mapped = MappedScanner.map(file);
+            final TokenBuffer tokens =
+                TokenBuffer.lex(new MappedScanner(mapped.duplicate()));
+            System.setErr(new PrintStream(new Bench.NullOutputStream()));
+            boolean same;
+            try {
+                String cup = unparse(parse("cup", tokens, mapped));
+                same = cup.equals(unparse(parse("rd", tokens, mapped))) &&
+                       cup.equals(unparse(parseArena(tokens).program()));
+            } finally {
+                System.setErr(err);
+            }
+            if (!same) {
+                System.err.println(file + ": the parsers build different ASTs");
+                System.exit(-1);
+            }
+
+            for (final String which : bench.choices()) {
+                bench.measure(which, file, size, new Bench.Pass() {
+                        public long run() throws Exception {
+                            if (which.equals("rd-arena")) {
+                                parseArena(tokens);
+                            } else {
+                                parse(which, tokens, mapped);
+                            }
+                            return tokens.size();
+                        }
+                    });
+            }
+        }
+    }
+
+    /**
+     * Parse tokens (or a duplicate of mapped, for the -mmap parsers) once
+     * and return the AST.
+     */
+    private static ProgramNode parse(String which, TokenBuffer tokens,
+                                     ByteBuffer mapped) throws Exception {
+        Symbol root;
+        if (which.equals("cup")) {
+            root = parser.create(new TokenBufferScanner(tokens)).parse();
+        } else if (which.equals("rd")) {
+            root = new RDParser(tokens).parse();
+        } else if (which.equals("cup-mmap")) {
+            root = parser.create(new MappedScanner(mapped.duplicate())).parse();
+        } else {
+            root = new RDParser(new MappedScanner(mapped.duplicate())).parse();
+        }
+        return (ProgramNode)root.value;
+    }
+
+    /**
+     * Parse tokens once with the RDParser into an arena and return it.
+     */
+    private static AstArena parseArena(TokenBuffer tokens) throws Exception {
+        RDParser p = new RDParser(tokens);
+        AstArena arena = new AstArena();
+        p.setDeclSink(arena);
+        p.parse();
+        return arena;
+    }
+
+    private static String unparse(ProgramNode root) {
+        SymAttrs.reset();
+        StructLayout.reset();
+        root.nameAnalysis();
+        StringWriter out = new StringWriter();
+        PrintWriter p = new PrintWriter(out);
+        root.unparse(p, 0);
+        p.flush();
+        return out.toString();
+    }
+}
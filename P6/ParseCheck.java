@@ -0,0 +1,273 @@
+import java.io.*;
+import java.nio.*;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+
+// **********************************************************************
+// The ParseCheck class checks that RDParser parses like the CUP parser,
+// on the programs it is given and on many copies of them with a few
+// tokens changed, so that most of the copies have syntax errors in
+// them.
+//
+// Usage: java ParseCheck [options] <file> ...
+//    -programs N    number of changed programs to parse (default 10000)
+//    -edits N       at most N tokens are changed in each (default 3)
+//    -seed N        seed for the random changes (default 1)
+//
+// A change deletes a token, repeats it, replaces it with another token
+// of the same program or with one of a few tokens often out of place
+// (';', '}', '(', "else") or swaps it with the next one.  Changed program
+// i is made from input file i mod <number of files>, and the same options
+// always give the same programs.
+//
+// Both parsers read the program through a MappedScanner and hand its
+// declarations to an AstArena (the RDParser adds their nodes to it as it
+// parses).  They must report the same errors, in the same order, give up
+// on the same programs and give the same declarations: those built from
+// each arena are encoded again and AstArena.toBytes is compared, since
+// after a syntax error the RDParser's arena, which it fills as it
+// parses, and the CUP parser's, filled a declaration at a time, need not
+// be laid out alike.  A program on which they differ is written to
+// parsecheck<i>.cf; the exit status is -1 if there is any.
+// **********************************************************************
+
+public class ParseCheck {
+    private static final String[] MISPLACED = { ";", "}", "(", "else" };
+    private static final int MAX_REPORTED = 10;
+
+    private int myPrograms = 10000;
+    private int myEdits = 3;
+    private Random myRandom = new Random(1);
+    private boolean myLastHadErrors;  // in the last program parsed
+
+    public static void main(String[] args) throws Exception {
+        ParseCheck check = new ParseCheck();
+        List<String> files = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            String arg = args[i];
+            if (!arg.startsWith("-")) {
+                files.add(arg);
+            } else if (i + 1 == args.length) {
+                usage("missing value for " + arg);
+            } else if (arg.equals("-programs")) {
+                check.myPrograms = number(arg, args[++i], 0);
+            } else if (arg.equals("-edits")) {
+                check.myEdits = number(arg, args[++i], 1);
+            } else if (arg.equals("-seed")) {
+                check.myRandom = new Random(number(arg, args[++i], 0));
+            } else {
+                usage("unknown option " + arg);
+            }
+        }
+        if (files.isEmpty()) {
+            usage("please supply the input files");
+        }
+
+        List<Source> sources = new ArrayList<Source>();
+        for (String file : files) {
+            sources.add(new Source(MappedScanner.map(file)));
+        }
+        int mismatches = 0;
+        for (int i = 0; i < sources.size(); i++) {
+            if (!check.same(files.get(i), sources.get(i).text(), mismatches)) {
+                mismatches++;
+            }
+        }
+        int withErrors = 0;
+        for (int i = 0; i < check.myPrograms; i++) {
+            String text = check.edit(sources.get(i % sources.size()));
+            String name = "parsecheck" + i + ".cf";
+            if (!check.same(name, text, mismatches)) {
+                mismatches++;
+                if (mismatches <= MAX_REPORTED) {
+                    write(name, text);
+                }
+            }
+            if (check.myLastHadErrors) {
+                withErrors++;
+            }
+        }
+        System.out.println(check.myPrograms + " changed programs, " + withErrors +
+                           " with syntax errors, " + mismatches + " mismatches");
+        if (mismatches > 0) {
+            System.exit(-1);
+        }
+    }
+
+    /**
+     * Parse text with both parsers and return true if they agree; if
+     * not, show how they differ (only for the first MAX_REPORTED
+     * differences, of which reported have been shown already).
+     */
+    private boolean same(String name, String text, int reported) {
+        Outcome cup = parse(text, false);
+        Outcome rd = parse(text, true);
+        myLastHadErrors = cup.errors.length() > 0;
+        if (cup.errors.equals(rd.errors) && cup.gaveUp == rd.gaveUp &&
+            cup.decls.equals(rd.decls)) {
+            return true;
+        }
+        if (reported < MAX_REPORTED) {
+            System.out.println(name + ": the parsers differ");
+            System.out.print("cup" + (cup.gaveUp ? " (gave up)" : "") + ":\n" + cup.errors);
+            System.out.print("rd" + (rd.gaveUp ? " (gave up)" : "") + ":\n" + rd.errors);
+            if (!cup.decls.equals(rd.decls)) {
+                System.out.println("and the declarations differ");
+            }
+        }
+        return false;
+    }
+
+    private static void write(String name, String text) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(name),
+                                            StandardCharsets.ISO_8859_1);
+        try {
+            out.write(text);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Parse text with the RDParser if rd is true, and otherwise with the
+     * CUP parser.
+     */
+    private static Outcome parse(String text, boolean rd) {
+        ByteBuffer buf = ByteBuffer.wrap(text.getBytes(StandardCharsets.ISO_8859_1));
+        MappedScanner scanner = new MappedScanner(buf);
+        AstArena arena = new AstArena();
+        Outcome outcome = new Outcome();
+        ByteArrayOutputStream errors = new ByteArrayOutputStream();
+        PrintStream err = System.err;
+        System.setErr(new PrintStream(errors));
+        try {
+            if (rd) {
+                RDParser p = new RDParser(scanner);
+                p.setDeclSink(arena);
+                p.parse();
+            } else {
+                parser p = parser.create(scanner);
+                p.setDeclSink(arena);
+                p.parse();
+            }
+        } catch (Exception ex) {
+            outcome.gaveUp = true;
+        } finally {
+            System.setErr(err);
+        }
+        outcome.errors = errors.toString();
+        AstArena built = new AstArena();
+        for (int i = 0; i < arena.declCount(); i++) {
+            built.decl(arena.decl(i));
+        }
+        outcome.decls = built.toBytes();
+        return outcome;
+    }
+
+    /**
+     * Return the text of source with between 1 and myEdits tokens
+     * changed.
+     */
+    private String edit(Source source) {
+        List<String> tokens = new ArrayList<String>(source.tokens);
+        List<String> gaps = new ArrayList<String>(source.gaps);
+        int edits = 1 + myRandom.nextInt(myEdits);
+        for (int e = 0; e < edits && !tokens.isEmpty(); e++) {
+            int k = myRandom.nextInt(tokens.size());
+            switch (myRandom.nextInt(5)) {
+            case 0:
+                tokens.remove(k);
+                gaps.set(k, gaps.get(k) + gaps.remove(k + 1));
+                break;
+            case 1:
+                tokens.add(k, tokens.get(k));
+                gaps.add(k + 1, "");
+                break;
+            case 2:
+                tokens.set(k, source.tokens.get(myRandom.nextInt(source.tokens.size())));
+                break;
+            case 3:
+                tokens.set(k, MISPLACED[myRandom.nextInt(MISPLACED.length)]);
+                break;
+            default:
+                if (k + 1 < tokens.size()) {
+                    String next = tokens.get(k + 1);
+                    tokens.set(k + 1, tokens.get(k));
+                    tokens.set(k, next);
+                }
+                break;
+            }
+        }
+        // tokens that were apart in the source may now be next to each
+        // other, so keep them apart
+        for (int k = 1; k < tokens.size(); k++) {
+            if (gaps.get(k).isEmpty()) {
+                gaps.set(k, " ");
+            }
+        }
+        return join(tokens, gaps);
+    }
+
+    private static String join(List<String> tokens, List<String> gaps) {
+        StringBuilder text = new StringBuilder();
+        for (int k = 0; k < tokens.size(); k++) {
+            text.append(gaps.get(k)).append(tokens.get(k));
+        }
+        return text.append(gaps.get(tokens.size())).toString();
+    }
+
+    private static int number(String option, String value, int min) {
+        int n = 0;
+        try {
+            n = Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            usage("bad number for " + option + ": " + value);
+        }
+        if (n < min) {
+            usage(option + " must be at least " + min);
+        }
+        return n;
+    }
+
+    private static void usage(String msg) {
+        System.err.println(msg);
+        System.err.println("usage: java ParseCheck [-programs N] [-edits N] " +
+                           "[-seed N] <file> ...");
+        System.exit(-1);
+    }
+
+    /**
+     * Source
+     * An input program split into its tokens and the text around them:
+     * gap k comes before token k, and the last gap ends the program.
+     */
+    private static class Source {
+        final List<String> tokens = new ArrayList<String>();
+        final List<String> gaps = new ArrayList<String>();
+
+        Source(ByteBuffer buf) {
+            MappedScanner scanner = new MappedScanner(buf);
+            int end = 0;
+            while (scanner.next() != sym.EOF) {
+                gaps.add(MappedScanner.text(buf, end, scanner.offset() - end));
+                tokens.add(scanner.text());
+                end = scanner.offset() + scanner.length();
+            }
+            gaps.add(MappedScanner.text(buf, end, buf.limit() - end));
+        }
+
+        String text() {
+            return join(tokens, gaps);
+        }
+    }
+
+    /**
+     * Outcome
+     * What one parse of a program did.
+     */
+    private static class Outcome {
+        String errors;
+        boolean gaveUp;
+        ByteBuffer decls;
+    }
+}
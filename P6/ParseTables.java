@@ -0,0 +1,164 @@
+import java.io.*;
+import java.util.*;
+
+// **********************************************************************
+// The ParseTables class gives the CUP-generated parser its parse tables.
+// The build (see TableDump) takes the tables out of parser.java and
+// writes them to the file parser.tables, which is looked for on the
+// class path.
+//
+// The file is read the first time the parser asks for a table, that is
+// when the first parse starts, not when the parser class is loaded; a
+// run that never parses (or parses with RDParser) never reads it.  The
+// whole file is a few KB, so it is read in one go and the rows are
+// built straight out of the bytes (a ByteBuffer view costs more to set
+// up in a fresh JVM than the copying does).
+//
+// The file is big-endian and has the form
+//
+//     int    MAGIC
+//     long   fingerprint of the tables (see TableDump)
+//     int    number of distinct rows
+//     rows:  int length, then length shorts
+//     then for each of the production, action and reduce tables:
+//     int    number of rows, then that many row numbers (ints)
+//
+// so tables that share a row share the same short[] once loaded.  The
+// rows are exactly what CUP's unpackFromStrings would have built.
+//
+// TableDump also writes the fingerprint into parser.java, which passes
+// it to the accessors.  A parser.tables whose fingerprint differs (one
+// left over from another build of the grammar, say) is passed over, and
+// the parser fails rather than run with another grammar's tables if no
+// file on the class path matches.
+// **********************************************************************
+
+public class ParseTables {
+    static final int MAGIC = 0x43465032;  // "CFP2"
+
+    private static final String RESOURCE = "parser.tables";
+
+    // the tables, once they have been read
+    private static short[][][] tables;
+
+    public static short[][] production(long fingerprint) {
+        return tables(fingerprint)[0];
+    }
+
+    public static short[][] action(long fingerprint) {
+        return tables(fingerprint)[1];
+    }
+
+    public static short[][] reduce(long fingerprint) {
+        return tables(fingerprint)[2];
+    }
+
+    /**
+     * Return the tables whose fingerprint is the given one, reading them
+     * the first time.
+     */
+    private static synchronized short[][][] tables(long fingerprint) {
+        if (tables == null) {
+            try {
+                tables = load(fingerprint);
+            } catch (IOException ex) {
+                throw new Error("cannot read " + RESOURCE + ": " + ex.getMessage());
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Read the first tables file with the given fingerprint.  The
+     * directories on the class path are searched directly first:
+     * getResourceAsStream finds the file too (also inside a jar), but
+     * setting up its URL connection takes longer than the rest of the
+     * parser's startup put together.
+     */
+    private static short[][][] load(long fingerprint) throws IOException {
+        String classPath = System.getProperty("java.class.path", "");
+        for (String dir : classPath.split(File.pathSeparator)) {
+            File file = new File(dir.length() == 0 ? "." : dir, RESOURCE);
+            if (file.isFile()) {
+                short[][][] found = read(readAll(new FileInputStream(file)),
+                                         fingerprint);
+                if (found != null) {
+                    return found;
+                }
+            }
+        }
+        InputStream in = ParseTables.class.getResourceAsStream(RESOURCE);
+        if (in != null) {
+            short[][][] found = read(readAll(in), fingerprint);
+            if (found != null) {
+                return found;
+            }
+        }
+        throw new FileNotFoundException("none on the class path was built " +
+                                        "with this parser (rebuild it)");
+    }
+
+    /**
+     * Read all of in, and close it.
+     */
+    private static byte[] readAll(InputStream in) throws IOException {
+        try {
+            byte[] buf = new byte[8192];
+            int length = 0;
+            for (int n; (n = in.read(buf, length, buf.length - length)) > 0; ) {
+                length += n;
+                if (length == buf.length) {
+                    buf = Arrays.copyOf(buf, 2 * length);
+                }
+            }
+            return Arrays.copyOf(buf, length);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Build the tables from the contents of a tables file, or return null
+     * if it is not a tables file with the given fingerprint.
+     */
+    private static short[][][] read(byte[] buf, long fingerprint)
+    throws IOException {
+        try {
+            int pos = 0;
+            if (buf.length < 16 || getInt(buf, pos) != MAGIC) {
+                return null;
+            }
+            long found = ((long)getInt(buf, pos + 4) << 32) |
+                         (getInt(buf, pos + 8) & 0xffffffffL);
+            if (found != fingerprint) {
+                return null;
+            }
+            short[][] rows = new short[getInt(buf, pos + 12)][];
+            pos += 16;
+            for (int r = 0; r < rows.length; r++) {
+                short[] row = new short[getInt(buf, pos)];
+                pos += 4;
+                for (int i = 0; i < row.length; i++, pos += 2) {
+                    row[i] = (short)((buf[pos] << 8) | (buf[pos + 1] & 0xff));
+                }
+                rows[r] = row;
+            }
+            short[][][] tables = new short[3][][];
+            for (int t = 0; t < tables.length; t++) {
+                tables[t] = new short[getInt(buf, pos)][];
+                pos += 4;
+                for (int r = 0; r < tables[t].length; r++, pos += 4) {
+                    tables[t][r] = rows[getInt(buf, pos)];
+                }
+            }
+            return tables;
+        } catch (ArrayIndexOutOfBoundsException ex) {
+            throw new IOException("parse table file is truncated");
+        }
+    }
+
+    private static int getInt(byte[] buf, int pos) {
+        return (buf[pos] << 24) | ((buf[pos + 1] & 0xff) << 16) |
+               ((buf[pos + 2] & 0xff) << 8) | (buf[pos + 3] & 0xff);
+    }
+}
@@ -0,0 +1,981 @@
+import java.util.*;
+
+import java_cup.runtime.Symbol;
+
+// **********************************************************************
+// The RDParser class is a hand-written parser for CFlat that can be used
+// in place of the CUP-generated parser.  It builds exactly the same AST
+// (the same node classes, built the same way as the actions in
+// CFlat.cup) and reports syntax errors at the same token.
+//
+// The parser adds the nodes of each declaration to an AstArena in post
+// order as it parses them.  When its DeclSink is an AstArena they stay
+// there and no AST objects are built; otherwise each declaration's AST
+// objects are built from the arena once it has been parsed, and its
+// nodes are dropped.  Recovering from a syntax error rolls the arena back
+// to where the dropped declaration, statement or field started.
+//
+// Declarations and statements are parsed by recursive descent; one token
+// of lookahead is enough once "type id" (or "struct id") has been read.
+// Expressions are parsed by precedence climbing (Pratt parsing) with the
+// precedences declared in CFlat.cup:
+//
+//     ||                     left       level 1
+//     &&                     left       level 2
+//     == != < > <= >=        nonassoc   level 3
+//     + -                    left       level 4
+//     * /                    left       level 5
+//     !                      prefix, binds tighter than any binary op
+//     - (unary)              prefix, takes the precedence of binary
+//                            minus (so -a*b is -(a*b) but -a+b is
+//                            (-a)+b), as CUP gives "MINUS exp" the
+//                            precedence of MINUS
+//
+// An assignment "loc = exp" can appear anywhere an operand can; its
+// right-hand side is a whole expression (ASSIGN has the lowest
+// precedence), so a + b = c + d is a + (b = (c + d)).
+//
+// Blocks nest and expressions chain to any depth, so the recursion of
+// those two parts of the descent is kept on stacks of the parser's own:
+// the statement lists being parsed (myLists) and the expressions being
+// parsed and what each is the operand of (myExps).  Each frame holds what
+// a call of the recursive parser would hold in its locals, and is taken
+// at the same tokens, so the parse is the same.
+//
+// The parser reads tokens straight out of a TokenBuffer or a
+// MappedScanner when it is given one (no Symbol per token), and from any
+// other java_cup Scanner through next_token().
+//
+// After a syntax error the parser recovers the way the CUP parser does
+// with its "error SEMICOLON" productions: the declaration, statement or
+// struct field is dropped, tokens are skipped up to and including the
+// next semicolon, and parsing goes on in the innermost declaration list,
+// struct body or statement list that the CUP parser has on its stack at
+// that point.  That list is the one the error is in, except that
+//
+//     - a declaration, statement or field is only complete once the
+//       token after it has been seen to be one that can follow it, so it
+//       is dropped if that token is wrong;
+//     - a statement list only exists once its first statement (or the
+//       closing '}') has started, so an error in the variable
+//       declarations of a body or block, or in the token after them, is
+//       recovered from in the enclosing list;
+//     - a block's statement list (and a struct's body) is still on the
+//       stack when the token after its closing '}' (or "};") turns out to
+//       be wrong, so that error is recovered from inside the block;
+//       a "then" block's list stays there until the first statement of
+//       the else block, so an error in "else {" or in the else block's
+//       variable declarations is recovered from in the "then" block;
+//     - nothing can be recovered from when the first token of the file
+//       is wrong.
+//
+// Like CUP, the parser reports no new error until two tokens after the
+// semicolon have been parsed, and gives up at the end of the file.
+// **********************************************************************
+
+public class RDParser {
+    // precedence levels of the binary operators (0: not a binary operator)
+    private static final int OR_LEVEL = 1;
+    private static final int AND_LEVEL = 2;
+    private static final int REL_LEVEL = 3;
+    private static final int ADD_LEVEL = 4;
+    private static final int MUL_LEVEL = 5;
+    private static final int NOT_LEVEL = 6;
+
+    // where the tokens come from: exactly one of these is set
+    private TokenBuffer myTokens;
+    private int myNext;
+    private MappedScanner myMapped;
+    private java_cup.runtime.Scanner myScanner;
+
+    // the current token: its kind (a sym constant), position, and value
+    // (NamePool id of an ID, value of an INTLITERAL, text of a
+    // STRINGLITERAL)
+    private int myKind;
+    private int myLineNum;
+    private int myCharNum;
+    private int myIntVal;
+    private String myStrVal;
+
+    // if set, top-level declarations go here instead of into the program
+    private DeclSink myDeclSink;
+
+    // where the nodes are added as they are parsed: the sink, if it is
+    // an arena, and otherwise one that only ever holds the declaration
+    // being parsed, whose AST objects are built from it
+    private AstArena myArena = new AstArena();
+
+    // the number of tokens still to be parsed after a recovery before
+    // syntax errors are reported again
+    private int myQuiet;
+
+    // what may follow the closing '}' of a statement list
+    private static final int FN_BODY = 0;
+    private static final int THEN_BLOCK = 1;
+    private static final int BLOCK = 2;
+
+    // the statement lists being parsed, the innermost last: a frame of
+    // LIST_FRAME ints for each (see fnBody)
+    private int[] myLists = new int[16 * LIST_FRAME];
+    private int myListCount;
+    private static final int LIST_FRAME = 5;
+    private static final int BLOCK_OF = 0;      // FN_BODY, THEN_BLOCK or BLOCK
+    private static final int START_OF = 1;      // its first node
+    private static final int MARK_OF = 2;       // the arena's mark at its current statement
+    private static final int PENDING_OF = 3;    // kind of the if or while it is in the middle of
+    private static final int STMT_START_OF = 4; // and the first node of that statement
+
+    // the expressions being parsed, the innermost last: a frame of
+    // EXP_FRAME ints for each, and for each unary operator, pair of
+    // parentheses, assignment and call that one is the operand of (see
+    // exp)
+    private int[] myExps = new int[16 * EXP_FRAME];
+    private int myExpCount;
+    private static final int EXP_FRAME = 5;
+    private static final int KIND_OF = 0;       // IN_EXP, IN_NOT, ...
+    private static final int FIRST_OF = 1;      // its first node
+    private static final int LEVEL_OF = 2;      // least level of its binary operators
+    private static final int ACTUALS_OF = 2;    // (IN_CALL) first node of the actuals
+    private static final int LAST_LEVEL_OF = 3; // level of the operator that built the left operand
+    private static final int OP_OF = 4;         // the operator whose right operand is being parsed
+
+    // the kinds of expression frames: an expression, and what it can be
+    // the operand of
+    private static final int IN_EXP = 0;
+    private static final int IN_NOT = 1;
+    private static final int IN_MINUS = 2;
+    private static final int IN_PARENS = 3;
+    private static final int IN_ASSIGN = 4;
+    private static final int IN_CALL = 5;
+
+    // thrown to get back to the list that recovers from a syntax error;
+    // it carries no stack trace, so one instance does for every error
+    private static final SyntaxError SYNTAX_ERROR = new SyntaxError();
+
+    public RDParser(java_cup.runtime.Scanner scanner) {
+        if (scanner instanceof TokenBufferScanner) {
+            TokenBufferScanner buffered = (TokenBufferScanner)scanner;
+            myTokens = buffered.tokens();
+            myNext = buffered.position();
+        } else if (scanner instanceof MappedScanner) {
+            myMapped = (MappedScanner)scanner;
+        } else {
+            myScanner = scanner;
+        }
+    }
+
+    public RDParser(TokenBuffer tokens) {
+        myTokens = tokens;
+        myNext = 0;
+    }
+
+    /**
+     * Hand each top-level declaration to sink as soon as it has been
+     * parsed, instead of adding it to the program's declaration list
+     * (the CUP parser's setDeclSink does the same).  If sink is an
+     * AstArena, the nodes of the declarations are added to it as they
+     * are parsed, and no AST objects are built.
+     */
+    public void setDeclSink(DeclSink sink) {
+        myDeclSink = sink;
+        myArena = sink instanceof AstArena ? (AstArena)sink : new AstArena();
+    }
+
+    /**
+     * Parse a whole program.  Like the CUP parser's parse(), this returns
+     * a Symbol whose value is the ProgramNode.
+     */
+    public Symbol parse() throws Exception {
+        advance();
+        LinkedList<DeclNode> decls = new LinkedList<DeclNode>();
+        if (myKind != sym.EOF && !startsDecl()) {
+            reportError();
+            throw new Exception("Can't recover from previous error(s)");
+        }
+        while (myKind != sym.EOF) {
+            int mark = myArena.mark();
+            int root;
+            try {
+                root = decl();
+                if (myKind != sym.EOF && !startsDecl()) {
+                    syntaxError();
+                }
+            } catch (SyntaxError ex) {
+                myArena.rollback(mark);
+                recover();
+                continue;
+            }
+            if (myArena == myDeclSink) {
+                myArena.release(mark);
+                myArena.addDecl(root);
+                continue;
+            }
+            DeclNode decl = myArena.buildDecl(root);
+            myArena.rollback(mark);
+            if (myDeclSink != null) {
+                myDeclSink.decl(decl);
+            } else {
+                decls.addLast(decl);
+            }
+        }
+        return new Symbol(sym.EOF, new ProgramNode(new DeclListNode(decls)));
+    }
+
+    // **********************************************************************
+    // declarations
+    // **********************************************************************
+
+    /**
+     * Parse a top-level declaration and return its root node.
+     */
+    private int decl() throws Exception {
+        int start = myArena.size();
+        if (myKind == sym.STRUCT) {
+            advance();
+            id();
+            if (myKind != sym.LCURLY) {
+                myArena.node(AstArena.STRUCT_TYPE, 0, start);
+                id();
+                expect(sym.SEMICOLON);
+                return myArena.node(AstArena.VAR_DECL, 0, start);
+            }
+
+            // structDecl: at least one field (or skipped field)
+            advance();
+            int fields = myArena.size();
+            boolean empty = true;
+            while (true) {
+                int mark = myArena.mark();
+                try {
+                    if (myKind == sym.RCURLY && !empty) {
+                        advance();
+                        expect(sym.SEMICOLON);
+                        if (myKind != sym.EOF && !startsDecl()) {
+                            syntaxError();
+                        }
+                        myArena.release(mark);
+                        myArena.node(AstArena.DECL_LIST, 0, fields);
+                        return myArena.node(AstArena.STRUCT_DECL, 0, start);
+                    }
+                    varDecl();
+                    if (myKind != sym.RCURLY && !startsDecl()) {
+                        syntaxError();
+                    }
+                    myArena.release(mark);
+                } catch (SyntaxError ex) {
+                    myArena.rollback(mark);
+                    recover();
+                }
+                empty = false;
+            }
+        }
+
+        type();
+        id();
+        if (myKind == sym.SEMICOLON) {
+            advance();
+            return myArena.node(AstArena.VAR_DECL, VarDeclNode.NOT_STRUCT, start);
+        }
+        if (myKind != sym.LPAREN) {
+            syntaxError();
+        }
+        formals();
+        expect(sym.LCURLY);
+        int body = myArena.size();
+        varDeclList();
+        fnBody();
+        myArena.node(AstArena.FN_BODY, 0, body);
+        return myArena.node(AstArena.FN_DECL, 0, start);
+    }
+
+    private void varDecl() throws Exception {
+        int start = myArena.size();
+        if (myKind == sym.STRUCT) {
+            advance();
+            id();
+            myArena.node(AstArena.STRUCT_TYPE, 0, start);
+            id();
+            expect(sym.SEMICOLON);
+            myArena.node(AstArena.VAR_DECL, 0, start);
+            return;
+        }
+        type();
+        id();
+        expect(sym.SEMICOLON);
+        myArena.node(AstArena.VAR_DECL, VarDeclNode.NOT_STRUCT, start);
+    }
+
+    /**
+     * Parse the (possibly empty) variable declarations at the start of a
+     * function body or block.
+     */
+    private void varDeclList() throws Exception {
+        int start = myArena.size();
+        while (startsDecl()) {
+            varDecl();
+        }
+        myArena.node(AstArena.DECL_LIST, 0, start);
+    }
+
+    /**
+     * Return true if the current token can start a declaration.
+     */
+    private boolean startsDecl() {
+        return myKind == sym.INT || myKind == sym.BOOL || myKind == sym.VOID ||
+               myKind == sym.STRUCT;
+    }
+
+    private void formals() throws Exception {
+        expect(sym.LPAREN);
+        int start = myArena.size();
+        if (myKind == sym.RPAREN) {
+            advance();
+            myArena.node(AstArena.FORMALS_LIST, 0, start);
+            return;
+        }
+        while (true) {
+            int formal = myArena.size();
+            type();
+            id();
+            myArena.node(AstArena.FORMAL_DECL, 0, formal);
+            if (myKind != sym.COMMA) {
+                break;
+            }
+            advance();
+        }
+        expect(sym.RPAREN);
+        myArena.node(AstArena.FORMALS_LIST, 0, start);
+    }
+
+    private void type() throws Exception {
+        byte kind;
+        switch (myKind) {
+        case sym.INT:  kind = AstArena.INT_TYPE;  break;
+        case sym.BOOL: kind = AstArena.BOOL_TYPE; break;
+        case sym.VOID: kind = AstArena.VOID_TYPE; break;
+        default:
+            syntaxError();
+            return;
+        }
+        advance();
+        myArena.node(kind, 0, myArena.size());
+    }
+
+    // **********************************************************************
+    // statements
+    // **********************************************************************
+
+    /**
+     * Parse the statements of a function body up to and including its
+     * closing '}', and those of the blocks in it.
+     *
+     * Each statement list has a frame on myLists; the innermost list is
+     * the one whose statements are being parsed, and recovers from a
+     * syntax error in them.  The block of a list (a function body, the
+     * "then" block of an if statement, or another block) decides which
+     * tokens may follow its '}'.  A "then" block also takes an else and
+     * the else block's variable declarations, whose DECL_LIST then follows
+     * the block's STMT_LIST: the CUP parser keeps the "then" statements on
+     * its stack until the else block's first statement.
+     */
+    private void fnBody() throws Exception {
+        if (myKind != sym.RCURLY && !startsStmt()) {
+            syntaxError();
+        }
+        myListCount = 0;
+        pushList(FN_BODY);
+        while (true) {
+            int list = (myListCount - 1) * LIST_FRAME;
+            myLists[list + MARK_OF] = myArena.mark();
+            try {
+                if (myKind == sym.RCURLY) {
+                    if (closeList()) {
+                        return;
+                    }
+                } else if (!stmt()) {
+                    endStmt();
+                }
+            } catch (SyntaxError ex) {
+                myArena.rollback(myLists[(myListCount - 1) * LIST_FRAME + MARK_OF]);
+                recover();
+            }
+        }
+    }
+
+    /**
+     * The current token is the '}' of the innermost statement list: parse
+     * it and what follows, and take the list's frame off myLists.  Return
+     * true if it was the function body's.
+     */
+    private boolean closeList() throws Exception {
+        int list = (myListCount - 1) * LIST_FRAME;
+        int block = myLists[list + BLOCK_OF];
+        int start = myLists[list + START_OF];
+        int mark = myLists[list + MARK_OF];
+        advance();
+        if (block == THEN_BLOCK && myKind == sym.ELSE) {
+            advance();
+            expect(sym.LCURLY);
+            myArena.node(AstArena.STMT_LIST, 0, start);
+            varDeclList();
+            if (myKind != sym.RCURLY && !startsStmt()) {
+                syntaxError();
+            }
+            myArena.release(mark);
+            myListCount--;
+            openBlock(BLOCK, AstArena.IF_ELSE_STMT,
+                      myLists[list - LIST_FRAME + STMT_START_OF]);
+            return false;
+        }
+        if (!(block == FN_BODY ? myKind == sym.EOF || startsDecl() :
+              myKind == sym.RCURLY || startsStmt())) {
+            syntaxError();
+        }
+        myArena.release(mark);
+        myArena.node(AstArena.STMT_LIST, 0, start);
+        myListCount--;
+        if (myListCount == 0) {
+            return true;
+        }
+        // the if or while statement the block was in is done
+        list -= LIST_FRAME;
+        myArena.node((byte)myLists[list + PENDING_OF], 0, myLists[list + STMT_START_OF]);
+        endStmt();
+        return false;
+    }
+
+    /**
+     * The current token follows a statement of the innermost list.
+     */
+    private void endStmt() throws Exception {
+        if (myKind != sym.RCURLY && !startsStmt()) {
+            syntaxError();
+        }
+        myArena.release(myLists[(myListCount - 1) * LIST_FRAME + MARK_OF]);
+    }
+
+    /**
+     * Start a statement list for a block of the given kind in the
+     * statement of the innermost list that starts at node start, and of
+     * the given kind (the kind it is given once the block is closed).
+     */
+    private void openBlock(int block, byte kind, int start) throws Exception {
+        if (myKind != sym.RCURLY && !startsStmt()) {
+            syntaxError();
+        }
+        int list = (myListCount - 1) * LIST_FRAME;
+        myLists[list + PENDING_OF] = kind;
+        myLists[list + STMT_START_OF] = start;
+        pushList(block);
+    }
+
+    private void pushList(int block) {
+        int list = myListCount * LIST_FRAME;
+        if (list == myLists.length) {
+            myLists = Arrays.copyOf(myLists, 2 * list);
+        }
+        myLists[list + BLOCK_OF] = block;
+        myLists[list + START_OF] = myArena.size();
+        myListCount++;
+    }
+
+    /**
+     * Return true if the current token can start a statement.
+     */
+    private boolean startsStmt() {
+        switch (myKind) {
+        case sym.ID:
+        case sym.CIN:
+        case sym.COUT:
+        case sym.IF:
+        case sym.WHILE:
+        case sym.RETURN:
+            return true;
+        default:
+            return false;
+        }
+    }
+
+    /**
+     * Parse a statement of the innermost statement list.  Return true if
+     * it is an if or a while, whose block's list has been started.
+     */
+    private boolean stmt() throws Exception {
+        int start = myArena.size();
+        switch (myKind) {
+        case sym.CIN:
+            advance();
+            expect(sym.READ);
+            id();
+            loc(start);
+            expect(sym.SEMICOLON);
+            myArena.node(AstArena.READ_STMT, 0, start);
+            return false;
+
+        case sym.COUT:
+            advance();
+            expect(sym.WRITE);
+            exp(0);
+            expect(sym.SEMICOLON);
+            myArena.node(AstArena.WRITE_STMT, 0, start);
+            return false;
+
+        case sym.IF:
+            advance();
+            condition();
+            expect(sym.LCURLY);
+            varDeclList();
+            openBlock(THEN_BLOCK, AstArena.IF_STMT, start);
+            return true;
+
+        case sym.WHILE:
+            advance();
+            condition();
+            expect(sym.LCURLY);
+            varDeclList();
+            openBlock(BLOCK, AstArena.WHILE_STMT, start);
+            return true;
+
+        case sym.RETURN:
+            advance();
+            if (myKind != sym.SEMICOLON) {
+                exp(0);
+            }
+            expect(sym.SEMICOLON);
+            myArena.node(AstArena.RETURN_STMT, 0, start);
+            return false;
+
+        case sym.ID: {
+            id();
+            if (myKind == sym.LPAREN) {
+                call(start);
+                expect(sym.SEMICOLON);
+                myArena.node(AstArena.CALL_STMT, 0, start);
+                return false;
+            }
+            loc(start);
+            byte kind;
+            switch (myKind) {
+            case sym.ASSIGN:
+                advance();
+                exp(0);
+                myArena.node(AstArena.ASSIGN, 0, start);
+                kind = AstArena.ASSIGN_STMT;
+                break;
+            case sym.PLUSPLUS:
+                advance();
+                kind = AstArena.POST_INC_STMT;
+                break;
+            case sym.MINUSMINUS:
+                advance();
+                kind = AstArena.POST_DEC_STMT;
+                break;
+            default:
+                syntaxError();
+                return false;
+            }
+            expect(sym.SEMICOLON);
+            myArena.node(kind, 0, start);
+            return false;
+        }
+
+        default:
+            syntaxError();
+            return false;
+        }
+    }
+
+    /**
+     * Parse "( exp )" after if or while.
+     */
+    private void condition() throws Exception {
+        expect(sym.LPAREN);
+        exp(0);
+        expect(sym.RPAREN);
+    }
+
+    // **********************************************************************
+    // expressions
+    // **********************************************************************
+
+    /**
+     * Parse an expression whose binary operators all have at least the
+     * given level.
+     *
+     * The expression, and each operand of a unary operator, in
+     * parentheses, on the right of an operator or of an assignment, or in
+     * a call, that is being parsed in it has an IN_EXP frame on myExps.
+     * The frame of a unary operator, parentheses, an assignment or a call
+     * is below that of its operand, and the IN_EXP frame that it is the
+     * operand of below that.  The loop parses an operand (operand()) and
+     * then the operators after it: an operator that binds to the operand
+     * starts its right operand, and any other token ends the innermost
+     * expression, which is then the operand of the frame below.
+     */
+    private void exp(int minLevel) throws Exception {
+        myExpCount = 0;  // (this is never called while parsing one)
+        pushExp(IN_EXP, myArena.size(), minLevel);
+        while (true) {
+            while (!operand()) {
+            }
+            if (!operators()) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Parse the operators after the operand just parsed, up to the start
+     * of another operand.  Return false if the whole expression has been
+     * parsed.
+     */
+    private boolean operators() throws Exception {
+        while (true) {
+            int top = (myExpCount - 1) * EXP_FRAME;  // an IN_EXP
+            int op = myKind;
+            int level = level(op);
+            if (level != 0 && level >= myExps[top + LEVEL_OF]) {
+                if (level == REL_LEVEL && myExps[top + LAST_LEVEL_OF] == REL_LEVEL) {
+                    syntaxError();  // the comparisons are nonassoc
+                }
+                advance();
+                myExps[top + OP_OF] = op;
+                pushExp(IN_EXP, myArena.size(), level + 1);
+                return true;
+            }
+
+            // the expression is done: it is the operand of the frame below
+            myExpCount--;
+            if (myExpCount == 0) {
+                return false;
+            }
+            top -= EXP_FRAME;
+            int start = myExps[top + FIRST_OF];
+            switch (myExps[top + KIND_OF]) {
+            case IN_EXP:
+                op = myExps[top + OP_OF];
+                myArena.node(binaryKind(op), 0, start);
+                myExps[top + LAST_LEVEL_OF] = level(op);
+                continue;
+            case IN_NOT:
+                myArena.node(AstArena.NOT, 0, start);
+                break;
+            case IN_MINUS:
+                myArena.node(AstArena.UNARY_MINUS, 0, start);
+                break;
+            case IN_PARENS:
+                expect(sym.RPAREN);
+                break;
+            case IN_ASSIGN:
+                myArena.node(AstArena.ASSIGN, 0, start);
+                break;
+            default:  // IN_CALL
+                if (myKind == sym.COMMA) {
+                    advance();
+                    pushExp(IN_EXP, myArena.size(), 0);
+                    return true;
+                }
+                expect(sym.RPAREN);
+                myArena.node(AstArena.EXP_LIST, 0, myExps[top + ACTUALS_OF]);
+                myArena.node(AstArena.CALL_EXP, 0, start);
+                break;
+            }
+            myExpCount--;  // an operand of the IN_EXP below has been parsed
+        }
+    }
+
+    /**
+     * Parse an operand, or the start of one: return false if a frame has
+     * been pushed for what it starts with and another operand is next.
+     */
+    private boolean operand() throws Exception {
+        switch (myKind) {
+        case sym.NOT:
+            pushExp(IN_NOT, myArena.size(), 0);
+            advance();
+            pushExp(IN_EXP, myArena.size(), NOT_LEVEL);
+            return false;
+        case sym.MINUS:
+            pushExp(IN_MINUS, myArena.size(), 0);
+            advance();
+            pushExp(IN_EXP, myArena.size(), ADD_LEVEL + 1);
+            return false;
+        default:
+            return term();
+        }
+    }
+
+    private boolean term() throws Exception {
+        switch (myKind) {
+        case sym.INTLITERAL:
+            myArena.leaf(AstArena.INT_LIT, myIntVal, Span.of(myLineNum, myCharNum));
+            advance();
+            return true;
+
+        case sym.STRINGLITERAL:
+            myArena.leaf(AstArena.STRING_LIT, myArena.string(myStrVal),
+                         Span.of(myLineNum, myCharNum));
+            advance();
+            return true;
+
+        case sym.TRUE:
+            myArena.leaf(AstArena.TRUE, 0, Span.of(myLineNum, myCharNum));
+            advance();
+            return true;
+
+        case sym.FALSE:
+            myArena.leaf(AstArena.FALSE, 0, Span.of(myLineNum, myCharNum));
+            advance();
+            return true;
+
+        case sym.LPAREN:
+            advance();
+            pushExp(IN_PARENS, myArena.size(), 0);
+            pushExp(IN_EXP, myArena.size(), 0);
+            return false;
+
+        case sym.ID:
+            int start = myArena.size();
+            id();
+            if (myKind == sym.LPAREN) {
+                advance();
+                int actuals = myArena.size();
+                if (myKind == sym.RPAREN) {
+                    advance();
+                    myArena.node(AstArena.EXP_LIST, 0, actuals);
+                    myArena.node(AstArena.CALL_EXP, 0, start);
+                    return true;
+                }
+                pushExp(IN_CALL, start, actuals);
+                pushExp(IN_EXP, actuals, 0);
+                return false;
+            }
+            loc(start);
+            if (myKind == sym.ASSIGN) {
+                advance();
+                pushExp(IN_ASSIGN, start, 0);
+                pushExp(IN_EXP, myArena.size(), 0);
+                return false;
+            }
+            return true;
+
+        default:
+            syntaxError();
+            return false;
+        }
+    }
+
+    /**
+     * Push a frame of the given kind whose first node is first, with the
+     * least level of its operators for an IN_EXP and the first node of
+     * the actuals for an IN_CALL.
+     */
+    private void pushExp(int kind, int first, int level) {
+        int top = myExpCount * EXP_FRAME;
+        if (top == myExps.length) {
+            myExps = Arrays.copyOf(myExps, 2 * top);
+        }
+        myExps[top + KIND_OF] = kind;
+        myExps[top + FIRST_OF] = first;
+        myExps[top + LEVEL_OF] = level;
+        myExps[top + LAST_LEVEL_OF] = 0;
+        myExpCount++;
+    }
+
+    /**
+     * Parse the argument list of a call of the function whose id is the
+     * node at start.
+     */
+    private void call(int start) throws Exception {
+        expect(sym.LPAREN);
+        int actuals = myArena.size();
+        if (myKind != sym.RPAREN) {
+            exp(0);
+            while (myKind == sym.COMMA) {
+                advance();
+                exp(0);
+            }
+        }
+        expect(sym.RPAREN);
+        myArena.node(AstArena.EXP_LIST, 0, actuals);
+        myArena.node(AstArena.CALL_EXP, 0, start);
+    }
+
+    /**
+     * Parse the rest of a loc whose id is the node at start: any number
+     * of ".id".
+     */
+    private void loc(int start) throws Exception {
+        while (myKind == sym.DOT) {
+            advance();
+            id();
+            myArena.node(AstArena.DOT_ACCESS, 0, start);
+        }
+    }
+
+    private void id() throws Exception {
+        if (myKind != sym.ID) {
+            syntaxError();
+        }
+        myArena.leaf(AstArena.ID, myIntVal, Span.of(myLineNum, myCharNum));
+        advance();
+    }
+
+    private static int level(int kind) {
+        switch (kind) {
+        case sym.OR:
+            return OR_LEVEL;
+        case sym.AND:
+            return AND_LEVEL;
+        case sym.EQUALS:
+        case sym.NOTEQUALS:
+        case sym.LESS:
+        case sym.GREATER:
+        case sym.LESSEQ:
+        case sym.GREATEREQ:
+            return REL_LEVEL;
+        case sym.PLUS:
+        case sym.MINUS:
+            return ADD_LEVEL;
+        case sym.TIMES:
+        case sym.DIVIDE:
+            return MUL_LEVEL;
+        default:
+            return 0;
+        }
+    }
+
+    private static byte binaryKind(int op) {
+        switch (op) {
+        case sym.OR:        return AstArena.OR;
+        case sym.AND:       return AstArena.AND;
+        case sym.EQUALS:    return AstArena.EQUALS;
+        case sym.NOTEQUALS: return AstArena.NOT_EQUALS;
+        case sym.LESS:      return AstArena.LESS;
+        case sym.GREATER:   return AstArena.GREATER;
+        case sym.LESSEQ:    return AstArena.LESS_EQ;
+        case sym.GREATEREQ: return AstArena.GREATER_EQ;
+        case sym.PLUS:      return AstArena.PLUS;
+        case sym.MINUS:     return AstArena.MINUS;
+        case sym.TIMES:     return AstArena.TIMES;
+        default:            return AstArena.DIVIDE;
+        }
+    }
+
+    // **********************************************************************
+    // tokens
+    // **********************************************************************
+
+    /**
+     * Move on to the next token.
+     */
+    private void advance() throws Exception {
+        if (myQuiet > 0) {
+            myQuiet--;
+        }
+        if (myTokens != null) {
+            int i = myNext++;
+            if (i >= myTokens.size()) {
+                myKind = sym.EOF;
+                return;
+            }
+            myKind = myTokens.kind(i);
+            myLineNum = myTokens.lineNum(i);
+            myCharNum = myTokens.charNum(i);
+            if (myKind == sym.STRINGLITERAL) {
+                myStrVal = myTokens.stringValue(i);
+            } else {
+                myIntVal = myTokens.value(i);
+            }
+        } else if (myMapped != null) {
+            myKind = myMapped.next();
+            myLineNum = myMapped.lineNum();
+            myCharNum = myMapped.charNum();
+            if (myKind == sym.ID) {
+                myIntVal = myMapped.nameId();
+            } else if (myKind == sym.INTLITERAL) {
+                myIntVal = myMapped.intValue();
+            } else if (myKind == sym.STRINGLITERAL) {
+                myStrVal = myMapped.text();
+            }
+        } else {
+            Symbol token = myScanner.next_token();
+            myKind = token.sym;
+            if (token.value == null) {  // EOF
+                return;
+            }
+            TokenVal val = (TokenVal)token.value;
+            myLineNum = val.linenum;
+            myCharNum = val.charnum;
+            if (myKind == sym.ID) {
+                myIntVal = ((IdTokenVal)val).nameId;
+            } else if (myKind == sym.INTLITERAL) {
+                myIntVal = ((IntLitTokenVal)val).intVal;
+            } else if (myKind == sym.STRINGLITERAL) {
+                myStrVal = ((StrLitTokenVal)val).strVal;
+            }
+        }
+    }
+
+    /**
+     * Skip the current token, which must be of the given kind.
+     */
+    private void expect(int kind) throws Exception {
+        if (myKind != kind) {
+            syntaxError();
+        }
+        advance();
+    }
+
+    /**
+     * Report a syntax error at the current token (unless the parser is
+     * still recovering from the last one) and go back to the list that
+     * recovers from it.
+     */
+    private void syntaxError() throws SyntaxError {
+        if (myQuiet == 0) {
+            reportError();
+        }
+        throw SYNTAX_ERROR;
+    }
+
+    /**
+     * Report a syntax error at the current token the way the CUP parser's
+     * syntax_error does.
+     */
+    private void reportError() {
+        if (myKind == sym.EOF) {
+            ErrMsg.fatal(0,0, "Syntax error at end of file");
+        }
+        else {
+            ErrMsg.fatal(myLineNum, myCharNum, "Syntax error");
+        }
+    }
+
+    /**
+     * Skip tokens up to and including the next semicolon; give up if
+     * there is none.
+     */
+    private void recover() throws Exception {
+        while (myKind != sym.SEMICOLON) {
+            if (myKind == sym.EOF) {
+                throw new Exception("Can't recover from previous error(s)");
+            }
+            advance();
+        }
+        advance();
+        myQuiet = 2;
+    }
+
+    /**
+     * SyntaxError
+     * Unwinds the parser to the list that recovers from a syntax error.
+     */
+    private static class SyntaxError extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        SyntaxError() {
+            super(null, null, false, false);
+        }
+    }
+}
@@ -1,25 +1,25 @@
 import java.util.*;
 
 /**
- * The Sym class defines a symbol-table entry. 
- * Each Sym contains a type (a Type).
+ * The Sym class defines a symbol-table entry for a symbol that carries
+ * more than the attributes kept in SymAttrs (a function, a struct
+ * definition or a variable of struct type).  Each Sym has the id under
+ * which its offsets and size are kept there.
  */
 public class SemSym {
     private Type type;
-
-    public int offset; // the offset of a symbol to fp
-    public int structOffset; // the offset of the id as it is declared inside a struct
-    public boolean isGlobal;
-    public int size;
-
+    private int id;
 
     public SemSym(Type type) {
         this.type = type;
+        id = SymAttrs.SHARED.add(this);
+    }
 
-	this.offset = 0; // test if initialized
-	this.structOffset = 0;
-	this.isGlobal = false;
-	size = 0; //
+    /**
+     * Return the symbol's id in SymAttrs.SHARED.
+     */
+    public int id() {
+        return id;
     }
     
     public Type getType() {
@@ -28,7 +28,7 @@ public class SemSym {
     
     public String toString() {
         // return type.toString() + "<" + Integer.toString(offset) + ">";
-        return "<" + Integer.toString(offset) + "> $" + structOffset + "$"  + " |" + size +"|";
+        return SymAttrs.SHARED.format(id);
 
     }
 }
@@ -48,7 +48,7 @@ class FnSym extends SemSym {
     public int formalSpace;
     
     public FnSym(Type type, int numparams) {
-        super(new FnType());
+        super(Type.FN);
         returnType = type;
         numParams = numparams;
 
@@ -100,7 +100,7 @@ class StructSym extends SemSym {
     private IdNode structType;  // name of the struct type
     
     public StructSym(IdNode id) {
-        super(new StructType(id));
+        super(((StructDefSym)id.sym()).getInstanceType());
         structType = id;
     }
 
@@ -111,22 +111,40 @@ class StructSym extends SemSym {
 
 /**
  * The StructDefSym class is a subclass of the Sym class just for the 
- * definition of a struct type. 
+ * definition of a struct type (id is the name in the definition). 
  * Each StructDefSym contains a symbol table to hold information about its 
  * fields.
  */
 class StructDefSym extends SemSym {
     // new fields
     private SymTable symTab;
-    public int structSize;
+    private StructType instanceType;
+    private StructLayout layout;
     
-    public StructDefSym(SymTable table) {
-        super(new StructDefType());
+    public StructDefSym(SymTable table, IdNode id) {
+        super(Type.STRUCT_DEF);
         symTab = table;
-	structSize = 0;
+        instanceType = new StructType(id);
+        layout = new StructLayout(table);
+        SymAttrs.SHARED.setSize(id(), layout.size());
     }
 
     public SymTable getSymTable() {
         return symTab;
     }
+
+    /**
+     * Return the type of the variables of this struct type (the same
+     * StructType for all of them).
+     */
+    public StructType getInstanceType() {
+        return instanceType;
+    }
+
+    /**
+     * Return the placement of the fields (made with the sym, from table).
+     */
+    public StructLayout getLayout() {
+        return layout;
+    }
 }
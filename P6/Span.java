@@ -0,0 +1,31 @@
+// **********************************************************************
+// The Span class packs the position where a piece of source text starts
+// into a long: the line number in the high 32 bits and the char number
+// in the low 32, as AstArena stores positions.  Every ExpNode has one
+// (ExpNode.span), so ErrMsg.fatal can report an error at an expression
+// without the AST allocating anything to find the position.
+// **********************************************************************
+
+final class Span {
+    private Span() {
+    }
+
+    static long of(int lineNum, int charNum) {
+        return ((long)lineNum << 32) | (charNum & 0xffffffffL);
+    }
+
+    static int lineNum(long span) {
+        return (int)(span >>> 32);
+    }
+
+    static int charNum(long span) {
+        return (int)span;
+    }
+
+    /**
+     * Return span moved delta lines down.
+     */
+    static long shift(long span, int delta) {
+        return span + ((long)delta << 32);
+    }
+}
@@ -0,0 +1,112 @@
+import java.io.*;
+
+// **********************************************************************
+// The StreamingCompiler class compiles a program one top-level
+// declaration at a time.  It is the DeclSink the parser hands each
+// global, struct and function to as soon as it has been parsed (P6
+// -stream); the declaration is name-analyzed and type-checked (by an
+// AnalysisPass) and, if no error has been found so far, translated to
+// assembly right away, and is then dropped.  Only the global symbol
+// table outlives it, so memory does not grow with the number of
+// functions, and assembly is written while the rest of the file is still
+// being parsed.
+//
+// Declarations are processed in source order, as ProgramNode does, so
+// the code generated is the same as for the whole program.  As
+// AnalysisPass does for a whole program, type checking stops at the
+// first name-analysis error and code generation at the first error of
+// either kind; but a type error is reported as soon as its function is
+// checked, even if a later declaration then has a name-analysis error
+// (which the batch compiler would report alone).  After an error P6
+// empties the output file, which holds the code of the declarations
+// before the error, so that it is left empty as by the batch compiler.
+//
+// The parser goes on after a syntax error to report the rest of them;
+// once one has been reported (any error reported while parsing, between
+// two declarations, is one) the declarations that follow are no longer
+// analyzed, and the result is a syntax error, as for the batch compiler.
+// **********************************************************************
+
+class StreamingCompiler implements DeclSink {
+    private AnalysisPass myAnalysis = new AnalysisPass();
+    private PrintWriter myOut;
+    private boolean mySyntaxErrors = false;
+    private RuntimeException myFailure;  // thrown while compiling a decl
+
+    // ErrMsg.errorCount() after the last declaration was compiled
+    private int myErrorCount;
+
+    public StreamingCompiler(PrintWriter out) {
+        myOut = out;
+        myErrorCount = ErrMsg.errorCount();
+    }
+
+    /**
+     * decl
+     * Name-analyze, type-check and generate code for one top-level
+     * declaration.
+     */
+    public void decl(DeclNode decl) {
+        checkSyntaxErrors();
+        if (mySyntaxErrors) {
+            return;
+        }
+        try {
+            compile(decl);
+        } catch (RuntimeException ex) {
+            // the parser would report this as a syntax error
+            myFailure = ex;
+            throw ex;
+        }
+        myErrorCount = ErrMsg.errorCount();
+    }
+
+    /**
+     * Note whether an error has been reported since the last declaration
+     * was compiled, which means the parser found a syntax error.
+     */
+    private void checkSyntaxErrors() {
+        if (ErrMsg.errorCount() > myErrorCount) {
+            mySyntaxErrors = true;
+        }
+    }
+
+    private void compile(DeclNode decl) {
+        decl.accept(myAnalysis);
+        myAnalysis.releaseTypeErrors();
+        if (!myAnalysis.declErrors() && !myAnalysis.typeErrors()) {
+            decl.codeGen(myOut);
+        }
+    }
+
+    /**
+     * Return the exception that stopped the compile of a declaration (and
+     * with it the parse), or null.
+     */
+    public RuntimeException failure() {
+        return myFailure;
+    }
+
+    /**
+     * finish
+     * Called after the last declaration: check that there is a main
+     * function and return the result of the compile (one of the P6
+     * RESULT_ codes).
+     */
+    public int finish() {
+        checkSyntaxErrors();
+        if (mySyntaxErrors) {
+            return P6.RESULT_SYNTAX_ERROR;
+        }
+
+        myAnalysis.checkMain();
+        if (myAnalysis.declErrors()) {
+            return P6.RESULT_DECL_ERROR;
+        }
+        if (myAnalysis.typeErrors()) {
+            return P6.RESULT_TYPE_ERROR;
+        }
+        System.out.println("\n***DONE***\n***Assembly code generated successfully in test_out.s***");
+        return P6.RESULT_CORRECT;
+    }
+}
@@ -0,0 +1,161 @@
+import java.util.*;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+// **********************************************************************
+// The StructLayout class places the fields of one struct type.  It is
+// made once, when the struct definition has been name-analyzed, and kept
+// with its StructDefSym, so variables of the type only read its size.
+//
+// Fields are placed in declaration order, each at the next offset that
+// is a multiple of its alignment: WORD for an int or a bool, and for a
+// field of struct type (which is placed inline) the alignment of that
+// struct.  A struct is as aligned as its most aligned field and its size
+// is rounded up to that alignment.  Each field's structOffset (see
+// SymAttrs) is minus its offset, since a struct variable takes the words
+// below its own offset in the frame (see FieldPath).
+//
+// Name analysis counts the accesses to each field (noteAccess).  P6
+// -hotfields then places the fields of each struct most accessed first
+// (placeHotFirst), before code is generated; the struct's size must not
+// grow, since frames have already been laid out with it, so a struct
+// whose fields would need more padding that way keeps its layout.  The
+// layouts made are kept for that until reset, which P6 calls when it
+// starts another compile in the same run, along with SymAttrs.reset:
+// placing the fields of an earlier compile's structs again would set the
+// structOffsets of unrelated symbols.
+// **********************************************************************
+
+class StructLayout {
+    // the size and alignment of an int or bool
+    static final int WORD = 4;
+
+    // all the layouts made since the last reset, for placeAllHotFirst
+    private static final List<StructLayout> ALL = new ArrayList<StructLayout>();
+
+    private int[] myFields;  // the fields' symbol ids, in declaration order
+    private int mySize;
+    private int myAlign;
+    private AtomicIntegerArray myAccesses;  // per field, in myFields order
+
+    /**
+     * Lay out the fields declared in fields, the struct's symbol table.
+     */
+    public StructLayout(SymTable fields) {
+        myFields = fields.fields();
+        myAccesses = new AtomicIntegerArray(myFields.length);
+        myAlign = WORD;
+        for (int field : myFields) {
+            myAlign = Math.max(myAlign, align(field));
+        }
+        mySize = place(myFields);
+        synchronized (ALL) {
+            ALL.add(this);
+        }
+    }
+
+    public int size() {
+        return mySize;
+    }
+
+    public int align() {
+        return myAlign;
+    }
+
+    /**
+     * Note an access to field (which must be one of this struct's).
+     */
+    public void noteAccess(int field) {
+        // the ids of the fields increase in declaration order
+        int k = Arrays.binarySearch(myFields, field);
+        if (k >= 0) {
+            myAccesses.incrementAndGet(k);
+        }
+    }
+
+    /**
+     * Place the fields most accessed first (in declaration order among
+     * fields accessed as often), unless that would make the struct
+     * bigger.
+     */
+    public void placeHotFirst() {
+        Integer[] order = new Integer[myFields.length];
+        for (int k = 0; k < order.length; k++) {
+            order[k] = k;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    return myAccesses.get(b) - myAccesses.get(a);
+                }
+            });
+        int[] hot = new int[myFields.length];
+        for (int k = 0; k < hot.length; k++) {
+            hot[k] = myFields[order[k]];
+        }
+        if (place(hot) > mySize) {
+            place(myFields);
+        }
+    }
+
+    /**
+     * placeAllHotFirst
+     * placeHotFirst for every struct laid out so far.
+     */
+    public static void placeAllHotFirst() {
+        synchronized (ALL) {
+            for (StructLayout layout : ALL) {
+                layout.placeHotFirst();
+            }
+        }
+    }
+
+    /**
+     * reset
+     * Forget the layouts made so far, for another compile in the same
+     * run.
+     */
+    public static void reset() {
+        synchronized (ALL) {
+            ALL.clear();
+        }
+    }
+
+    /**
+     * Give the fields, in the given order, their structOffsets, and
+     * return the size of the struct laid out that way.
+     */
+    private int place(int[] fields) {
+        int offset = 0;
+        for (int field : fields) {
+            offset = alignUp(offset, align(field));
+            SymAttrs.SHARED.setStructOffset(field, -offset);
+            offset += size(field);
+        }
+        return alignUp(offset, myAlign);
+    }
+
+    /**
+     * Return the layout of the struct type of field, or null if it is not
+     * of a struct type.
+     */
+    private static StructLayout nested(int field) {
+        SemSym sym = SymAttrs.SHARED.sym(field);
+        if (!(sym instanceof StructSym)) {
+            return null;
+        }
+        return ((StructDefSym)((StructSym)sym).getStructType().sym()).getLayout();
+    }
+
+    private static int size(int field) {
+        StructLayout nested = nested(field);
+        return nested != null ? nested.size() : WORD;
+    }
+
+    private static int align(int field) {
+        StructLayout nested = nested(field);
+        return nested != null ? nested.align() : WORD;
+    }
+
+    private static int alignUp(int offset, int align) {
+        return (offset + align - 1) / align * align;
+    }
+}
@@ -0,0 +1,214 @@
+import java.util.Arrays;
+
+// **********************************************************************
+// The SymAttrs class gives each symbol that name analysis declares a
+// dense int id (0, 1, 2, ...) and keeps the symbol's attributes in
+// primitive arrays indexed by that id: its offset from the fp, its offset
+// inside a struct, its size and flags for whether it is global and
+// whether it is an int or a bool variable.
+//
+// A symbol is just its id: SymTables bind names to ids and IdNodes keep
+// the id of the symbol they are linked to, so reading an attribute in
+// code generation is an array read.  Only functions, struct definitions
+// and variables of struct type, which carry more than these attributes,
+// also have a SemSym object (see sym), which holds their type.  A plain
+// int or bool variable has none, which is what most symbols of a large
+// program are.
+//
+// The arrays are kept in pages of PAGE_SIZE entries, so growing the store
+// copies only the array of pages.  SHARED is the store used by the whole
+// compiler, as NamePool.SHARED is for names.  It holds the symbols of
+// one compile; reset empties it for the next one in the same run (P6
+// -watch and DepthBench compile more than once).
+//
+// Symbols may be added on several threads at once (see
+// ParallelAnalysis); each thread then only sets the attributes of the
+// symbols it added, and reads those of symbols added before it started.
+// add takes a lock, but the attributes are read and set without one, so
+// a page is never added to an array of pages another thread may be
+// reading: add puts it in a copy of the array and then sets the volatile
+// field to the copy (see addPage).  The pages themselves are shared by
+// all the copies, so an attribute set in one is set in all of them.
+// **********************************************************************
+
+class SymAttrs {
+    // the store used by name analysis and code generation
+    static final SymAttrs SHARED = new SymAttrs();
+
+    // the id of no symbol (what a lookup of an undeclared name returns)
+    static final int NONE = -1;
+
+    private static final int PAGE_BITS = 12;
+    private static final int PAGE_SIZE = 1 << PAGE_BITS;
+    private static final int PAGE_MASK = PAGE_SIZE - 1;
+
+    private static final byte GLOBAL = 1;
+    private static final byte INT = 2;
+    private static final byte BOOL = 4;
+
+    // the arrays of pages are read without the lock, so they are
+    // volatile and never changed once set: a new page goes into a copy
+    private volatile SemSym[][] syms;  // null entries for plain variables
+    private volatile int[][] offsets;
+    private volatile int[][] structOffsets;
+    private volatile int[][] sizes;
+    private volatile byte[][] flags;
+    private volatile int count;
+
+    SymAttrs() {
+        clear();
+    }
+
+    /**
+     * Forget the symbols of SHARED, for another compile in the same run.
+     * Ids start at 0 again, so the ids kept by the AST of the last compile
+     * (and by its SymTables) must not be used after this, until name
+     * analysis has linked the AST again.
+     */
+    static void reset() {
+        SHARED.clear();
+    }
+
+    private synchronized void clear() {
+        syms = new SemSym[1][];
+        offsets = new int[1][];
+        structOffsets = new int[1][];
+        sizes = new int[1][];
+        flags = new byte[1][];
+        count = 0;
+    }
+
+    /**
+     * Return the number of symbols.
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Add a variable of the given type and return its id.  Only a
+     * variable of another type than int or bool gets a SemSym.
+     */
+    int add(Type type) {
+        if (type == Type.INT) {
+            return add(INT, null);
+        }
+        if (type == Type.BOOL) {
+            return add(BOOL, null);
+        }
+        return new SemSym(type).id();
+    }
+
+    /**
+     * Add the symbol sym and return its id.
+     */
+    int add(SemSym sym) {
+        return add((byte)0, sym);
+    }
+
+    private synchronized int add(byte kind, SemSym sym) {
+        int page = count >>> PAGE_BITS;
+        if (page == syms.length || syms[page] == null) {
+            addPage(page);
+        }
+        int k = count & PAGE_MASK;
+        syms[page][k] = sym;
+        flags[page][k] = kind;
+        return count++;
+    }
+
+    /**
+     * Add page, which is new, in copies of the arrays of pages (twice as
+     * long if they are full), and only then set the fields to the copies,
+     * so that a thread that reads a field sees all the pages in it.
+     */
+    private void addPage(int page) {
+        int pages = page == syms.length ? 2 * page : syms.length;
+        SemSym[][] newSyms = Arrays.copyOf(syms, pages);
+        int[][] newOffsets = Arrays.copyOf(offsets, pages);
+        int[][] newStructOffsets = Arrays.copyOf(structOffsets, pages);
+        int[][] newSizes = Arrays.copyOf(sizes, pages);
+        byte[][] newFlags = Arrays.copyOf(flags, pages);
+        newSyms[page] = new SemSym[PAGE_SIZE];
+        newOffsets[page] = new int[PAGE_SIZE];
+        newStructOffsets[page] = new int[PAGE_SIZE];
+        newSizes[page] = new int[PAGE_SIZE];
+        newFlags[page] = new byte[PAGE_SIZE];
+        syms = newSyms;
+        offsets = newOffsets;
+        structOffsets = newStructOffsets;
+        sizes = newSizes;
+        flags = newFlags;
+    }
+
+    Type type(int id) {
+        byte kind = flags[id >>> PAGE_BITS][id & PAGE_MASK];
+        if ((kind & INT) != 0) {
+            return Type.INT;
+        }
+        if ((kind & BOOL) != 0) {
+            return Type.BOOL;
+        }
+        return syms[id >>> PAGE_BITS][id & PAGE_MASK].getType();
+    }
+
+    /**
+     * Return the SemSym of a function, struct definition or struct
+     * variable, or null for a plain variable or NONE.
+     */
+    SemSym sym(int id) {
+        if (id == NONE) {
+            return null;
+        }
+        return syms[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    int offset(int id) {
+        return offsets[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    void setOffset(int id, int offset) {
+        offsets[id >>> PAGE_BITS][id & PAGE_MASK] = offset;
+    }
+
+    int structOffset(int id) {
+        return structOffsets[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    void setStructOffset(int id, int structOffset) {
+        structOffsets[id >>> PAGE_BITS][id & PAGE_MASK] = structOffset;
+    }
+
+    int size(int id) {
+        return sizes[id >>> PAGE_BITS][id & PAGE_MASK];
+    }
+
+    void setSize(int id, int size) {
+        sizes[id >>> PAGE_BITS][id & PAGE_MASK] = size;
+    }
+
+    boolean isGlobal(int id) {
+        return (flags[id >>> PAGE_BITS][id & PAGE_MASK] & GLOBAL) != 0;
+    }
+
+    void setGlobal(int id) {
+        flags[id >>> PAGE_BITS][id & PAGE_MASK] |= GLOBAL;
+    }
+
+    /**
+     * Return the symbol as the unparser shows it (SemSym.toString).
+     */
+    String describe(int id) {
+        SemSym sym = sym(id);
+        return sym != null ? sym.toString() : format(id);
+    }
+
+    /**
+     * Return the offsets and size of the symbol, as "<offset> $structOffset$
+     * |size|".
+     */
+    String format(int id) {
+        return "<" + offset(id) + "> $" + structOffset(id) + "$"  + " |" +
+            size(id) + "|";
+    }
+}
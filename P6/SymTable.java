@@ -1,79 +1,278 @@
 import java.util.*;
 
+/**
+ * The SymTable class maps each name to its innermost binding, which
+ * links to the binding it shadows, and keeps an undo log of the names
+ * declared in each scope.  So lookupLocal, lookupGlobal and addDecl take
+ * the same time however deeply scopes are nested, and removeScope time
+ * in the number of names the scope declared.  Names are looked up by
+ * their NamePool id and bound to symbol ids (see SymAttrs); the String
+ * versions of the methods are kept for callers that only have a
+ * spelling.  A lookup that finds nothing returns SymAttrs.NONE.
+ */
 public class SymTable {
-    private List<HashMap<String, SemSym>> list;
-    
+    private BindingMap bindings;
+
+    // the names declared, in order, and where each open scope's names
+    // start in that log
+    private int[] log;
+    private int logSize;
+    private int[] scopeStart;
+    private int depth;
+
+    // for the table of one function's body, the global table (null
+    // otherwise) and the symbols of it that the body sees: those with
+    // ids below globalLimit
+    private SymTable globals;
+    private int globalLimit;
+
     public SymTable() {
-        list = new LinkedList<HashMap<String, SemSym>>();
-        list.add(new HashMap<String, SemSym>());
+        bindings = new BindingMap();
+        log = new int[8];
+        logSize = 0;
+        scopeStart = new int[8];
+        depth = 0;
+        addScope();
     }
-    
-    public void addDecl(String name, SemSym sym) 
+
+    /**
+     * A table for the scopes of one function, analyzed apart from the
+     * rest of the program (see ParallelAnalysis).  Its outermost scope is
+     * globals, which it only reads, and in which it sees only the
+     * symbols with ids below globalLimit: those declared before the
+     * function's body.  The function's scopes are added to it as they
+     * would be to globals.
+     */
+    public SymTable(SymTable globals, int globalLimit) {
+        this();
+        this.globals = globals;
+        this.globalLimit = globalLimit;
+    }
+
+    public void addDecl(int nameId, int sym)
     throws DuplicateSymException, EmptySymTableException {
-        if (name == null || sym == null)
+        if (sym == SymAttrs.NONE)
             throw new NullPointerException();
-        
-        if (list.isEmpty())
+
+        if (depth == 0)
             throw new EmptySymTableException();
-        
-        HashMap<String, SemSym> symTab = list.get(0);
-        if (symTab.containsKey(name))
+
+        Binding outer = bindings.get(nameId);
+        if (outer != null && outer.depth == depth)
             throw new DuplicateSymException();
-        
-        symTab.put(name, sym);
+
+        bindings.set(nameId, new Binding(sym, depth, outer));
+        if (logSize == log.length)
+            log = Arrays.copyOf(log, 2 * logSize);
+        log[logSize++] = nameId;
+    }
+
+    public void addDecl(String name, int sym)
+    throws DuplicateSymException, EmptySymTableException {
+        if (name == null || sym == SymAttrs.NONE)
+            throw new NullPointerException();
+
+        addDecl(NamePool.SHARED.intern(name), sym);
     }
-    
+
     public void addScope() {
-        list.add(0, new HashMap<String, SemSym>());
-    }
-    
-    public SemSym lookupLocal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        HashMap<String, SemSym> symTab = list.get(0); 
-        return symTab.get(name);
-    }
-    
-    public SemSym lookupGlobal(String name) {
-        if (list.isEmpty())
-            return null;
-        
-        for (HashMap<String, SemSym> symTab : list) {
-            SemSym sym = symTab.get(name);
-            if (sym != null)
-                return sym;
+        if (depth == scopeStart.length)
+            scopeStart = Arrays.copyOf(scopeStart, 2 * depth);
+        scopeStart[depth++] = logSize;
+    }
+
+    public int lookupLocal(int nameId) {
+        if (globals != null && depth == 1)
+            return visibleGlobal(globals.lookupLocal(nameId));
+
+        Binding binding = bindings.get(nameId);
+        if (binding == null || binding.depth != depth)
+            return SymAttrs.NONE;
+        return binding.sym;
+    }
+
+    public int lookupLocal(String name) {
+        int nameId = NamePool.SHARED.lookup(name);
+        if (nameId < 0)
+            return SymAttrs.NONE;
+        return lookupLocal(nameId);
+    }
+
+    public int lookupGlobal(int nameId) {
+        Binding binding = bindings.get(nameId);
+        if (binding == null) {
+            if (globals != null)
+                return visibleGlobal(globals.lookupGlobal(nameId));
+            return SymAttrs.NONE;
         }
-        return null;
+        return binding.sym;
+    }
+
+    public int lookupGlobal(String name) {
+        int nameId = NamePool.SHARED.lookup(name);
+        if (nameId < 0)
+            return SymAttrs.NONE;
+        return lookupGlobal(nameId);
     }
-    
+
+    private int visibleGlobal(int sym) {
+        return sym < globalLimit ? sym : SymAttrs.NONE;
+    }
+
     public void removeScope() throws EmptySymTableException {
-        if (list.isEmpty())
+        if (depth == 0)
             throw new EmptySymTableException();
-        list.remove(0);
+        depth--;
+        while (logSize > scopeStart[depth]) {
+            int nameId = log[--logSize];
+            bindings.set(nameId, bindings.get(nameId).shadowed);
+        }
     }
 
     public int whichScopeLevel(){
-	return list.size();
+	return depth;
     }
 
-    // public int variableInScope(){
-    // 	return list.get(0).size();
-    // }
-
-    public HashMap<String, SemSym> getField(){
-	if(!list.isEmpty()){
-	    return list.get(0);
-	}
-
-	return null;
+    /**
+     * Return the ids of the symbols declared in the innermost scope, in
+     * the order they were declared (for a struct's table, its fields).
+     */
+    public int[] fields() {
+        int start = depth > 0 ? scopeStart[depth - 1] : logSize;
+        int[] syms = new int[logSize - start];
+        for (int k = start; k < logSize; k++) {
+            Binding binding = bindings.get(log[k]);
+            syms[k - start] = binding.sym;
+        }
+        return syms;
     }
-    
+
     public void print() {
         System.out.print("\nSym Table\n");
-        for (HashMap<String, SemSym> symTab : list) {
-            System.out.println(symTab.toString());
+        for (int level = depth; level > 0; level--) {
+            StringBuilder line = new StringBuilder("{");
+            for (Map.Entry<String, Integer> entry : scopeMap(level).entrySet()) {
+                if (line.length() > 1)
+                    line.append(", ");
+                line.append(entry.getKey()).append('=')
+                    .append(SymAttrs.SHARED.describe(entry.getValue()));
+            }
+            System.out.println(line.append('}'));
         }
         System.out.println();
     }
+
+    /**
+     * Return the names declared in the scope at the given level (1 is
+     * the outermost) as a map from spelling to symbol id.
+     */
+    private HashMap<String, Integer> scopeMap(int level) {
+        HashMap<String, Integer> map = new HashMap<String, Integer>();
+        int end = level < depth ? scopeStart[level] : logSize;
+        for (int k = scopeStart[level - 1]; k < end; k++) {
+            Binding binding = bindings.get(log[k]);
+            while (binding.depth != level) {
+                binding = binding.shadowed;
+            }
+            map.put(NamePool.SHARED.name(log[k]), binding.sym);
+        }
+        return map;
+    }
+}
+
+/**
+ * The Binding class is one declaration of a name in a SymTable: its
+ * symbol id, the level of the scope it is in and the binding of the same
+ * name in an enclosing scope that it shadows (null if none).
+ */
+class Binding {
+    final int sym;
+    final int depth;
+    final Binding shadowed;
+
+    Binding(int sym, int depth, Binding shadowed) {
+        this.sym = sym;
+        this.depth = depth;
+        this.shadowed = shadowed;
+    }
+}
+
+/**
+ * The BindingMap class maps NamePool ids to the innermost Binding of
+ * each name.  A name whose last binding is removed keeps its slot, with
+ * no binding, so slots are never deleted from the open-addressing table.
+ */
+class BindingMap {
+    private int[] ids;
+    private Binding[] bindings;
+    private int count;
+
+    BindingMap() {
+        ids = new int[8];
+        bindings = new Binding[8];
+        count = 0;
+    }
+
+    /**
+     * Return the binding for the given name id, or null if there is none.
+     */
+    Binding get(int nameId) {
+        int mask = ids.length - 1;
+        for (int slot = mix(nameId) & mask; ; slot = (slot + 1) & mask) {
+            int id = ids[slot] - 1;
+            if (id < 0) {
+                return null;
+            }
+            if (id == nameId) {
+                return bindings[slot];
+            }
+        }
+    }
+
+    /**
+     * Make binding (which may be null) the binding for the given name id.
+     */
+    void set(int nameId, Binding binding) {
+        int mask = ids.length - 1;
+        int slot = mix(nameId) & mask;
+        while (ids[slot] != 0 && ids[slot] - 1 != nameId) {
+            slot = (slot + 1) & mask;
+        }
+        if (ids[slot] == 0) {
+            if (binding == null) {
+                return;
+            }
+            if (2 * (count + 1) > ids.length) {
+                grow();
+                set(nameId, binding);
+                return;
+            }
+            ids[slot] = nameId + 1;
+            count++;
+        }
+        bindings[slot] = binding;
+    }
+
+    private void grow() {
+        int[] oldIds = ids;
+        Binding[] oldBindings = bindings;
+        ids = new int[2 * oldIds.length];
+        bindings = new Binding[2 * oldIds.length];
+        int mask = ids.length - 1;
+        for (int k = 0; k < oldIds.length; k++) {
+            if (oldIds[k] != 0) {
+                int slot = mix(oldIds[k] - 1) & mask;
+                while (ids[slot] != 0) {
+                    slot = (slot + 1) & mask;
+                }
+                ids[slot] = oldIds[k];
+                bindings[slot] = oldBindings[k];
+            }
+        }
+    }
+
+    private static int mix(int nameId) {
+        int hash = nameId * 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
 }
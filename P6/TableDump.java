@@ -0,0 +1,210 @@
+import java.io.*;
+import java.nio.charset.*;
+import java.nio.file.*;
+import java.security.*;
+import java.util.*;
+import java.util.regex.*;
+
+// **********************************************************************
+// The TableDump class moves the parse tables out of the CUP-generated
+// parser.java into a binary file that ParseTables loads.
+//
+// Usage: java TableDump <parser.java> <tables file>
+//
+// CUP writes the production, action and reduce tables into parser.java
+// as string constants that are decoded (by unpackFromStrings) when the
+// parser class is initialized, so every run of the compiler pays for
+// decoding them even if it never parses.  TableDump decodes the strings
+// once at build time, writes the tables to the tables file in the format
+// described in ParseTables, and rewrites parser.java so that the three
+// table fields are gone and the table accessors ask ParseTables instead.
+// Rows that are equal (many states share their reduce row, for example)
+// are written once and shared.
+//
+// The tables file and parser.java both get a fingerprint of the packed
+// table strings (the first 8 bytes of their SHA-256), so that the parser
+// only ever runs with the tables it was generated with.
+// **********************************************************************
+
+public class TableDump {
+    // the three table fields, in the order they are written
+    private static final String[] TABLES = {
+        "_production_table", "_action_table", "_reduce_table"
+    };
+
+    // the ParseTables accessor that replaces each table field
+    private static final String[] ACCESSORS = {
+        "ParseTables.production", "ParseTables.action", "ParseTables.reduce"
+    };
+
+    // the field of the rewritten parser.java that holds the fingerprint
+    private static final String FINGERPRINT = "TABLES_FINGERPRINT";
+
+    private static final Pattern STRING = Pattern.compile("\"((?:\\\\.|[^\"\\\\])*)\"");
+
+    public static void main(String[] args) throws IOException {
+        if (args.length != 2) {
+            System.err.println("usage: java TableDump <parser.java> <tables file>");
+            System.exit(-1);
+        }
+        Path source = Paths.get(args[0]);
+        String text = new String(Files.readAllBytes(source), StandardCharsets.ISO_8859_1);
+
+        short[][][] tables = new short[TABLES.length][][];
+        MessageDigest digest = sha256();
+        int fieldStart = -1;
+        for (int t = 0; t < TABLES.length; t++) {
+            Pattern field = Pattern.compile(
+                "(?:[ \\t]*/\\*\\*[^\\n]*\\*/\\n)?" +
+                "[ \\t]*protected static final short(?:\\[\\]\\[\\])?\\s+" + TABLES[t] +
+                "(?:\\[\\]\\[\\])?\\s*=\\s*unpackFromStrings\\(new String\\[\\]\\s*\\{(.*?)\\}\\);\\n",
+                Pattern.DOTALL);
+            Matcher m = field.matcher(text);
+            if (!m.find()) {
+                System.err.println(args[0] + ": no " + TABLES[t] +
+                                   " (already converted, or not a CUP parser?)");
+                System.exit(-1);
+            }
+            String packed = decode(m.group(1));
+            tables[t] = unpack(packed);
+            digest.update(packed.getBytes(StandardCharsets.UTF_16BE));
+            text = text.substring(0, m.start()) + text.substring(m.end());
+            text = text.replace("return " + TABLES[t] + ";",
+                                "return " + ACCESSORS[t] + "(" + FINGERPRINT + ");");
+            fieldStart = fieldStart < 0 ? m.start() : Math.min(fieldStart, m.start());
+        }
+        long fingerprint = 0;
+        byte[] hash = digest.digest();
+        for (int i = 0; i < 8; i++) {
+            fingerprint = (fingerprint << 8) | (hash[i] & 0xff);
+        }
+        text = text.substring(0, fieldStart) +
+               "  /** Fingerprint of the tables in parser.tables (see TableDump). */\n" +
+               "  static final long " + FINGERPRINT + " = 0x" +
+               Long.toHexString(fingerprint) + "L;\n" +
+               text.substring(fieldStart);
+
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(args[1])));
+        write(out, tables, fingerprint);
+        out.close();
+        Files.write(source, text.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new Error(ex);
+        }
+    }
+
+    /**
+     * Write the fingerprint and the tables: first the distinct rows, then
+     * for each table the index of each of its rows.
+     */
+    private static void write(DataOutputStream out, short[][][] tables,
+                              long fingerprint) throws IOException {
+        Map<List<Short>, Integer> ids = new HashMap<List<Short>, Integer>();
+        List<short[]> rows = new ArrayList<short[]>();
+        int[][] rowIds = new int[tables.length][];
+        for (int t = 0; t < tables.length; t++) {
+            rowIds[t] = new int[tables[t].length];
+            for (int r = 0; r < tables[t].length; r++) {
+                List<Short> key = new ArrayList<Short>();
+                for (short s : tables[t][r]) {
+                    key.add(s);
+                }
+                Integer id = ids.get(key);
+                if (id == null) {
+                    id = rows.size();
+                    ids.put(key, id);
+                    rows.add(tables[t][r]);
+                }
+                rowIds[t][r] = id;
+            }
+        }
+
+        out.writeInt(ParseTables.MAGIC);
+        out.writeLong(fingerprint);
+        out.writeInt(rows.size());
+        for (short[] row : rows) {
+            out.writeInt(row.length);
+            for (short s : row) {
+                out.writeShort(s);
+            }
+        }
+        for (int t = 0; t < tables.length; t++) {
+            out.writeInt(rowIds[t].length);
+            for (int id : rowIds[t]) {
+                out.writeInt(id);
+            }
+        }
+    }
+
+    /**
+     * Return the characters of the Java string literals in literals,
+     * joined together.
+     */
+    private static String decode(String literals) {
+        StringBuilder sb = new StringBuilder();
+        Matcher m = STRING.matcher(literals);
+        while (m.find()) {
+            String s = m.group(1);
+            for (int i = 0; i < s.length(); i++) {
+                char c = s.charAt(i);
+                if (c != '\\') {
+                    sb.append(c);
+                    continue;
+                }
+                c = s.charAt(++i);
+                if (c >= '0' && c <= '7') {
+                    int end = i + 1;
+                    while (end < s.length() && end < i + (c <= '3' ? 3 : 2) &&
+                           s.charAt(end) >= '0' && s.charAt(end) <= '7') {
+                        end++;
+                    }
+                    sb.append((char)Integer.parseInt(s.substring(i, end), 8));
+                    i = end - 1;
+                } else if (c == 'u') {
+                    while (s.charAt(i) == 'u') {
+                        i++;
+                    }
+                    sb.append((char)Integer.parseInt(s.substring(i, i + 4), 16));
+                    i += 3;
+                } else {
+                    switch (c) {
+                    case 'b': sb.append('\b'); break;
+                    case 't': sb.append('\t'); break;
+                    case 'n': sb.append('\n'); break;
+                    case 'f': sb.append('\f'); break;
+                    case 'r': sb.append('\r'); break;
+                    default:  sb.append(c);
+                    }
+                }
+            }
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Decode a table the way lr_parser.unpackFromStrings does: a 32-bit
+     * row count, then each row as a 32-bit length and its entries, each
+     * entry stored plus 2.
+     */
+    private static short[][] unpack(String s) {
+        int n = 0;
+        int rows = (s.charAt(n) << 16) | s.charAt(n + 1);
+        n += 2;
+        short[][] table = new short[rows][];
+        for (int r = 0; r < rows; r++) {
+            int length = (s.charAt(n) << 16) | s.charAt(n + 1);
+            n += 2;
+            table[r] = new short[length];
+            for (int i = 0; i < length; i++) {
+                table[r][i] = (short)(s.charAt(n++) - 2);
+            }
+        }
+        return table;
+    }
+}
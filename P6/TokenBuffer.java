@@ -0,0 +1,267 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import java_cup.runtime.*;
+
+// **********************************************************************
+// The TokenBuffer class holds a whole token stream in parallel int arrays
+// instead of one Symbol and one TokenVal object per token:
+//
+//     kind[i]    the token kind (a sym constant)
+//     line[i]    line number
+//     col[i]     character number
+//     value[i]   ID:            NamePool id of the name
+//                INTLITERAL:    the value
+//                STRINGLITERAL: index of the text in the string table
+//                otherwise 0
+//
+// That is 16 bytes per token (plus one String per string literal), so a
+// large file can be scanned in one bulk pass before parsing starts.  The
+// final EOF token is not stored.
+//
+// TokenBufferScanner (below) feeds a TokenBuffer to the CUP parser.
+// **********************************************************************
+
+public class TokenBuffer {
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private int[] kind;
+    private int[] line;
+    private int[] col;
+    private int[] value;
+    private int count;
+
+    // text of the string literals
+    private List<String> strings;
+
+    public TokenBuffer() {
+        this(INITIAL_CAPACITY);
+    }
+
+    public TokenBuffer(int capacity) {
+        capacity = Math.max(capacity, 16);
+        kind = new int[capacity];
+        line = new int[capacity];
+        col = new int[capacity];
+        value = new int[capacity];
+        count = 0;
+        strings = new ArrayList<String>();
+    }
+
+    /**
+     * Scan everything that is left in the given scanner into a new buffer.
+     */
+    public static TokenBuffer lex(MappedScanner scanner) {
+        // roughly one token per 4 bytes of source
+        TokenBuffer buf = new TokenBuffer(scanner.buffer().remaining() / 4);
+        buf.addAll(scanner);
+        buf.trim();
+        return buf;
+    }
+
+    /**
+     * Scan everything that is left in the given scanner into a new buffer.
+     * This is for scanners (like Yylex) that only hand out Symbols.
+     */
+    public static TokenBuffer lexSymbols(Scanner scanner) throws Exception {
+        TokenBuffer buf = new TokenBuffer();
+        for (Symbol s = scanner.next_token(); s.sym != sym.EOF;
+             s = scanner.next_token()) {
+            TokenVal val = (TokenVal)s.value;
+            switch (s.sym) {
+            case sym.ID:
+                buf.add(s.sym, val.linenum, val.charnum, ((IdTokenVal)val).nameId);
+                break;
+            case sym.INTLITERAL:
+                buf.add(s.sym, val.linenum, val.charnum, ((IntLitTokenVal)val).intVal);
+                break;
+            case sym.STRINGLITERAL:
+                buf.addString(val.linenum, val.charnum, ((StrLitTokenVal)val).strVal);
+                break;
+            default:
+                buf.add(s.sym, val.linenum, val.charnum, 0);
+            }
+        }
+        buf.trim();
+        return buf;
+    }
+
+    /**
+     * Append every token left in the given scanner.
+     */
+    public void addAll(MappedScanner scanner) {
+        for (int k = scanner.next(); k != sym.EOF; k = scanner.next()) {
+            switch (k) {
+            case sym.ID:
+                add(k, scanner.lineNum(), scanner.charNum(), scanner.nameId());
+                break;
+            case sym.INTLITERAL:
+                add(k, scanner.lineNum(), scanner.charNum(), scanner.intValue());
+                break;
+            case sym.STRINGLITERAL:
+                addString(scanner.lineNum(), scanner.charNum(), scanner.text());
+                break;
+            default:
+                add(k, scanner.lineNum(), scanner.charNum(), 0);
+            }
+        }
+    }
+
+    /**
+     * Append a token.
+     */
+    public void add(int k, int lineNum, int charNum, int val) {
+        if (count == kind.length) {
+            grow();
+        }
+        kind[count] = k;
+        line[count] = lineNum;
+        col[count] = charNum;
+        value[count] = val;
+        count++;
+    }
+
+    /**
+     * Append a string literal token.
+     */
+    public void addString(int lineNum, int charNum, String text) {
+        add(sym.STRINGLITERAL, lineNum, charNum, strings.size());
+        strings.add(text);
+    }
+
+    /**
+     * Append all the tokens of another buffer, adding lineDelta to their
+     * line numbers and mapping their ID values through nameMap (from the
+     * ids of the NamePool they were scanned with to ids in this buffer's).
+     */
+    public void append(TokenBuffer other, int lineDelta, int[] nameMap) {
+        int n = other.count;
+        int stringBase = strings.size();
+        while (count + n > kind.length) {
+            grow();
+        }
+        for (int i = 0; i < n; i++) {
+            int k = other.kind[i];
+            int val = other.value[i];
+            if (k == sym.ID) {
+                val = nameMap[val];
+            } else if (k == sym.STRINGLITERAL) {
+                val += stringBase;
+            }
+            kind[count + i] = k;
+            line[count + i] = other.line[i] + lineDelta;
+            col[count + i] = other.col[i];
+            value[count + i] = val;
+        }
+        count += n;
+        strings.addAll(other.strings);
+    }
+
+    /**
+     * Return the number of tokens (not counting EOF).
+     */
+    public int size() {
+        return count;
+    }
+
+    public int kind(int i) {
+        return kind[i];
+    }
+
+    public int lineNum(int i) {
+        return line[i];
+    }
+
+    public int charNum(int i) {
+        return col[i];
+    }
+
+    /**
+     * Return the value column of token i (see the table above).
+     */
+    public int value(int i) {
+        return value[i];
+    }
+
+    /**
+     * Return the text of token i, which must be a string literal.
+     */
+    public String stringValue(int i) {
+        return strings.get(value[i]);
+    }
+
+    /**
+     * Return token i as a Symbol, the way the scanners build them for the
+     * CUP parser.  Indexes past the end give EOF.
+     */
+    public Symbol symbol(int i) {
+        if (i >= count) {
+            return TokenVal.symbol(sym.EOF, null);
+        }
+        switch (kind[i]) {
+        case sym.ID:
+            return TokenVal.symbol(sym.ID, new IdTokenVal(line[i], col[i], value[i]));
+        case sym.INTLITERAL:
+            return TokenVal.symbol(sym.INTLITERAL,
+                                   new IntLitTokenVal(line[i], col[i], value[i]));
+        case sym.STRINGLITERAL:
+            return TokenVal.symbol(sym.STRINGLITERAL,
+                                   new StrLitTokenVal(line[i], col[i], stringValue(i)));
+        default:
+            return TokenVal.symbol(kind[i], new TokenVal(line[i], col[i]));
+        }
+    }
+
+    /**
+     * Drop the unused tail of the arrays once the buffer is complete.
+     */
+    public void trim() {
+        kind = Arrays.copyOf(kind, count);
+        line = Arrays.copyOf(line, count);
+        col = Arrays.copyOf(col, count);
+        value = Arrays.copyOf(value, count);
+    }
+
+    private void grow() {
+        int capacity = Math.max(16, 2 * kind.length);
+        kind = Arrays.copyOf(kind, capacity);
+        line = Arrays.copyOf(line, capacity);
+        col = Arrays.copyOf(col, capacity);
+        value = Arrays.copyOf(value, capacity);
+    }
+}
+
+/**
+ * TokenBufferScanner
+ * A Scanner that hands out the tokens of a TokenBuffer one at a time, so
+ * the CUP parser can run on a stream that was scanned ahead of time.  The
+ * Symbols it creates are only alive until the parser shifts them.
+ */
+class TokenBufferScanner implements java_cup.runtime.Scanner {
+    private TokenBuffer myTokens;
+    private int myNext;
+
+    public TokenBufferScanner(TokenBuffer tokens) {
+        myTokens = tokens;
+        myNext = 0;
+    }
+
+    public Symbol next_token() {
+        return myTokens.symbol(myNext++);
+    }
+
+    /**
+     * Return the buffer this scanner reads from.
+     */
+    public TokenBuffer tokens() {
+        return myTokens;
+    }
+
+    /**
+     * Return the index of the next token next_token() will return.
+     */
+    public int position() {
+        return myNext;
+    }
+}
@@ -4,6 +4,19 @@
  */
 abstract public class Type {
 
+    /**
+     * The one instance of each type except the struct types (each
+     * StructDefSym has the one StructType of its variables), so that
+     * types are compared with ==.  Only these use the constructors.
+     */
+    public static final Type ERROR = new ErrorType();
+    public static final Type INT = new IntType();
+    public static final Type BOOL = new BoolType();
+    public static final Type VOID = new VoidType();
+    public static final Type STRING = new StringType();
+    public static final Type FN = new FnType();
+    public static final Type STRUCT_DEF = new StructDefType();
+
     /**
      * default constructor
      */
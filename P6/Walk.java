@@ -0,0 +1,168 @@
+import java.util.Arrays;
+
+// **********************************************************************
+// The Walk class is the base of the passes over the AST that keep the
+// nodes they are in the middle of on a stack of their own instead of the
+// Java stack, so that they walk a tree of any depth (a chain of a
+// million minus signs, or a million nested ifs) on a thread with an
+// ordinary stack.
+//
+// A pass does its work on each node in steps, step(node, 0),
+// step(node, 1), ..., and has children walked between the steps: each
+// child the step visits is walked completely (all its steps and all its
+// children's) after the step returns and before the node's next step,
+// and children visited in one step are walked in the order visited.  A
+// step returns true if the node has a step after those children, and
+// false if it is done; so a node that only visits its children, or that
+// has nothing to do after the last ones, takes no room on the stack
+// while they are walked.
+//
+// Each node on the stack has an int and an object that its parent gave
+// it with visit (an indent, a label) and that its steps can replace with
+// what they keep from one step to the next (the start of its nodes in an
+// arena, an iterator).
+// **********************************************************************
+
+abstract class Walk {
+    private ASTnode[] myNodes = new ASTnode[16];
+    private int[] mySteps = new int[16];
+    private int[] myArgs = new int[16];
+    private Object[] myObjs = new Object[16];
+    private int myCount;  // the nodes on the stack
+    private int myTop;    // the node whose step is running
+
+    // visits each child it is given (see visitChildren)
+    private final ASTVisitor myChildren = new ASTVisitor() {
+            public void visitNode(ASTnode node) {
+                Walk.this.visit(node);
+            }
+        };
+
+    /**
+     * step
+     * Do step step of the work on node; return true if there is another
+     * one after the children it visits.
+     */
+    protected abstract boolean step(ASTnode node, int step);
+
+    /**
+     * Walk the tree whose root is node.
+     */
+    final void walk(ASTnode node) {
+        walk(node, 0, null);
+    }
+
+    /**
+     * Walk the tree whose root is node, which is given arg and obj.
+     */
+    final void walk(ASTnode node, int arg, Object obj) {
+        int base = myCount;
+        int top = myTop;
+        visit(node, arg, obj);
+        try {
+            while (myCount > base) {
+                myTop = myCount - 1;
+                int visited = myCount;
+                boolean more = step(myNodes[myTop], mySteps[myTop]++);
+                reverse(visited, myCount);
+                if (!more) {
+                    remove(myTop);
+                }
+            }
+        } finally {
+            myTop = top;
+        }
+    }
+
+    /**
+     * Have node walked after the step that is running, with 0 and null.
+     */
+    final void visit(ASTnode node) {
+        visit(node, 0, null);
+    }
+
+    /**
+     * Have node walked after the step that is running, with arg and obj.
+     */
+    final void visit(ASTnode node, int arg, Object obj) {
+        if (myCount == myNodes.length) {
+            int capacity = 2 * myCount;
+            myNodes = Arrays.copyOf(myNodes, capacity);
+            mySteps = Arrays.copyOf(mySteps, capacity);
+            myArgs = Arrays.copyOf(myArgs, capacity);
+            myObjs = Arrays.copyOf(myObjs, capacity);
+        }
+        myNodes[myCount] = node;
+        mySteps[myCount] = 0;
+        myArgs[myCount] = arg;
+        myObjs[myCount] = obj;
+        myCount++;
+    }
+
+    /**
+     * Visit each child of node, in source order (see
+     * ASTnode.visitChildren).
+     */
+    final void visitChildren(ASTnode node) {
+        node.visitChildren(myChildren);
+    }
+
+    /**
+     * Return the int of the node whose step is running.
+     */
+    final int arg() {
+        return myArgs[myTop];
+    }
+
+    final void setArg(int arg) {
+        myArgs[myTop] = arg;
+    }
+
+    /**
+     * Return the object of the node whose step is running.
+     */
+    final Object obj() {
+        return myObjs[myTop];
+    }
+
+    final void setObj(Object obj) {
+        myObjs[myTop] = obj;
+    }
+
+    /**
+     * The nodes from up to to were visited in that order by one step;
+     * turn them around, so that the first one is walked first.
+     */
+    private void reverse(int from, int to) {
+        for (int i = from, j = to - 1; i < j; i++, j--) {
+            swap(i, j);
+        }
+    }
+
+    /**
+     * Take the node at i off the stack; those above it move down.
+     */
+    private void remove(int i) {
+        for (; i + 1 < myCount; i++) {
+            swap(i, i + 1);
+        }
+        myCount--;
+        myNodes[myCount] = null;
+        myObjs[myCount] = null;
+    }
+
+    private void swap(int i, int j) {
+        ASTnode node = myNodes[i];
+        myNodes[i] = myNodes[j];
+        myNodes[j] = node;
+        int step = mySteps[i];
+        mySteps[i] = mySteps[j];
+        mySteps[j] = step;
+        int arg = myArgs[i];
+        myArgs[i] = myArgs[j];
+        myArgs[j] = arg;
+        Object obj = myObjs[i];
+        myObjs[i] = myObjs[j];
+        myObjs[j] = obj;
+    }
+}
@@ -10,8 +10,9 @@ import java.util.*;
 // children) or as a fixed set of fields.
 //
 // The nodes for literals and ids contain line and character number
-// information; for string literals and identifiers, they also contain a
-// string; for integer literals, they also contain an integer value.
+// information; for string literals, they also contain a string; for
+// identifiers, the NamePool id of the name; for integer literals, they
+// also contain an integer value.
 //
 // Here are all the different kinds of AST nodes and what kinds of children
 // they have.  All of these kinds of AST nodes are subclasses of "ASTnode".
@@ -99,16 +100,112 @@ import java.util.*;
 //        AndNode,         OrNode,          EqualsNode,     NotEqualsNode,
 //        LessNode,        GreaterNode,     LessEqNode,     GreaterEqNode
 //
+// Statements nest, and expressions chain, to any depth, so the passes
+// over them do not recurse: unparse, codeGen, encode, shiftLines and the
+// name analysis and type checking of an expression each walk the tree
+// with a Walk, and a node's method for the pass does one step of the
+// work on it at a time (see Walk).  AnalysisPass walks the statements of
+// a function the same way.
+//
 // **********************************************************************
 
 // **********************************************************************
 // ASTnode class (base class for all other kinds of nodes)
 // **********************************************************************
 
-abstract class ASTnode { 
-    // every subclass must provide an unparse operation
-    abstract public void unparse(PrintWriter p, int indent);
-    public void codeGen(PrintWriter p){}
+abstract class ASTnode {
+    /**
+     * unparse
+     * Print this subtree, indented by indent.
+     */
+    public final void unparse(final PrintWriter p, int indent) {
+        new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                return node.unparse(p, this, step);
+            }
+        }.walk(this, indent, null);
+    }
+
+    // every subclass must provide an unparse operation: step step of
+    // printing the node (see Walk), indented by w.arg()
+    abstract protected boolean unparse(PrintWriter p, Walk w, int step);
+
+    /**
+     * codeGen
+     * Generate the code for this subtree.
+     */
+    public final void codeGen(final PrintWriter p) {
+        new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                return node.codeGen(p, this, step);
+            }
+        }.walk(this);
+    }
+
+    // step step of generating the code for the node (see Walk); a
+    // statement is given the label a return jumps to (w.obj())
+    protected boolean codeGen(PrintWriter p, Walk w, int step){ return false; }
+
+    /**
+     * shiftLines
+     * Add delta to every line number in this subtree (IncrementalParser
+     * does this for declarations that an edit moved to other lines).
+     */
+    public final void shiftLines(final int delta) {
+        new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                node.shiftSpan(delta);
+                visitChildren(node);
+                return false;
+            }
+        }.walk(this);
+    }
+
+    /**
+     * shiftSpan
+     * Add delta to the line number of this node's own position, if it
+     * has one (shiftLines does the children).
+     */
+    protected void shiftSpan(int delta){}
+
+    /**
+     * encode
+     * Add this subtree to arena (in post order, see AstArena) and return
+     * the node its root becomes there.
+     */
+    public final int encode(final AstArena arena) {
+        new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                if (step == 0) {
+                    setArg(arena.size());
+                    visitChildren(node);
+                    return true;
+                }
+                node.encode(arena, arg());
+                return false;
+            }
+        }.walk(this);
+        return arena.size() - 1;
+    }
+
+    /**
+     * encode
+     * Add this node to arena, after its children, whose nodes start at
+     * start there, and return the node it becomes.
+     */
+    abstract protected int encode(AstArena arena, int start);
+
+    /**
+     * accept
+     * Call the visit method of v for this node's class (see ASTVisitor).
+     */
+    abstract public void accept(ASTVisitor v);
+
+    /**
+     * visitChildren
+     * Have v visit each child of this node, in source order.
+     */
+    public void visitChildren(ASTVisitor v){}
 
     // this method can be used by the unparse methods to do indenting
     protected void doIndent(PrintWriter p, int indent) {
@@ -136,40 +233,42 @@ class ProgramNode extends ASTnode {
 
     /**
      * nameAnalysis
-     * Creates an empty symbol table for the outermost scope, then processes
-     * all of the globals, struct defintions, and functions in the program.
+     * Does name analysis of the whole program, and the offsets and type
+     * checking that go with it, in one AnalysisPass.
      */
     public void nameAnalysis() {
-        SymTable symTab = new SymTable();
-        myDeclList.nameAnalysis(symTab);
-
-	// after return, the symTable is filled
-	// check if have a main entry
-	SemSym s = symTab.lookupGlobal("main");
-	if(s != null && s instanceof FnSym){
-	    // it's fine
-	}else{
-	    ErrMsg.fatal(0,0,"No main function");
-	}
-
-    }
-    
-    public boolean typeCheck(){
-    	// TODO: You'll have to change this
-	return myDeclList.typeCheck();
+        accept(new AnalysisPass());
     }
 
-    public void codeGen(PrintWriter p){
-	myDeclList.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myDeclList);
+	    return true;
+	}
 	System.out.println("\n***DONE***\n***Assembly code generated successfully in test_out.s***");
 
 	if(p!= null)
 	    p.close();
+	return false;
     }
-    
-    public void unparse(PrintWriter p, int indent) {
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myDeclList.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        // the program is its declaration list there
+        return arena.size() - 1;
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
 	echo("unparse called");
-        myDeclList.unparse(p, indent);
+        w.visit(myDeclList, w.arg(), null);
+        return false;
     }
 
     // 1 kid
@@ -181,15 +280,6 @@ class DeclListNode extends ASTnode {
         myDecls = S;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, process all of the decls in the list.
-     */
-    public void nameAnalysis(SymTable symTab) {
-        nameAnalysis(symTab, symTab);
-	// declListSize = 0;
-    }
-
     /**
      * nameAnalysis
      * Given a symbol table symTab and a global symbol table globalTab
@@ -207,45 +297,32 @@ class DeclListNode extends ASTnode {
         }
     }    
 
-    public boolean typeCheck(){
-    	// TODO: You'll have to change this
-	boolean result = true;
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	for(DeclNode node : myDecls){
-	    if(node instanceof FnDeclNode){
-		if(((FnDeclNode)node).typeCheck() == false){
-		    result = false;
-		}
-	    }else{
-		continue;
-	    }
+	    w.visit(node);
 	}
-	return result;
+	return false;
     }
 
-    public int markOffset(int start){
-	for (DeclNode node : myDecls) {
-	    start = node.markOffset(start);
-        }
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
 
-	return start;
+    public void visitChildren(ASTVisitor v) {
+        for (DeclNode node : myDecls) {
+            node.accept(v);
+        }
     }
 
-    public void codeGen(PrintWriter p){
-	for(DeclNode node : myDecls){
-	    node.codeGen(p);
-	}
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.DECL_LIST, 0, start);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        Iterator it = myDecls.iterator();
-        try {
-            while (it.hasNext()) {
-                ((DeclNode)it.next()).unparse(p, indent);
-            }
-        } catch (NoSuchElementException ex) {
-            System.err.println("unexpected NoSuchElementException in DeclListNode.print");
-            System.exit(-1);
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        for (DeclNode node : myDecls) {
+            w.visit(node, w.arg(), null);
         }
+        return false;
     }
 
     // list of kids (DeclNodes)
@@ -269,15 +346,15 @@ class FormalsListNode extends ASTnode {
         List<Type> typeList = new LinkedList<Type>();
 	int formalOffset = 0;
         for (FormalDeclNode node : myFormals) {
-            SemSym sym = node.nameAnalysis(symTab);
-            if (sym != null) {
+            int sym = node.nameAnalysis(symTab);
+            if (sym != SymAttrs.NONE) {
 		// mark offset of each variables in formalList for codeGen
-		sym.size = 4;
-		sym.offset = formalOffset; // mark variable's offset
+		SymAttrs.SHARED.setSize(sym, 4);
+		SymAttrs.SHARED.setOffset(sym, formalOffset); // mark variable's offset
 		// fs.formalSpace = formalOffset + 4; // set parameter's space
 		formalOffset -= 4;
 
-                typeList.add(sym.getType());
+                typeList.add(SymAttrs.SHARED.type(sym));
             }
         }
         return typeList;
@@ -294,25 +371,43 @@ class FormalsListNode extends ASTnode {
 	return myFormals;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	int offset = 8;
 	for(FormalDeclNode n : myFormals){
 	    offset += 4;
 	}
 	Codegen.p = p;
 	Codegen.generate("addu", "$fp", "$sp", Integer.toString(offset));
- 
+	return false;
    }
 
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<FormalDeclNode> it = myFormals.iterator();
-        if (it.hasNext()) { // if there is at least one element
-            it.next().unparse(p, indent);
-            while (it.hasNext()) {  // print the rest of the list
-                p.print(", ");
-                it.next().unparse(p, indent);
-            }
-        } 
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        for (FormalDeclNode node : myFormals) {
+            node.accept(v);
+        }
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.FORMALS_LIST, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 0) {
+            w.setObj(myFormals.iterator());
+        }
+        Iterator<?> it = (Iterator<?>)w.obj();
+        if (!it.hasNext()) {
+            return false;
+        }
+        if (step > 0) {  // print the rest of the list
+            p.print(", ");
+        }
+        w.visit((FormalDeclNode)it.next(), w.arg(), null);
+        return true;
     }
 
     // list of kids (FormalDeclNodes)
@@ -325,49 +420,50 @@ class FnBodyNode extends ASTnode {
         myStmtList = stmtList;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, do:
-     * - process the declaration list
-     * - process the statement list
-     */
-    public void nameAnalysis(SymTable symTab, int formalOffset) {
-        myDeclList.nameAnalysis(symTab);
-
-	/**
-	 * offset start from -<paramete size + 8>
-	 */
-	int offset = formalOffset - 8;
-	offset = myDeclList.markOffset(offset);
-
-        myStmtList.nameAnalysis(symTab);
-	offset = myStmtList.markOffset(offset);
-
-	// echo("offset -->" + offset + "formalOffset -->" + formalOffset);
+    public DeclListNode declList() {
+        return myDeclList;
+    }
 
-	/**
-	 * Thus the local space for local parameters is the -offset - <parameter size + 8>
-	 */
-	this.localSpace = formalOffset - offset - 8;
-    }    
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
 
-    public boolean typeCheck(TypeNode rTypeNode){
-	return myStmtList.typeCheck(rTypeNode);
+    /**
+     * Set the space the locals take on the stack (AnalysisPass computes
+     * it as it gives them their offsets).
+     */
+    public void setLocalSpace(int localSpace) {
+        this.localSpace = localSpace;
     }
 
-    public void codeGen(PrintWriter p, String exitLab){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	// set space for local variables
 	// List dl = myDeclList.getDeclList();
 	Codegen.p = p;
 	if(this.localSpace > 0) // only add this command when there are variables declared
 	    Codegen.generate("subu", "$sp", "$sp", this.localSpace);
-	// each stmtnode handles itself
-	myStmtList.codeGen(p, exitLab);
+	// each stmtnode handles itself (w.obj() is the exit label)
+	w.visit(myStmtList, 0, w.obj());
+	return false;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myDeclList.accept(v);
+        myStmtList.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.FN_BODY, 0, start);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        myDeclList.unparse(p, indent);
-        myStmtList.unparse(p, indent);
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        w.visit(myDeclList, w.arg(), null);
+        w.visit(myStmtList, w.arg(), null);
+        return false;
     }
 
     // 2 kids
@@ -381,47 +477,33 @@ class StmtListNode extends ASTnode {
         myStmts = S;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, process each statement in the list.
-     */
-    public void nameAnalysis(SymTable symTab) {
-        for (StmtNode node : myStmts) {
-            node.nameAnalysis(symTab);
-        }
-    }    
-    
-    public boolean typeCheck(TypeNode rTypeNode){
-	boolean result = true;
-	for(StmtNode node : myStmts){
-	    if(node.typeCheck(rTypeNode) == false)
-		result = false;
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	// each statement is given the exit label (the returns use it)
+	for(StmtNode sn : myStmts){
+	    w.visit(sn, 0, w.obj());
 	}
-	return result;
+	return false;
     }
 
-    public int markOffset(int start){
-	for (StmtNode node : myStmts) {
-            start = node.markOffset(start);
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        for (StmtNode node : myStmts) {
+            node.accept(v);
         }
-	return start;
     }
 
-    public void codeGen(PrintWriter p, String exitLab){
-	for(StmtNode sn : myStmts){
-	    if(sn instanceof ReturnStmtNode){
-		((ReturnStmtNode)sn).codeGen(p, exitLab);
-	    }else{
-		sn.codeGen(p);
-	    }
-	}
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.STMT_LIST, 0, start);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<StmtNode> it = myStmts.iterator();
-        while (it.hasNext()) {
-            it.next().unparse(p, indent);
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        for (StmtNode node : myStmts) {
+            w.visit(node, w.arg(), null);
         }
+        return false;
     }
 
     // list of kids (StmtNodes)
@@ -433,34 +515,43 @@ class ExpListNode extends ASTnode {
         myExps = S;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, process each exp in the list.
-     */
-    public void nameAnalysis(SymTable symTab) {
-        for (ExpNode node : myExps) {
-            node.nameAnalysis(symTab);
-        }
-    }
-    
     public List<ExpNode> getCallExpList(){
 	return myExps;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	for(ExpNode en : myExps)
-	    en.codeGen(p);
+	    w.visit(en);
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        Iterator<ExpNode> it = myExps.iterator();
-        if (it.hasNext()) { // if there is at least one element
-            it.next().unparse(p, indent);
-            while (it.hasNext()) {  // print the rest of the list
-                p.print(", ");
-                it.next().unparse(p, indent);
-            }
-        } 
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        for (ExpNode node : myExps) {
+            node.accept(v);
+        }
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.EXP_LIST, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 0) {
+            w.setObj(myExps.iterator());
+        }
+        Iterator<?> it = (Iterator<?>)w.obj();
+        if (!it.hasNext()) {
+            return false;
+        }
+        if (step > 0) {  // print the rest of the list
+            p.print(", ");
+        }
+        w.visit((ExpNode)it.next(), w.arg(), null);
+        return true;
     }
 
     // list of kids (ExpNodes)
@@ -473,9 +564,10 @@ class ExpListNode extends ASTnode {
 
 abstract class DeclNode extends ASTnode {
     /**
-     * Note: a formal decl needs to return a sym
+     * Note: a formal decl needs to return a sym (its id in SymAttrs, or
+     * SymAttrs.NONE)
      */
-    abstract public SemSym nameAnalysis(SymTable symTab);
+    abstract public int nameAnalysis(SymTable symTab);
 
     public int markOffset(int start){return start;}
 }
@@ -502,14 +594,14 @@ class VarDeclNode extends DeclNode {
      * globalTab is global symbol table (for struct type names)
      * symTab and globalTab can be the same
      */
-    public SemSym nameAnalysis(SymTable symTab) {
+    public int nameAnalysis(SymTable symTab) {
         return nameAnalysis(symTab, symTab);
     }
     
-    public SemSym nameAnalysis(SymTable symTab, SymTable globalTab) {
+    public int nameAnalysis(SymTable symTab, SymTable globalTab) {
         boolean badDecl = false;
-        String name = myId.name();
-        SemSym sym = null;
+        int name = myId.nameId();
+        int sym = SymAttrs.NONE;
         IdNode structId = null;
 
         if (myType instanceof VoidNode) {  // check for void type
@@ -520,11 +612,11 @@ class VarDeclNode extends DeclNode {
         
         else if (myType instanceof StructNode) {
             structId = ((StructNode)myType).idNode();
-            sym = globalTab.lookupGlobal(structId.name());
+            sym = globalTab.lookupGlobal(structId.nameId());
             
             // if the name for the struct type is not found, 
             // or is not a struct type
-            if (sym == null || !(sym instanceof StructDefSym)) {
+            if (!(SymAttrs.SHARED.sym(sym) instanceof StructDefSym)) {
                 ErrMsg.fatal(structId.lineNum(), structId.charNum(), 
                              "Invalid name of struct type");
                 badDecl = true;
@@ -534,7 +626,7 @@ class VarDeclNode extends DeclNode {
             }
         }
         
-        if (symTab.lookupLocal(name) != null) {
+        if (symTab.lookupLocal(name) != SymAttrs.NONE) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
                          "Multiply declared identifier");
             badDecl = true;            
@@ -543,17 +635,17 @@ class VarDeclNode extends DeclNode {
         if (!badDecl) {  // insert into symbol table
             try {
                 if (myType instanceof StructNode) {
-                    sym = new StructSym(structId);
-		    sym.size = structId.sym().size;
+                    sym = new StructSym(structId).id();
+		    SymAttrs.SHARED.setSize(sym, SymAttrs.SHARED.size(structId.symId()));
                 }
                 else {
-                    sym = new SemSym(myType.type());
-		    sym.size = 4;
+                    sym = SymAttrs.SHARED.add(myType.type());
+		    SymAttrs.SHARED.setSize(sym, 4);
                 }
 
 		// this section mark each variable as global or local
 		if(symTab.whichScopeLevel() == 1){
-		    sym.isGlobal = true;
+		    SymAttrs.SHARED.setGlobal(sym);
 		}else{
 		    // this section add an offset to each variable for generating code
 		    // no need for global variables as they are referred directly
@@ -583,61 +675,56 @@ class VarDeclNode extends DeclNode {
     }    
 
     public int markOffset(int start){
-	SemSym s = myId.sym();
+	int s = myId.symId();
 	int size = 0;
-	if(s instanceof StructSym){
-	    SemSym tempSym = ((StructSym)s).getStructType().sym();
+	if(SymAttrs.SHARED.sym(s) instanceof StructSym){
+	    SemSym tempSym = ((StructSym)myId.sym()).getStructType().sym();
 	    // echo("struct ----> " + myId.name() + " -offset: " + start);
-	    // this is the offset of the start of a struct declaration
-	    size = tempSym.size;
-	    s.offset = start;  
-
-	    // traverse every id inside the struct and mark them with an offset
-	    SymTable structSymTab = ((StructDefSym)tempSym).getSymTable();
-	    // echo("fields contents: ");
-
-	    //mark each field
-	    HashMap<String, SemSym> fields = structSymTab.getField();
-	    int innerOffset = 0;
-	    Iterator it = fields.entrySet().iterator();
-	    while (it.hasNext()) {
-		Map.Entry pairs = (Map.Entry)it.next();
-		SemSym fieldSym = (SemSym)pairs.getValue();
-
-		fieldSym.structOffset = innerOffset;
-		// fieldSym.offset = start + innerOffset;
-		// echo(pairs.getKey()+ " offset: "+ fieldSym.offset + " -innerOffset: " + fieldSym.structOffset);
-
-		innerOffset -= fieldSym.size;
-	    }
-	    // accumlate size and mark each offset
+	    // this is the offset of the start of a struct declaration; the
+	    // fields' offsets inside it are the struct's (see StructLayout)
+	    size = ((StructDefSym)tempSym).getLayout().size();
+	    SymAttrs.SHARED.setOffset(s, start);  
 
 	}else{ // not struct, maybe int or bool
-	    s.offset = start; 
+	    SymAttrs.SHARED.setOffset(s, start); 
 	    size = 4;
 	}
 
 	return start - size;
 }
 
-    public void codeGen(PrintWriter p){
-	SemSym s = myId.sym();
-	if(s.isGlobal){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(SymAttrs.SHARED.isGlobal(myId.symId())){
 	    p.println("\t.data");
 	    p.println("\t\t.align 2");
 	    // mySym.offset = 4;
 	    // p.println("\t_" + myStrVal + ":\t" + ".space " + mySym.offset);
 	    p.println("\t_" + myId.name() + ":\t" + ".space " + "4");
 	}
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myType.accept(v);
+        myId.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.VAR_DECL, mySize, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        doIndent(p, w.arg());
         myType.unparse(p, 0);
         p.print(" ");
         // p.print(myId.name());
 	myId.unparse(p,0);
         p.println(";");
+        return false;
     }
 
     // 3 kids
@@ -673,12 +760,38 @@ class FnDeclNode extends DeclNode {
      *         update symbol table entry with types of formals
      *     process the body of the function
      *     exit scope
+     * An AnalysisPass does this (and type-checks the body), since the
+     * statements of the body nest to any depth.
+     */
+    public int nameAnalysis(SymTable symTab) {
+        AnalysisPass pass = new AnalysisPass(symTab);
+        accept(pass);
+        pass.releaseTypeErrors();
+        return SymAttrs.NONE;
+    }
+
+    /**
+     * declare
+     * The part of nameAnalysis before the body: add the function to
+     * symTab, enter its scope and process the formals.  Return the
+     * function's symbol.
      */
-    public SemSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+    public FnSym declare(SymTable symTab) {
+        FnSym sym = declareName(symTab);
+        declareFormals(symTab, sym);
+        return sym;
+    }
+
+    /**
+     * declareName
+     * The first part of declare: add the function to symTab.  Return the
+     * function's symbol (null if the name was already declared).
+     */
+    public FnSym declareName(SymTable symTab) {
+        int name = myId.nameId();
         FnSym sym = null;
 
-        if (symTab.lookupLocal(name) != null) {
+        if (symTab.lookupLocal(name) != SymAttrs.NONE) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(),
                          "Multiply declared identifier");
         }
@@ -686,8 +799,8 @@ class FnDeclNode extends DeclNode {
         else { // add function name to local symbol table
             try {
                 sym = new FnSym(myType.type(), myFormalsList.length());
-                symTab.addDecl(name, sym);
-                myId.link(sym);
+                symTab.addDecl(name, sym.id());
+                myId.link(sym.id());
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
                                    " in FnDeclNode.nameAnalysis");
@@ -698,23 +811,33 @@ class FnDeclNode extends DeclNode {
                 System.exit(-1);
             }
         }
-        
+        return sym;
+    }
+
+    /**
+     * declareFormals
+     * The rest of declare: enter the function's scope in symTab (which is
+     * a table of the function's own when its body is analyzed apart, see
+     * ParallelAnalysis) and process the formals.
+     */
+    public void declareFormals(SymTable symTab, FnSym sym) {
         symTab.addScope();  // add a new scope for locals and params
         
         // process the formals
         List<Type> typeList = myFormalsList.nameAnalysis(symTab);
         if (sym != null) {
             sym.addFormals(typeList);
-        }
-	
-	// parameters size
-	sym.formalSpace = typeList.size()*4;
-	// echo("after fomralAnalysis, parameter space: " + 
-	//      Integer.toString(sym.formalSpace));
 
-	// process the function body and mark localSpace needed
-        myBody.nameAnalysis(symTab, sym.formalSpace*(-1)); 
+            // parameters size
+            sym.formalSpace = typeList.size()*4;
+        }
+    }
 
+    /**
+     * exitScope
+     * The part of nameAnalysis after the body: exit the function's scope.
+     */
+    public void exitScope(SymTable symTab) {
         try {
             symTab.removeScope();  // exit scope
         } catch (EmptySymTableException ex) {
@@ -722,17 +845,22 @@ class FnDeclNode extends DeclNode {
                                " in FnDeclNode.nameAnalysis");
             System.exit(-1);
         }
-        
-        return null;
-    }    
-    
-    public boolean typeCheck(){
-	TypeNode rTypeNode = myType;
-	// check fnBody
-	return myBody.typeCheck(rTypeNode);
     }
 
-    public void codeGen(PrintWriter p){
+    public TypeNode returnType() {
+        return myType;
+    }
+
+    public FnBodyNode body() {
+        return myBody;
+    }
+    
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	String exitLab = "_"+myId.name()+"_Exit";
+	if(step == 1){
+	    exitCodeGen(p, exitLab);
+	    return false;
+	}
 	p.println("\t\t# FUNCTION ENTRY");
 
 	if(myId.name().equals("main")){
@@ -751,9 +879,11 @@ class FnDeclNode extends DeclNode {
 	myFormalsList.codeGen(p);
 
 	// assembly for fnBody
-	String exitLab = "_"+myId.name()+"_Exit";
-	myBody.codeGen(p, exitLab); // handle declList Only, others let stmtNode itself handle
+	w.visit(myBody, 0, exitLab); // handle declList Only, others let stmtNode itself handle
+	return true;
+    }
 
+    private void exitCodeGen(PrintWriter p, String exitLab){
 	p.println("\t\t# FUNCTION EXIT");
 	// exit arguments depends on formalList, need offsets from formalslist and myBody
 	// p.println("_"+myId.name()+"_Exit:");
@@ -776,16 +906,35 @@ class FnDeclNode extends DeclNode {
 
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myType.accept(v);
+        myId.accept(v);
+        myFormalsList.accept(v);
+        myBody.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.FN_DECL, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println("}\n");
+            return false;
+        }
+        doIndent(p, w.arg());
         myType.unparse(p, 0);
         p.print(" ");
         p.print(myId.name());
         p.print("(");
         myFormalsList.unparse(p, 0);
         p.println(") {");
-        myBody.unparse(p, indent+4);
-        p.println("}\n");
+        w.visit(myBody, w.arg()+4, null);
+        return true;
     }
 
     // 4 kids
@@ -809,10 +958,10 @@ class FormalDeclNode extends DeclNode {
      *     then issue multiply declared error message and return null
      * else add a new entry to the symbol table and return that Sym
      */
-    public SemSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+    public int nameAnalysis(SymTable symTab) {
+        int name = myId.nameId();
         boolean badDecl = false;
-        SemSym sym = null;
+        int sym = SymAttrs.NONE;
         
         if (myType instanceof VoidNode) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
@@ -820,7 +969,7 @@ class FormalDeclNode extends DeclNode {
             badDecl = true;        
         }
         
-        if (symTab.lookupLocal(name) != null) {
+        if (symTab.lookupLocal(name) != SymAttrs.NONE) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
                          "Multiply declared identifier");
             badDecl = true;
@@ -828,7 +977,7 @@ class FormalDeclNode extends DeclNode {
         
         if (!badDecl) {  // insert into symbol table
             try {
-                sym = new SemSym(myType.type());
+                sym = SymAttrs.SHARED.add(myType.type());
                 symTab.addDecl(name, sym);
                 myId.link(sym);
             } catch (DuplicateSymException ex) {
@@ -845,16 +994,25 @@ class FormalDeclNode extends DeclNode {
         return sym;
     }    
     
-    public void codeGen(PrintWriter p){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
 
+    public void visitChildren(ASTVisitor v) {
+        myType.accept(v);
+        myId.accept(v);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.FORMAL_DECL, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         myType.unparse(p, 0);
         p.print(" ");
         // p.print(myId.name());
 	myId.unparse(p,0);
-
+        return false;
     }
 
     // 2 kids
@@ -878,11 +1036,11 @@ class StructDeclNode extends DeclNode {
      * if no errors
      *     add a new entry to symbol table for this struct
      */
-    public SemSym nameAnalysis(SymTable symTab) {
-        String name = myId.name();
+    public int nameAnalysis(SymTable symTab) {
+        int name = myId.nameId();
         boolean badDecl = false;
         
-        if (symTab.lookupLocal(name) != null) {
+        if (symTab.lookupLocal(name) != SymAttrs.NONE) {
             ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
                          "Multiply declared identifier");
             badDecl = true;            
@@ -890,19 +1048,15 @@ class StructDeclNode extends DeclNode {
 
         SymTable structSymTab = new SymTable();
         
-        // process the fields of the struct
-	// mark the offset of each fields inside the struct
+        // process the fields of the struct (the StructDefSym's
+	// StructLayout then places them)
         myDeclList.nameAnalysis(structSymTab, symTab);
-	// get the size
 
         if (!badDecl) {
             try {   // add entry to symbol table
-                StructDefSym sym = new StructDefSym(structSymTab);
-		sym.size = 0 - myDeclList.markOffset(0);
-		// echo("declared struct with size: " + sym.size);
-
-                symTab.addDecl(name, sym);
-                myId.link(sym);
+                StructDefSym sym = new StructDefSym(structSymTab, myId);
+                symTab.addDecl(name, sym.id());
+                myId.link(sym.id());
             } catch (DuplicateSymException ex) {
                 System.err.println("Unexpected DuplicateSymException " +
                                    " in StructDeclNode.nameAnalysis");
@@ -914,14 +1068,24 @@ class StructDeclNode extends DeclNode {
             }
         }
         
-        return null;
+        return SymAttrs.NONE;
     }    
     
-    public void codeGen(PrintWriter p){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
 
+    public void visitChildren(ASTVisitor v) {
+        myId.accept(v);
+        myDeclList.accept(v);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.STRUCT_DECL, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        int indent = w.arg();
         doIndent(p, indent);
         p.print("struct ");
         p.print(myId.name());
@@ -929,7 +1093,7 @@ class StructDeclNode extends DeclNode {
         myDeclList.unparse(p, indent+4);
         doIndent(p, indent);
         p.println("};\n");
-
+        return false;
     }
 
     // 2 kids
@@ -954,11 +1118,20 @@ class IntNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new IntType();
+        return Type.INT;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.INT_TYPE, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("int");
+        return false;
     }
 }
 
@@ -970,11 +1143,20 @@ class BoolNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new BoolType();
+        return Type.BOOL;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.BOOL_TYPE, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("bool");
+        return false;
     }
 }
 
@@ -986,11 +1168,20 @@ class VoidNode extends TypeNode {
      * type
      */
     public Type type() {
-        return new VoidType();
+        return Type.VOID;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.VOID_TYPE, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("void");
+        return false;
     }
 }
 
@@ -1005,18 +1196,28 @@ class StructNode extends TypeNode {
     
     /**
      * type
+     * (only once name analysis has linked the struct name)
      */
     public Type type() {
-        return new StructType(myId);
+        return ((StructDefSym)myId.sym()).getInstanceType();
     }
     
-    public void codeGen(PrintWriter p){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
 
+    public void visitChildren(ASTVisitor v) {
+        myId.accept(v);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.STRUCT_TYPE, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("struct ");
         p.print(myId.name());
+        return false;
     }
     
     // 1 kid
@@ -1028,9 +1229,19 @@ class StructNode extends TypeNode {
 // **********************************************************************
 
 abstract class StmtNode extends ASTnode {
-    abstract public void nameAnalysis(SymTable symTab);
+    /**
+     * typeCheck
+     * Type-check a statement that is not a block (the return type of the
+     * function is r); return false if it is incorrect.
+     */
     public boolean typeCheck(TypeNode r){ return false;}
-    public int markOffset(int start){return start;}
+
+    /**
+     * checkCondition
+     * For an if or a while, the part of type checking before the body:
+     * check that the condition is a bool (AnalysisPass checks the body).
+     */
+    public boolean checkCondition(){ return true; }
 }
 
 class AssignStmtNode extends StmtNode {
@@ -1038,14 +1249,6 @@ class AssignStmtNode extends StmtNode {
         myAssign = assign;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myAssign.nameAnalysis(symTab);
-    }
-    
     public boolean typeCheck(TypeNode r){
 	Type t = myAssign.typeCheck();
 	if( t instanceof ErrorType)
@@ -1054,15 +1257,32 @@ class AssignStmtNode extends StmtNode {
 	    return true;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	p.println("\t\t#ASSIGN");
-	myAssign.codeGen(p);
+	w.visit(myAssign);
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myAssign.unparse(p, -1); // no parentheses
-        p.println(";");
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myAssign.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.ASSIGN_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println(";");
+            return false;
+        }
+        doIndent(p, w.arg());
+        w.visit(myAssign, -1, null); // no parentheses
+        return true;
     }
 
     // 1 kid
@@ -1074,32 +1294,26 @@ class PostIncStmtNode extends StmtNode {
         myExp = exp;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-    }
-    
     public boolean typeCheck(TypeNode r){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(t instanceof ErrorType){
 	    return false;
 	}
 
 	if(!(t instanceof IntType)){
-	    i.typeCheckError("Arithmetic operator applied to non-numeric operand");
+	    ErrMsg.fatal(myExp.span(), "Arithmetic operator applied to non-numeric operand");
 	    return false;
 	}else{
 	    return true;
 	}
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#POST-INCREMENT");
-	myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t#POST-INCREMENT");
+	    w.visit(myExp);
+	    return true;
+	}
 	Codegen.p = p;
 	Codegen.genPop("$t0");
 	Codegen.generate("addi", "$t0", "$t0", "1");
@@ -1107,22 +1321,38 @@ class PostIncStmtNode extends StmtNode {
 
 	Codegen.generateIndexed("lw", "$t0", "$sp", 4, "peek");
 	if(myExp instanceof IdNode){
-	    SemSym s = ((IdNode)myExp).sym();
-	    if(s.isGlobal){
+	    int s = ((IdNode)myExp).symId();
+	    if(SymAttrs.SHARED.isGlobal(s)){
 		Codegen.generate("sw", "$t0", "_"+((IdNode)myExp).name());
 	    }else{
-		Codegen.generateIndexed("sw", "$t0", "$fp", (s.offset));
+		Codegen.generateIndexed("sw", "$t0", "$fp", (SymAttrs.SHARED.offset(s)));
 	    }
 	}else if(myExp instanceof DotAccessExpNode){
-	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).unrollDot());
+	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).frameOffset());
 	}
+	return false;
+    }
 
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myExp.unparse(p, 0);
-        p.println("++;");
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.POST_INC_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println("++;");
+            return false;
+        }
+        doIndent(p, w.arg());
+        w.visit(myExp);
+        return true;
     }
 
     // 1 kid
@@ -1134,32 +1364,26 @@ class PostDecStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-    }
-
     public boolean typeCheck(TypeNode r){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(t instanceof ErrorType)
 	    return false;
 	
 	if(!(t instanceof IntType)){
-	    i.typeCheckError("Arithmetic operator applied to non-numeric operand");
+	    ErrMsg.fatal(myExp.span(), "Arithmetic operator applied to non-numeric operand");
 	    return false;
 	}else{
 	    return true;
 	}
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#POST-DECRESEMENT");
-	// myExp.codeGen(p);
-	myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t#POST-DECRESEMENT");
+	    // myExp.codeGen(p);
+	    w.visit(myExp);
+	    return true;
+	}
 	Codegen.p = p;
 	Codegen.genPop("$t0");
 	Codegen.generate("addi", "$t0", "$t0", "-1");
@@ -1167,21 +1391,38 @@ class PostDecStmtNode extends StmtNode {
 
 	Codegen.generateIndexed("lw", "$t0", "$sp", 4, "peek");
 	if(myExp instanceof IdNode){
-	    SemSym s = ((IdNode)myExp).sym();
-	    if(s.isGlobal){
+	    int s = ((IdNode)myExp).symId();
+	    if(SymAttrs.SHARED.isGlobal(s)){
 		Codegen.generate("sw", "$t0", "_"+((IdNode)myExp).name());
 	    }else{
-		Codegen.generateIndexed("sw", "$t0", "$fp", s.offset);
+		Codegen.generateIndexed("sw", "$t0", "$fp", SymAttrs.SHARED.offset(s));
 	    }
 	}else if(myExp instanceof DotAccessExpNode){
-	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).unrollDot());
+	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).frameOffset());
 	}
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myExp.unparse(p, 0);
-        p.println("--;");
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.POST_DEC_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println("--;");
+            return false;
+        }
+        doIndent(p, w.arg());
+        w.visit(myExp);
+        return true;
     }
 
     // 1 kid
@@ -1193,37 +1434,28 @@ class ReadStmtNode extends StmtNode {
         myExp = e;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-    }    
-
     public boolean typeCheck(TypeNode r){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(t instanceof ErrorType){
 	    return false;
 	}
 	if(t instanceof FnType){
-	    i.typeCheckError("Attempt to read a function");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a function");
 	    return false;
 	}
 	if(t instanceof StructDefType){
-	    i.typeCheckError("Attempt to read a struct name");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a struct name");
 	    return false;
 	}
 	
 	if(t instanceof StructType){// id or other legal type
-	    i.typeCheckError("Attempt to read a struct variable");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a struct variable");
 	    return false;
 	}
 	return true;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	p.println("\t\t#READ");
 	Codegen.p = p;
 	Codegen.generate("li", "$v0", "5");
@@ -1232,22 +1464,39 @@ class ReadStmtNode extends StmtNode {
 	Codegen.genPush("$v0");
 	Codegen.generateIndexed("lw", "$t0", "$sp", 4, "peek");
 	if(myExp instanceof IdNode){
-	    SemSym s = ((IdNode)myExp).sym();
-	    if(s.isGlobal){
+	    int s = ((IdNode)myExp).symId();
+	    if(SymAttrs.SHARED.isGlobal(s)){
 		Codegen.generate("sw", "$t0", "_"+((IdNode)myExp).name());
 	    }else{
-		Codegen.generateIndexed("sw", "$t0", "$fp", s.offset);
+		Codegen.generateIndexed("sw", "$t0", "$fp", SymAttrs.SHARED.offset(s));
 	    }
 	}else if(myExp instanceof DotAccessExpNode){
-	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).unrollDot());
+	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myExp).frameOffset());
 	}	
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.READ_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println(";");
+            return false;
+        }
+        doIndent(p, w.arg());
         p.print("cin >> ");
-        myExp.unparse(p, 0);
-        p.println(";");
+        w.visit(myExp);
+        return true;
     }
 
     // 1 kid (actually can only be an IdNode or an ArrayExpNode)
@@ -1259,49 +1508,42 @@ class WriteStmtNode extends StmtNode {
         myExp = exp;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-    }
-    
     public boolean typeCheck(TypeNode r){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
-	// echo("writing: " + t.toString());
-	writeType = t;
 
 	if(t instanceof ErrorType){
 	    return false;
 	}
 	if(t instanceof FnType){
-	    i.typeCheckError("Attempt to read a function");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a function");
 	    return false;
 	}
 	if(t instanceof StructDefType){
-	    i.typeCheckError("Attempt to read a struct name");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a struct name");
 	    return false;
 	}
 	
 	if(t instanceof StructType){// id or other legal type
-	    i.typeCheckError("Attempt to read a struct variable");
+	    ErrMsg.fatal(myExp.span(), "Attempt to read a struct variable");
 	    return false;
 	}
 	
 	if(t instanceof VoidType){
-	    i.typeCheckError("Attempt to write void");
+	    ErrMsg.fatal(myExp.span(), "Attempt to write void");
 	    return false;
 	}
 	return true;
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#WRITE");
-	myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t#WRITE");
+	    w.visit(myExp);
+	    return true;
+	}
 	Codegen.p = p;
 	Codegen.genPop("$a0");
+	Type writeType = myExp.getType();
 	if(writeType instanceof IntType){
 	    Codegen.generate("li", "$v0", "1");
 	}else if(writeType instanceof StringType){
@@ -1313,19 +1555,34 @@ class WriteStmtNode extends StmtNode {
 	    System.exit(-1);
 	}
 	Codegen.generate("syscall");
+	return false;
+    }
 
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.WRITE_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println(";");
+            return false;
+        }
+        doIndent(p, w.arg());
         p.print("cout << ");
-        myExp.unparse(p, 0);
-        p.println(";");
+        w.visit(myExp);
+        return true;
     }
 
     // 1 kid
     private ExpNode myExp;
-    private Type writeType;
 }
 
 class IfStmtNode extends StmtNode {
@@ -1335,70 +1592,83 @@ class IfStmtNode extends StmtNode {
         myStmtList = slist;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, do:
-     * - process the condition
-     * - enter a new scope
-     * - process the decls and stmts
-     * - exit the scope
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();
-        myDeclList.nameAnalysis(symTab);
-        myStmtList.nameAnalysis(symTab);
-        try {
-            symTab.removeScope();
-        } catch (EmptySymTableException ex) {
-            System.err.println("Unexpected EmptySymTableException " +
-                               " in IfStmtNode.nameAnalysis");
-            System.exit(-1);        
-        }
-    }
-
-    public boolean typeCheck(TypeNode r){
+    public boolean checkCondition(){
 	boolean result = true;
 	Type condT = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(!(condT instanceof BoolType)){
-	    i.typeCheckError("Non-bool expression used as a if condition");
+	    ErrMsg.fatal(myExp.span(), "Non-bool expression used as a if condition");
 	    result = false;
 	}
+	return result;
+    }
+
+    public ExpNode exp() {
+        return myExp;
+    }
+
+    public DeclListNode declList() {
+        return myDeclList;
+    }
 
-	return result && myStmtList.typeCheck(r);
+    public StmtListNode stmtList() {
+        return myStmtList;
     }
     
-    public int markOffset(int start){
-	start = myDeclList.markOffset(start);
-	start = myStmtList.markOffset(start);
-	return start;
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	switch(step){
+	case 0:
+	    p.println("\t\t#IF COND");
+	    w.setObj(Codegen.nextLabel());
+	    w.visit(myExp); // evaluate myexp
+	    return true;
+	case 1:
+	    String trueLab = (String)w.obj();
+	    // pop out 
+	    // p.println("\t\t#IF STMT");
+	    Codegen.p = p;
+	    Codegen.genPop("$t0");
+	    Codegen.generate("beq", "$t0", "0", trueLab);
+	    // myDeclList.codeGen(p);
+	    w.visit(myStmtList, 0, trueLab);
+	    return true;
+	default:
+	    Codegen.genLabel((String)w.obj(), "if(alone) is ended");
+	    return false;
+	}
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#IF COND");
-	String trueLab = Codegen.nextLabel();
-	myExp.codeGen(p); // evaluate myexp
-	// pop out 
-	// p.println("\t\t#IF STMT");
-	Codegen.p = p;
-	Codegen.genPop("$t0");
-	Codegen.generate("beq", "$t0", "0", trueLab);
-	// myDeclList.codeGen(p);
-	myStmtList.codeGen(p, trueLab);
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
 
-	Codegen.genLabel(trueLab, "if(alone) is ended");	
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+        myDeclList.accept(v);
+        myStmtList.accept(v);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("if (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myDeclList.unparse(p, indent+4);
-        myStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.IF_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        int indent = w.arg();
+        switch (step) {
+        case 0:
+            doIndent(p, indent);
+            p.print("if (");
+            w.visit(myExp);
+            return true;
+        case 1:
+            p.println(") {");
+            w.visit(myDeclList, indent+4, null);
+            w.visit(myStmtList, indent+4, null);
+            return true;
+        default:
+            doIndent(p, indent);
+            p.println("}");
+            return false;
+        }
     }
 
     // e kids
@@ -1418,95 +1688,110 @@ class IfElseStmtNode extends StmtNode {
         myElseStmtList = slist2;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, do:
-     * - process the condition
-     * - enter a new scope
-     * - process the decls and stmts of then
-     * - exit the scope
-     * - enter a new scope
-     * - process the decls and stmts of else
-     * - exit the scope
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();
-        myThenDeclList.nameAnalysis(symTab);
-        myThenStmtList.nameAnalysis(symTab);
-        try {
-            symTab.removeScope();
-        } catch (EmptySymTableException ex) {
-            System.err.println("Unexpected EmptySymTableException " +
-                               " in IfStmtNode.nameAnalysis");
-            System.exit(-1);        
-        }
-        symTab.addScope();
-        myElseDeclList.nameAnalysis(symTab);
-        myElseStmtList.nameAnalysis(symTab);
-        try {
-            symTab.removeScope();
-        } catch (EmptySymTableException ex) {
-            System.err.println("Unexpected EmptySymTableException " +
-                               " in IfStmtNode.nameAnalysis");
-            System.exit(-1);        
-        }
-    }
-    
-    public boolean typeCheck(TypeNode r){
+    public boolean checkCondition(){
 	boolean result = true;
 	Type condT = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(!(condT instanceof BoolType)){
-	   i.typeCheckError("Non-bool expression used as a if condition");
+	   ErrMsg.fatal(myExp.span(), "Non-bool expression used as a if condition");
 	    result = false;
 	}
-	result = result && myThenStmtList.typeCheck(r);
-	return result && myElseStmtList.typeCheck(r);
+	return result;
     }
 
-    public int markOffset(int start){
-	start = myThenDeclList.markOffset(start);
-	start = myThenStmtList.markOffset(start);
-	start = myElseDeclList.markOffset(start);
-	start = myElseStmtList.markOffset(start);
-	return start;
+    public ExpNode exp() {
+        return myExp;
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t# IF-ELSE COND");
-	String trueLab = Codegen.nextLabel();
-	String doneLab = Codegen.nextLabel();
-	myExp.codeGen(p);
+    public DeclListNode thenDeclList() {
+        return myThenDeclList;
+    }
 
-	Codegen.p = p;
-	Codegen.genPop("$t0");
-	Codegen.generate("beq", "$t0", "0", trueLab);
-	// myThenDeclList.codeGen(p);
-	myThenStmtList.codeGen(p, trueLab);
-	Codegen.generate("b",doneLab);
-	Codegen.genLabel(trueLab);
-	// myElseDeclList.codeGen(p);
-	myElseStmtList.codeGen(p, trueLab);
-	Codegen.genLabel(doneLab);
+    public StmtListNode thenStmtList() {
+        return myThenStmtList;
+    }
 
+    public DeclListNode elseDeclList() {
+        return myElseDeclList;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("if (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myThenDeclList.unparse(p, indent+4);
-        myThenStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
-        doIndent(p, indent);
-        p.println("else {");
-        myElseDeclList.unparse(p, indent+4);
-        myElseStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");        
+    public StmtListNode elseStmtList() {
+        return myElseStmtList;
+    }
+
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t# IF-ELSE COND");
+	    String trueLab = Codegen.nextLabel();
+	    String doneLab = Codegen.nextLabel();
+	    w.setObj(new String[] { trueLab, doneLab });
+	    w.visit(myExp);
+	    return true;
+	}
+	String[] labs = (String[])w.obj();
+	String trueLab = labs[0];
+	String doneLab = labs[1];
+	switch(step){
+	case 1:
+	    Codegen.p = p;
+	    Codegen.genPop("$t0");
+	    Codegen.generate("beq", "$t0", "0", trueLab);
+	    // myThenDeclList.codeGen(p);
+	    w.visit(myThenStmtList, 0, trueLab);
+	    return true;
+	case 2:
+	    Codegen.generate("b",doneLab);
+	    Codegen.genLabel(trueLab);
+	    // myElseDeclList.codeGen(p);
+	    w.visit(myElseStmtList, 0, trueLab);
+	    return true;
+	default:
+	    Codegen.genLabel(doneLab);
+	    return false;
+	}
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+        myThenDeclList.accept(v);
+        myThenStmtList.accept(v);
+        myElseDeclList.accept(v);
+        myElseStmtList.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.IF_ELSE_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        int indent = w.arg();
+        switch (step) {
+        case 0:
+            doIndent(p, indent);
+            p.print("if (");
+            w.visit(myExp);
+            return true;
+        case 1:
+            p.println(") {");
+            w.visit(myThenDeclList, indent+4, null);
+            w.visit(myThenStmtList, indent+4, null);
+            return true;
+        case 2:
+            doIndent(p, indent);
+            p.println("}");
+            doIndent(p, indent);
+            p.println("else {");
+            w.visit(myElseDeclList, indent+4, null);
+            w.visit(myElseStmtList, indent+4, null);
+            return true;
+        default:
+            doIndent(p, indent);
+            p.println("}");        
+            return false;
+        }
     }
 
     // 5 kids
@@ -1524,70 +1809,88 @@ class WhileStmtNode extends StmtNode {
         myStmtList = slist;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, do:
-     * - process the condition
-     * - enter a new scope
-     * - process the decls and stmts
-     * - exit the scope
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
-        symTab.addScope();
-        myDeclList.nameAnalysis(symTab);
-        myStmtList.nameAnalysis(symTab);
-        try {
-            symTab.removeScope();
-        } catch (EmptySymTableException ex) {
-            System.err.println("Unexpected EmptySymTableException " +
-                               " in IfStmtNode.nameAnalysis");
-            System.exit(-1);        
-        }
-    }
-    
-    public boolean typeCheck(TypeNode r){
+    public boolean checkCondition(){
 	boolean result = true;
 	Type condT = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(!(condT instanceof BoolType)){
-	    i.typeCheckError("Non-bool expression used as a while condition");
+	    ErrMsg.fatal(myExp.span(), "Non-bool expression used as a while condition");
 	    result = false;
 	}
-	return result && myStmtList.typeCheck(r);
+	return result;
     }
 
-    public int markOffset(int start){
-	start = myDeclList.markOffset(start);
-	start = myStmtList.markOffset(start);
-	return start;
+    public ExpNode exp() {
+        return myExp;
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#WHILE COND");
-	String trueLab = Codegen.nextLabel();
-	String doneLab = Codegen.nextLabel();
-	Codegen.p = p;
-	Codegen.genLabel(doneLab);
-	myExp.codeGen(p);
-	// get the final result and evaluate it
-	Codegen.genPop("$t0");
-	Codegen.generate("beq", "$t0", "0", trueLab);
-	// myDeclList.codeGen(p);
-	myStmtList.codeGen(p, trueLab);
+    public DeclListNode declList() {
+        return myDeclList;
+    }
+
+    public StmtListNode stmtList() {
+        return myStmtList;
+    }
+
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t#WHILE COND");
+	    String trueLab = Codegen.nextLabel();
+	    String doneLab = Codegen.nextLabel();
+	    Codegen.p = p;
+	    Codegen.genLabel(doneLab);
+	    w.setObj(new String[] { trueLab, doneLab });
+	    w.visit(myExp);
+	    return true;
+	}
+	String[] labs = (String[])w.obj();
+	String trueLab = labs[0];
+	String doneLab = labs[1];
+	if(step == 1){
+	    // get the final result and evaluate it
+	    Codegen.p = p;
+	    Codegen.genPop("$t0");
+	    Codegen.generate("beq", "$t0", "0", trueLab);
+	    // myDeclList.codeGen(p);
+	    w.visit(myStmtList, 0, trueLab);
+	    return true;
+	}
 	Codegen.generate("b", doneLab);
 	Codegen.genLabel(trueLab);
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("while (");
-        myExp.unparse(p, 0);
-        p.println(") {");
-        myDeclList.unparse(p, indent+4);
-        myStmtList.unparse(p, indent+4);
-        doIndent(p, indent);
-        p.println("}");
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
+        myDeclList.accept(v);
+        myStmtList.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.WHILE_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        int indent = w.arg();
+        switch (step) {
+        case 0:
+            doIndent(p, indent);
+            p.print("while (");
+            w.visit(myExp);
+            return true;
+        case 1:
+            p.println(") {");
+            w.visit(myDeclList, indent+4, null);
+            w.visit(myStmtList, indent+4, null);
+            return true;
+        default:
+            doIndent(p, indent);
+            p.println("}");
+            return false;
+        }
     }
 
     // 3 kids
@@ -1601,17 +1904,8 @@ class CallStmtNode extends StmtNode {
         myCall = call;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myCall.nameAnalysis(symTab);
-    }
-
     public boolean typeCheck(TypeNode r){
 	Type t = myCall.typeCheck();
-	IdNode i = myCall.getExpFirstIdNode();
 	if(t instanceof ErrorType){
 	    return false;
 	}else{
@@ -1619,14 +1913,31 @@ class CallStmtNode extends StmtNode {
 	}
     }
 
-    public void codeGen(PrintWriter p){
-	myCall.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	w.visit(myCall);
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        myCall.unparse(p, indent);
-        p.println(";");
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myCall.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.CALL_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.println(";");
+            return false;
+        }
+        doIndent(p, w.arg());
+        w.visit(myCall, w.arg(), null);
+        return true;
     }
 
     // 1 kid
@@ -1638,17 +1949,6 @@ class ReturnStmtNode extends StmtNode {
         myExp = exp;
     }
     
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child,
-     * if it has one
-     */
-    public void nameAnalysis(SymTable symTab) {
-        if (myExp != null) {
-            myExp.nameAnalysis(symTab);
-        }
-    }
-
     public boolean typeCheck(TypeNode rTypeNode){
 	Type rType = rTypeNode.type();
 	if(myExp == null){
@@ -1659,18 +1959,17 @@ class ReturnStmtNode extends StmtNode {
 	    return true;
 	}else{
 	    Type t = myExp.typeCheck();
-	    IdNode i = myExp.getExpFirstIdNode();
 	    if(rType instanceof VoidType){
-		i.typeCheckError("Return with a value in a void function");
+		ErrMsg.fatal(myExp.span(), "Return with a value in a void function");
 		return false;
 	    }else{
 		if(t instanceof ErrorType){
 		    return false;
 		}else{
-		    if(t.toString().equals(rType.toString()))
+		    if(t == rType)
 			return true;
 		    else{
-			i.typeCheckError("Bad return value");
+			ErrMsg.fatal(myExp.span(), "Bad return value");
 			return false;
 		    }
 		}
@@ -1678,25 +1977,49 @@ class ReturnStmtNode extends StmtNode {
 	}
     }
 
-    public void codeGen(PrintWriter p, String exitLab){
-	p.println("\t\t#RETURN");
-	if(myExp != null){
-	    myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	// w.obj() is the exit label of the function
+	if(step == 0){
+	    p.println("\t\t#RETURN");
+	    if(myExp != null){
+		w.visit(myExp);
+		return true;
+	    }
+	}else{
 	    Codegen.p = p;
 	    Codegen.genPop("$v0");
 	}
 
-	Codegen.generate("b", exitLab);
+	Codegen.generate("b", (String)w.obj());
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        doIndent(p, indent);
-        p.print("return");
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
         if (myExp != null) {
-            p.print(" ");
-            myExp.unparse(p, 0);
+            myExp.accept(v);
+        }
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.RETURN_STMT, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 0) {
+            doIndent(p, w.arg());
+            p.print("return");
+            if (myExp != null) {
+                p.print(" ");
+                w.visit(myExp);
+                return true;
+            }
         }
         p.println(";");
+        return false;
     }
 
     // 1 kid
@@ -1709,70 +2032,163 @@ class ReturnStmtNode extends StmtNode {
 
 abstract class ExpNode extends ASTnode {
     /**
-     * Default version for nodes with no names
+     * nameAnalysis
+     * Given a symbol table symTab, link the names in this expression to
+     * their symbols.
+     */
+    public final void nameAnalysis(final SymTable symTab) {
+        new Walk() {
+            protected boolean step(ASTnode node, int step) {
+                return ((ExpNode)node).nameAnalysis(symTab, this, step);
+            }
+        }.walk(this);
+    }
+
+    /**
+     * nameAnalysis
+     * Step step of the name analysis of this node (see Walk).  This
+     * version, for nodes that link no names themselves, forgets the type
+     * and has the children analyzed.
+     */
+    protected boolean nameAnalysis(SymTable symTab, Walk w, int step) {
+        forgetType();
+        w.visitChildren(this);
+        return false;
+    }
+
+    /**
+     * typeCheck
+     * Return the type of this expression.  The first call checks it
+     * (with computeType, which reports its errors); later ones return
+     * the type found then, which codegen also reads (getType).
+     */
+    public final Type typeCheck() {
+        if (myType == null) {
+            new Walk() {
+                protected boolean step(ASTnode node, int step) {
+                    ExpNode exp = (ExpNode)node;
+                    if (exp.myType != null) {
+                        return false;
+                    }
+                    exp.myType = exp.computeType(this, step);
+                    return exp.myType == null;
+                }
+            }.walk(this);
+        }
+        return myType;
+    }
+
+    /**
+     * computeType
+     * Step step of checking this node (see Walk): return its type, or
+     * null to have the operands it visits checked first.  This version
+     * has the children checked, in source order, and then calls
+     * computeType(), which finds their types known.
+     */
+    protected Type computeType(Walk w, int step) {
+        if (step == 0) {
+            w.visitChildren(this);
+            return null;
+        }
+        return computeType();
+    }
+
+    /**
+     * computeType
+     * Check this expression, typeCheck-ing its operands, and return its
+     * type (ErrorType if it is wrong).
+     */
+    abstract protected Type computeType();
+
+    /**
+     * Return the type found by typeCheck, or null if it has not been
+     * called since the last name analysis.
+     */
+    public Type getType() {
+        return myType;
+    }
+
+    /**
+     * Forget the type found by typeCheck.  Every nameAnalysis that links
+     * names does this: the AST of a declaration can be analyzed again
+     * (see IncrementalParser), and its names linked to other symbols.
+     */
+    protected void forgetType() {
+        myType = null;
+    }
+
+    /**
+     * span
+     * Where the expression is reported to be (see Span): the position of
+     * its first operand, or for a call or a dot-access, of the name after
+     * the dot or of the function.
      */
-    public void nameAnalysis(SymTable symTab) { }
-    abstract public Type typeCheck();
-    abstract public IdNode getExpFirstIdNode();
+    abstract public long span();
+
+    private Type myType;  // null until typeCheck is called
 }
 
 class IntLitNode extends ExpNode {
     public IntLitNode(int lineNum, int charNum, int intVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+        mySpan = Span.of(lineNum, charNum);
         myIntVal = intVal;
     }
 
-    public IdNode getExpFirstIdNode(){
-	IdNode i = new IdNode(myLineNum, myCharNum, "int");
-	SemSym s = new SemSym(new IntType());
-	i.link(s);
-	return i;
+    public long span() {
+        return mySpan;
     }
 
-    public Type typeCheck(){
-	return new IntType();
+    protected Type computeType(){
+	return Type.INT;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	Codegen.p = p;
 	Codegen.generate("li","$t0",Integer.toString(myIntVal));
 	Codegen.genPush("$t0");
+	return false;
+    }
 
+    protected void shiftSpan(int delta) {
+        mySpan = Span.shift(mySpan, delta);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.leaf(AstArena.INT_LIT, myIntVal, mySpan);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print(myIntVal);
+        return false;
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private long mySpan;  // see Span
     private int myIntVal;
 }
 
 class StringLitNode extends ExpNode {
     public StringLitNode(int lineNum, int charNum, String strVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+        mySpan = Span.of(lineNum, charNum);
         myStrVal = strVal;
     }
 
-    public IdNode getExpFirstIdNode(){
-	IdNode i = new IdNode(myLineNum, myCharNum, "string");
-	SemSym s = new SemSym(new StringType());
-	i.link(s);
-	return i;
+    public long span() {
+        return mySpan;
     }
 
-    public Type typeCheck(){
-	return new StringType();
+    protected Type computeType(){
+	return Type.STRING;
     }
 
     public String stringContent(){
 	return myStrVal;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	Codegen.p = p;
 	String stringLab = Codegen.nextLabel();
 	p.println("\t.data");
@@ -1781,91 +2197,120 @@ class StringLitNode extends ExpNode {
 	
 	Codegen.generate("la","$t0",stringLab);
 	Codegen.genPush("$t0");
+	return false;
+    }
+
+    protected void shiftSpan(int delta) {
+        mySpan = Span.shift(mySpan, delta);
+    }
 
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected int encode(AstArena arena, int start) {
+        return arena.leaf(AstArena.STRING_LIT, arena.string(myStrVal), mySpan);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print(myStrVal);
+        return false;
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private long mySpan;  // see Span
     private String myStrVal;
 }
 
 class TrueNode extends ExpNode {
     public TrueNode(int lineNum, int charNum) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+        mySpan = Span.of(lineNum, charNum);
     }
 
-    public IdNode getExpFirstIdNode(){
-	IdNode i = new IdNode(myLineNum, myCharNum, "true");
-	SemSym s = new SemSym(new BoolType());
-	i.link(s);
-	return i;
+    public long span() {
+        return mySpan;
     }
 
-    public Type typeCheck(){
-	return new BoolType();
+    protected Type computeType(){
+	return Type.BOOL;
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	Codegen.generate("li","$t0","1");
 	Codegen.genPush("$t0");
+	return false;
+    }
+
+    protected void shiftSpan(int delta) {
+        mySpan = Span.shift(mySpan, delta);
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.leaf(AstArena.TRUE, 0, mySpan);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("true");
+        return false;
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private long mySpan;  // see Span
 }
 
 class FalseNode extends ExpNode {
     public FalseNode(int lineNum, int charNum) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
+        mySpan = Span.of(lineNum, charNum);
+    }
+
+    public long span() {
+        return mySpan;
+    }
+
+    protected Type computeType(){
+	return Type.BOOL;
+    }
+
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	Codegen.generate("li","$t0","0");
+	Codegen.genPush("$t0");
+	return false;
     }
 
-    public IdNode getExpFirstIdNode(){
-	IdNode i = new IdNode(myLineNum, myCharNum, "false");
-	SemSym s = new SemSym(new BoolType());
-	i.link(s);
-	return i;
+    protected void shiftSpan(int delta) {
+        mySpan = Span.shift(mySpan, delta);
     }
 
-    public Type typeCheck(){
-	return new BoolType();
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void codeGen(PrintWriter p){
-	Codegen.generate("li","$t0","0");
-	Codegen.genPush("$t0");
+    protected int encode(AstArena arena, int start) {
+        return arena.leaf(AstArena.FALSE, 0, mySpan);
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
         p.print("false");
+        return false;
     }
 
-    private int myLineNum;
-    private int myCharNum;
+    private long mySpan;  // see Span
 }
 
 class IdNode extends ExpNode {
-    public IdNode(int lineNum, int charNum, String strVal) {
-        myLineNum = lineNum;
-        myCharNum = charNum;
-        myStrVal = strVal;
+    public IdNode(int lineNum, int charNum, int nameId) {
+        mySpan = Span.of(lineNum, charNum);
+        myNameId = nameId;
 
 	this.offset = 0;
     }
 
     /**
-     * Link the given symbol to this ID.
+     * Link the given symbol (its id in SymAttrs) to this ID.
      */
-    public void link(SemSym sym) {
+    public void link(int sym) {
         mySym = sym;
     }
     
@@ -1873,28 +2318,44 @@ class IdNode extends ExpNode {
      * Return the name of this ID.
      */
     public String name() {
-        return myStrVal;
+        return NamePool.SHARED.name(myNameId);
+    }
+
+    /**
+     * Return the NamePool id of the name of this ID.
+     */
+    public int nameId() {
+        return myNameId;
     }
     
     /**
-     * Return the symbol associated with this ID.
+     * Return the id of the symbol associated with this ID (SymAttrs.NONE
+     * if there is none).
      */
-    public SemSym sym() {
+    public int symId() {
         return mySym;
     }
     
+    /**
+     * Return the SemSym of the symbol associated with this ID, null if
+     * it is a plain variable (see SymAttrs.sym).
+     */
+    public SemSym sym() {
+        return SymAttrs.SHARED.sym(mySym);
+    }
+    
     /**
      * Return the line number for this ID.
      */
     public int lineNum() {
-        return myLineNum;
+        return Span.lineNum(mySpan);
     }
     
     /**
      * Return the char number for this ID.
      */
     public int charNum() {
-        return myCharNum;
+        return Span.charNum(mySpan);
     }    
     
     /**
@@ -1903,58 +2364,69 @@ class IdNode extends ExpNode {
      * - check for use of undeclared name
      * - if ok, link to symbol table entry
      */
-    public void nameAnalysis(SymTable symTab) {
-        SemSym sym = symTab.lookupGlobal(myStrVal);
-        if (sym == null) {
-            ErrMsg.fatal(myLineNum, myCharNum, "Undeclared identifier");
+    protected boolean nameAnalysis(SymTable symTab, Walk w, int step) {
+        forgetType();
+        int sym = symTab.lookupGlobal(myNameId);
+        if (sym == SymAttrs.NONE) {
+            ErrMsg.fatal(mySpan, "Undeclared identifier");
         } else {
             link(sym);
         }
+        return false;
     }
     
-    public IdNode getExpFirstIdNode(){
-	return this;
-    }
-
-    public void typeCheckError(String msg){
-	ErrMsg.fatal(myLineNum, myCharNum, msg);
+    public long span() {
+        return mySpan;
     }
 
-    public Type typeCheck(){
-	return mySym.getType();
+    protected Type computeType(){
+	return SymAttrs.SHARED.type(mySym);
     }
 
     public void genJumpAndLink(){
 
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	Codegen.p = p;
-	if(mySym.isGlobal){
+	if(SymAttrs.SHARED.isGlobal(mySym)){
 	// global: use _name
-	    Codegen.generateWithComment("lw", "load global var", "$t0", "_"+ myStrVal) ;
+	    Codegen.generateWithComment("lw", "load global var", "$t0", "_"+ name()) ;
 	}else{
 	// local: use -offset($fp)
-	    Codegen.generateIndexed("lw", "$t0", "$fp", mySym.offset, "load local var");
+	    Codegen.generateIndexed("lw", "$t0", "$fp", SymAttrs.SHARED.offset(mySym), "load local var");
 	}
 	    Codegen.genPush("$t0");
+	return false;
     }
 
     public void genAddr(){
 
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print(myStrVal);
-        if (mySym != null) {
-            p.print("(" + mySym + ")");
+    protected void shiftSpan(int delta) {
+        mySpan = Span.shift(mySpan, delta);
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.leaf(AstArena.ID, myNameId, mySpan);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        p.print(name());
+        if (mySym != SymAttrs.NONE) {
+            p.print("(" + SymAttrs.SHARED.describe(mySym) + ")");
         }
+        return false;
     }
 
-    private int myLineNum;
-    private int myCharNum;
-    private String myStrVal;
-    private SemSym mySym;
+    private long mySpan;  // see Span
+    private int myNameId;
+    private int mySym = SymAttrs.NONE;  // see SymAttrs
 
     public int offset; // for code gen
 }
@@ -1964,9 +2436,7 @@ class DotAccessExpNode extends ExpNode {
         myLoc = loc;    
         myId = id;
         mySym = null;
-
-	this.dotLeftOffset = 0;
-	this.dotRightOffset = 0;
+        myPath = null;
     }
 
     /**
@@ -2000,31 +2470,38 @@ class DotAccessExpNode extends ExpNode {
      * - if the RHS is of a struct type, set the sym for this node so that
      *   a dot-access "higher up" in the AST can get access to the symbol
      *   table for the appropriate struct definition
+     * - resolve the whole dot-access chain to a FieldPath
      */
-    public void nameAnalysis(SymTable symTab) {
-        badAccess = false;
+    protected boolean nameAnalysis(SymTable symTab, Walk w, int step) {
+        if (step == 0) {
+            forgetType();
+            badAccess = false;
+            myPath = null;
+            myOffsetKnown = false;
+            w.visit(myLoc);  // do name analysis on LHS
+            return true;
+        }
         SymTable structSymTab = null; // to lookup RHS of dot-access
+        StructDefSym structDef = null; // the struct it is in
         SemSym sym = null;
+        int field;
 
-        myLoc.nameAnalysis(symTab);  // do name analysis on LHS
-        
         // if myLoc is really an ID, then sym will be a link to the ID's symbol
         if (myLoc instanceof IdNode) {
             IdNode id = (IdNode)myLoc;
             sym = id.sym();
             // check ID has been declared to be of a struct type
 
-            if (sym == null) { // ID was undeclared
+            if (id.symId() == SymAttrs.NONE) { // ID was undeclared
                 badAccess = true;
             }
             else if (sym instanceof StructSym) { 
                 // get symbol table for struct type
                 SemSym tempSym = ((StructSym)sym).getStructType().sym();
-                structSymTab = ((StructDefSym)tempSym).getSymTable();
-		// this.dotLeftOffset = sym.offset;
-		// echo("accessing: " + id.name() + " offset: " + this.dotLeftOffset);
+                structDef = (StructDefSym)tempSym;
+                structSymTab = structDef.getSymTable();
 
-		id.link(sym); 
+		id.link(sym.id()); 
             } 
             else {  // LHS is not a struct type
                 ErrMsg.fatal(id.lineNum(), id.charNum(), 
@@ -2053,10 +2530,8 @@ class DotAccessExpNode extends ExpNode {
                 }
                 else {  // get the struct's symbol table in which to lookup RHS
                     if (sym instanceof StructDefSym) {
-                        structSymTab = ((StructDefSym)sym).getSymTable();
-
-			// this.dotLeftOffset = loc.dotRightOffset;
-
+                        structDef = (StructDefSym)sym;
+                        structSymTab = structDef.getSymTable();
                     }
                     else {
                         System.err.println("Unexpected Sym type in DotAccessExpNode");
@@ -2074,72 +2549,103 @@ class DotAccessExpNode extends ExpNode {
         
         // do name analysis on RHS of dot-access in the struct's symbol table
         if (!badAccess) {
-            sym = structSymTab.lookupGlobal(myId.name()); // lookup
-            if (sym == null) { // not found - RHS is not a valid field name
+            field = structSymTab.lookupGlobal(myId.nameId()); // lookup
+            if (field == SymAttrs.NONE) { // not found - RHS is not a valid field name
                 ErrMsg.fatal(myId.lineNum(), myId.charNum(), 
                              "Invalid struct field name");
                 badAccess = true;
             }
             
             else {
-		// this.dotRightOffset = this.dotLeftOffset + sym.structOffset;
-
-		// echo("accessing: " + myId.name() + " -offset " + this.dotRightOffset);
-                myId.link(sym);  // link the symbol
-		// myId.offset = sym.offset;
+                myId.link(field);  // link the symbol
+                structDef.getLayout().noteAccess(field);
+                if (myLoc instanceof IdNode) {
+                    myPath = new FieldPath(((IdNode)myLoc).symId(), field);
+                }
+                else {
+                    myPath = ((DotAccessExpNode)myLoc).myPath.extend(field);
+                }
                 // if RHS is itself as struct type, link the symbol for its struct 
                 // type to this dot-access node (to allow chained dot-access)
 
+                sym = SymAttrs.SHARED.sym(field);
                 if (sym instanceof StructSym) {
                     mySym = ((StructSym)sym).getStructType().sym();
                 }
             }
         }
-
+        return false;
     }    
 
-    public IdNode getExpFirstIdNode(){
-	return myId;
-	// if(myLoc instanceof DotAccessExpNode)
-	//     return ((DotAccessExpNode)myLoc).getExpFirstIdNode();
-	// else // my loC is also an IdNode
-	//     return (IdNode)myLoc;
+    /**
+     * The span of a dot-access is that of its RHS (as for lineNum).
+     */
+    public long span() {
+        return myId.span();
     }
     
-    public Type typeCheck(){
-	return myId.sym().getType();
+    /**
+     * The type of a dot-access is that of its field; the LHS is not
+     * checked.
+     */
+    protected Type computeType(Walk w, int step){
+	return computeType();
     }
 
-    public int unrollDot(){
-	if(myLoc instanceof IdNode){
-	    return ((IdNode)myLoc).sym().offset + ((IdNode)myId).sym().structOffset;
-	}else if(myLoc instanceof DotAccessExpNode){
-	    DotAccessExpNode DA = (DotAccessExpNode)myLoc;
-	    // return DA.unrollDot() + DA.getExpFirstIdNode().sym().structOffset;
-	    return DA.unrollDot() + ((IdNode)myId).sym().structOffset;
-	}else{
-	    // error
-	    echo("error in unrolling dot");
-	    return -1;
-	}
+    protected Type computeType(){
+	return SymAttrs.SHARED.type(myId.symId());
     }
 
+    /**
+     * Return the FieldPath name analysis resolved this dot-access to (null
+     * if it was a bad access).
+     */
+    public FieldPath path() {
+        return myPath;
+    }
 
-    public void codeGen(PrintWriter p){
-	// echo("codegen in dot: " + myId.name() + ": " +myId.offset);
-	// need access again..
-	this.dotRightOffset = unrollDot();
+    /**
+     * frameOffset
+     * Return the offset from the fp of the field this dot-access names.
+     * It is folded from the path the first time it is asked for, in code
+     * generation, when the frame and struct layouts are final.
+     */
+    public int frameOffset(){
+	if(!myOffsetKnown){
+	    myOffset = myPath.offset();
+	    myOffsetKnown = true;
+	}
+	return myOffset;
+    }
 
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
 	Codegen.p = p;
-	Codegen.generateIndexed("lw", "$t0", "$fp", this.dotRightOffset, "load struct field: " + myId.name());
+	Codegen.generateIndexed("lw", "$t0", "$fp", frameOffset(), "load struct field: " + myId.name());
 	Codegen.genPush("$t0");
+	return false;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        myLoc.unparse(p, 0);
+    public void visitChildren(ASTVisitor v) {
+        myLoc.accept(v);
+        myId.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.DOT_ACCESS, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 0) {
+            w.visit(myLoc);
+            return true;
+        }
         p.print(".");
-	myId.sym().offset = dotRightOffset;
         myId.unparse(p, 0);
+        return false;
     }
 
     // 2 kids
@@ -2147,10 +2653,11 @@ class DotAccessExpNode extends ExpNode {
     private IdNode myId;
     private SemSym mySym;          // link to Sym for struct type
     private boolean badAccess;  // to prevent multiple, cascading errors
+    private FieldPath myPath;   // see FieldPath
 
-    public int dotLeftOffset;
-    public int dotRightOffset;
-    
+    // the offset folded from myPath (see frameOffset)
+    private int myOffset;
+    private boolean myOffsetKnown;
 }
 
 class AssignNode extends ExpNode {
@@ -2159,88 +2666,101 @@ class AssignNode extends ExpNode {
         myExp = exp;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's 
-     * two children
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myLhs.nameAnalysis(symTab);
-        myExp.nameAnalysis(symTab);
-    }
-
-    public IdNode getExpFirstIdNode(){
-	return myLhs.getExpFirstIdNode();
+    public long span() {
+        return myLhs.span();
     }
     
-    public Type typeCheck(){
+    protected Type computeType(){
 	Type lType = myLhs.typeCheck();
 	Type rType = myExp.typeCheck();
 	// function, struct name, struct variable check
-	IdNode i = myLhs.getExpFirstIdNode();
 	// echo("Check Assign: lType: " + lType + " rType: " + rType);
 
 	if(lType instanceof FnType && rType instanceof FnType){
-	    i.typeCheckError("Function assignment");
-	    return new ErrorType();
+	    ErrMsg.fatal(myLhs.span(), "Function assignment");
+	    return Type.ERROR;
 	}
 	
 	if(lType instanceof StructDefType && rType instanceof StructDefType){
-	    i.typeCheckError("Struct name assignment");
-	    return new ErrorType();
+	    ErrMsg.fatal(myLhs.span(), "Struct name assignment");
+	    return Type.ERROR;
 	}
 	
 	if(lType instanceof StructType && rType instanceof StructType){
-	    i.typeCheckError("Struct variable assignment");
-	    return new ErrorType();
+	    ErrMsg.fatal(myLhs.span(), "Struct variable assignment");
+	    return Type.ERROR;
 	}
 	
 	if(lType instanceof ErrorType || rType instanceof ErrorType){
-	    return new ErrorType();
+	    return Type.ERROR;
 	}else{
-	    String lTypeName = lType.toString();
-	    String rTypeName = rType.toString();
-	    if(lTypeName.equals(rTypeName))
+	    if(lType == rType)
 		return lType;
 	    else{
-		i.typeCheckError("Type mismatch");
-		return new ErrorType();
+		ErrMsg.fatal(myLhs.span(), "Type mismatch");
+		return Type.ERROR;
 	    }
 	}
 
     }
 
-    public void codeGen(PrintWriter p){
-	myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp);
+	    return true;
+	}
 	Codegen.p = p;
 	Codegen.generateIndexed("lw", "$t0", "$sp", 4, "peek");
 
 	if(myLhs instanceof IdNode){
 	    // assign to IdNode
-	    SemSym s = ((IdNode)myLhs).sym();
-	    if(s.isGlobal){
+	    int s = ((IdNode)myLhs).symId();
+	    if(SymAttrs.SHARED.isGlobal(s)){
 		Codegen.generate("sw", "$t0", "_"+((IdNode)myLhs).name());
 	    }else{
-		Codegen.generateIndexed("sw", "$t0", "$fp", ((IdNode)myLhs).sym().offset);
+		Codegen.generateIndexed("sw", "$t0", "$fp", SymAttrs.SHARED.offset(s));
 	    }
 
 	}else if(myLhs instanceof DotAccessExpNode){
 	    // assign to struct access
-	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myLhs).unrollDot());
+	    Codegen.generateIndexed("sw", "$t0", "$fp", ((DotAccessExpNode)myLhs).frameOffset());
 	    
 	}else{
 	    ErrMsg.fatal(0,0,"Unexpected error in codeGen of IDNode");
 	}
 	// pop
 	Codegen.genPop("$t0");
+	return false;
+    }
+
+    public void accept(ASTVisitor v) {
+        v.visit(this);
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        if (indent != -1)  p.print("(");
-        myLhs.unparse(p, 0);
-        p.print(" = ");
-        myExp.unparse(p, 0);
-        if (indent != -1)  p.print(")");
+    public void visitChildren(ASTVisitor v) {
+        myLhs.accept(v);
+        myExp.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.ASSIGN, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        int indent = w.arg();
+        switch (step) {
+        case 0:
+            if (indent != -1)  p.print("(");
+            w.visit(myLhs);
+            return true;
+        case 1:
+            p.print(" = ");
+            w.visit(myExp);
+            return true;
+        default:
+            if (indent != -1)  p.print(")");
+            return false;
+        }
     }
 
     // 2 kids
@@ -2262,79 +2782,121 @@ class CallExpNode extends ExpNode {
     /**
      * nameAnalysis
      * Given a symbol table symTab, perform name analysis on this node's 
-     * two children
+     * two children (the function and each actual)
      */
-    public void nameAnalysis(SymTable symTab) {
-        myId.nameAnalysis(symTab);
-        myExpList.nameAnalysis(symTab);
+    protected boolean nameAnalysis(SymTable symTab, Walk w, int step) {
+        forgetType();
+        w.visit(myId);
+        for (ExpNode actual : myExpList.getCallExpList()) {
+            w.visit(actual);
+        }
+        return false;
     }    
 
-    public IdNode getExpFirstIdNode(){
-	return myId;
+    public long span() {
+        return myId.span();
     }
     
-    public Type typeCheck(){
+    /**
+     * computeType
+     * The actuals are checked one a step, each against its formal in the
+     * step after, so that the errors come in the order of the actuals.
+     */
+    protected Type computeType(Walk w, int step){
 	// search symTable to get FnSym
 	// compare myExplist see if the calling arguments number and type are correct
-	Type fnType = myId.sym().getType();
-	boolean result = true;
-	if(!(fnType instanceof FnType)){
-	    myId.typeCheckError("Attempt to call a non-function");
-	    result = false;
-	}else{ // it is a function call
+	Type fnType = SymAttrs.SHARED.type(myId.symId());
+	// the types of the formals, the actuals still to check and the
+	// actual checked in the last step
+	Object[] check;
+	if(step == 0){
+	    if(!(fnType instanceof FnType)){
+		ErrMsg.fatal(myId.span(), "Attempt to call a non-function");
+		return computeType();
+	    }
+	    // it is a function call
 	    FnSym fs = (FnSym)myId.sym();
 	    List<Type> declFormal = fs.getParamTypes();
 	    List<ExpNode> callFormal = myExpList.getCallExpList();
 	    if(declFormal.size() != callFormal.size()){
-		myId.typeCheckError("Function call with wrong number of args");
-		result = false;
-	    }else{ // check each type 
-		int s = declFormal.size();
-		for(int i = 0; i < s; i++){
-		    Type callType = callFormal.get(i).typeCheck();
-		    Type declType = declFormal.get(i);
-
-		    String callTypeName = callType.toString();
-		    String declTypeName = declType.toString();
-		    if(!(callTypeName.equals(declTypeName))){
-			IdNode fId = callFormal.get(i).getExpFirstIdNode();
-			fId.typeCheckError("Type of actual does not match type of formal");
-			result = false;
-		    }
-		}
+		ErrMsg.fatal(myId.span(), "Function call with wrong number of args");
+		return computeType();
+	    }
+	    // check each type (the lists can be linked lists)
+	    check = new Object[] { declFormal.iterator(), callFormal.iterator(), null };
+	    w.setObj(check);
+	}else{
+	    check = (Object[])w.obj();
+	    ExpNode actual = (ExpNode)check[2];
+	    Type callType = actual.typeCheck();
+	    Type declType = (Type)((Iterator<?>)check[0]).next();
+
+	    if(callType != declType){
+		ErrMsg.fatal(actual.span(), "Type of actual does not match type of formal");
 	    }
 	}
+	Iterator<?> actuals = (Iterator<?>)check[1];
+	if(actuals.hasNext()){
+	    check[2] = actuals.next();
+	    w.visit((ExpNode)check[2]);
+	    return null;
+	}
+	return computeType();
+    }
 
+    /**
+     * computeType
+     * The type of the call once its actuals have been checked.
+     */
+    protected Type computeType(){
+	Type fnType = SymAttrs.SHARED.type(myId.symId());
 	if(fnType instanceof FnType)
 	    return ((FnSym)(myId.sym())).getReturnType();
 	else
-	    return new ErrorType();
-	// if(result == true){
-	//     return ((FnSym)(myId.sym())).getReturnType();
-	// }else{
-	//     return new ErrorType();
-	// }
-
+	    return Type.ERROR;
     }
 
-    public void codeGen(PrintWriter p){
-	p.println("\t\t#CALL");
-	myExpList.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    p.println("\t\t#CALL");
+	    w.visit(myExpList);
+	    return true;
+	}
 	// then jump
 	Codegen.p = p;
 	Codegen.generate("jal","_"+myId.name());
 	// push the result for other use
 	Codegen.genPush("$v0");
+	return false;
     }
 
     // ** unparse **
-    public void unparse(PrintWriter p, int indent) {
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    public void visitChildren(ASTVisitor v) {
+        myId.accept(v);
+        if (myExpList != null) {
+            myExpList.accept(v);
+        }
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(AstArena.CALL_EXP, 0, start);
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.print(")");
+            return false;
+        }
         myId.unparse(p, 0);
         p.print("(");
         if (myExpList != null) {
-            myExpList.unparse(p, 0);
+            w.visit(myExpList);
         }
-        p.print(")");
+        return true;
     }
 
     // 2 kids
@@ -2347,18 +2909,24 @@ abstract class UnaryExpNode extends ExpNode {
         myExp = exp;
     }
 
-    /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's child
-     */
-    public void nameAnalysis(SymTable symTab) {
-        myExp.nameAnalysis(symTab);
+    public long span() {
+        return myExp.span();
+    }
+    
+    public void visitChildren(ASTVisitor v) {
+        myExp.accept(v);
     }
 
-    public IdNode getExpFirstIdNode(){
-	return myExp.getExpFirstIdNode();
+    protected int encode(AstArena arena, int start) {
+        return arena.node(arenaKind(), 0, start);
     }
-    
+
+    /**
+     * arenaKind
+     * The AstArena kind of this operator's nodes.
+     */
+    protected abstract byte arenaKind();
+
     // one child
     protected ExpNode myExp;
 }
@@ -2369,19 +2937,51 @@ abstract class BinaryExpNode extends ExpNode {
         myExp2 = exp2;
     }
 
+    public long span() {
+        // down the left without recursing: a chain of - can be long
+        ExpNode exp = myExp1;
+        while (exp instanceof BinaryExpNode) {
+            exp = ((BinaryExpNode)exp).myExp1;
+        }
+        return exp.span();
+    }    
+
+    public void visitChildren(ASTVisitor v) {
+        myExp1.accept(v);
+        myExp2.accept(v);
+    }
+
+    protected int encode(AstArena arena, int start) {
+        return arena.node(arenaKind(), 0, start);
+    }
+
     /**
-     * nameAnalysis
-     * Given a symbol table symTab, perform name analysis on this node's 
-     * two children
+     * arenaKind
+     * The AstArena kind of this operator's nodes.
      */
-    public void nameAnalysis(SymTable symTab) {
-        myExp1.nameAnalysis(symTab);
-        myExp2.nameAnalysis(symTab);
+    protected abstract byte arenaKind();
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        switch (step) {
+        case 0:
+            p.print("(");
+            w.visit(myExp1);
+            return true;
+        case 1:
+            p.print(" " + operator() + " ");
+            w.visit(myExp2);
+            return true;
+        default:
+            p.print(")");
+            return false;
+        }
     }
 
-    public IdNode getExpFirstIdNode(){
-	return myExp1.getExpFirstIdNode();
-    }    
+    /**
+     * operator
+     * This operator as it is written.
+     */
+    protected abstract String operator();
 
     protected Type checkArithmetic(ExpNode lExp, ExpNode rExp){
 	Type lType = lExp.typeCheck();
@@ -2391,8 +2991,7 @@ abstract class BinaryExpNode extends ExpNode {
 
 	if(!(lType instanceof ErrorType)){
 	    if(!(lType instanceof IntType)){
-		IdNode i = lExp.getExpFirstIdNode();
-		i.typeCheckError("Arithmetic operator applied to non-numeric operand");
+		ErrMsg.fatal(lExp.span(), "Arithmetic operator applied to non-numeric operand");
 		result = false;
 	    }
 	}else{
@@ -2401,17 +3000,16 @@ abstract class BinaryExpNode extends ExpNode {
 
 	if(!(rType instanceof ErrorType)){
 	    if(!(rType instanceof IntType)){
-		IdNode i = rExp.getExpFirstIdNode();
-		i.typeCheckError("Arithmetic operator applied to non-numeric operand");
+		ErrMsg.fatal(rExp.span(), "Arithmetic operator applied to non-numeric operand");
 		result = false;
 	    }
 	}else{
 	    result = false;
 	}
 	if(result == true)
-	    return new IntType();
+	    return Type.INT;
 	else
-	    return new ErrorType();
+	    return Type.ERROR;
     }
     
     protected Type checkLogical(ExpNode lExp, ExpNode rExp){
@@ -2421,8 +3019,7 @@ abstract class BinaryExpNode extends ExpNode {
 
 	if(!(lType instanceof ErrorType)){
 	    if(!(lType instanceof BoolType)){
-		IdNode i = lExp.getExpFirstIdNode();
-		i.typeCheckError("Logical operator applied to non-bool operand");
+		ErrMsg.fatal(lExp.span(), "Logical operator applied to non-bool operand");
 		result = false;
 	    }
 	}else{
@@ -2431,8 +3028,7 @@ abstract class BinaryExpNode extends ExpNode {
 
 	if(!(rType instanceof ErrorType)){
 	    if(!(rType instanceof BoolType)){
-		IdNode i = rExp.getExpFirstIdNode();
-		i.typeCheckError("Logical operator applied to non-bool operand");
+		ErrMsg.fatal(rExp.span(), "Logical operator applied to non-bool operand");
 		result = false;
 	    }
 	}else{
@@ -2440,9 +3036,9 @@ abstract class BinaryExpNode extends ExpNode {
 	}
 
 	if(result == true)
-	    return new BoolType();
+	    return Type.BOOL;
 	else
-	    return new ErrorType();
+	    return Type.ERROR;
 
 
     }
@@ -2453,8 +3049,7 @@ abstract class BinaryExpNode extends ExpNode {
 	boolean result = true;
 	if(!(lType instanceof ErrorType)){
 	    if(!(lType instanceof IntType)){
-		IdNode i = lExp.getExpFirstIdNode();
-		i.typeCheckError("Relational operator applied to non-numeric operand");
+		ErrMsg.fatal(lExp.span(), "Relational operator applied to non-numeric operand");
 		result = false;
 	    }
 	}else{
@@ -2463,55 +3058,51 @@ abstract class BinaryExpNode extends ExpNode {
 
 	if(!(rType instanceof ErrorType)){
 	    if(!(rType instanceof IntType)){
-		IdNode i = rExp.getExpFirstIdNode();
-		i.typeCheckError("Relational operator applied to non-numeric operand");
+		ErrMsg.fatal(rExp.span(), "Relational operator applied to non-numeric operand");
 		result = false;
 	    }
 	}else{
 	    result = false;
 	}
 	if(result == true)
-	    return new BoolType();
+	    return Type.BOOL;
 	else
-	    return new ErrorType();
+	    return Type.ERROR;
 
     }
 
     protected Type checkEquality(ExpNode lExp, ExpNode rExp){
 	Type lType = lExp.typeCheck();
 	Type rType = rExp.typeCheck();
-	IdNode i = lExp.getExpFirstIdNode();
 
 	if(lType instanceof VoidType && rType instanceof VoidType){
-	    i.typeCheckError("Equality operator applied to void functions");
-	    return new ErrorType();
+	    ErrMsg.fatal(lExp.span(), "Equality operator applied to void functions");
+	    return Type.ERROR;
 	}
 
 	if(lType instanceof StructDefType && rType instanceof StructDefType){
-	    i.typeCheckError("Equality operator applied to struct names");
-	    return new ErrorType();
+	    ErrMsg.fatal(lExp.span(), "Equality operator applied to struct names");
+	    return Type.ERROR;
 	}
 
 	if(lType instanceof StructType && rType instanceof StructType){
-	    i.typeCheckError("Equality operator applied to struct variables");
-	    return new ErrorType();
+	    ErrMsg.fatal(lExp.span(), "Equality operator applied to struct variables");
+	    return Type.ERROR;
 	}
 
 	if(lType instanceof FnType && rType instanceof FnType){
-	    i.typeCheckError("Equality operator applied to functions");
-	    return new ErrorType();
+	    ErrMsg.fatal(lExp.span(), "Equality operator applied to functions");
+	    return Type.ERROR;
 	}
 
 	if(lType instanceof ErrorType || rType instanceof ErrorType){
-	    return new ErrorType();
+	    return Type.ERROR;
 	}else{
-	    String lTypeName = lType.toString();
-	    String rTypeName = rType.toString();
-	    if(lTypeName.equals(rTypeName))
-		return new BoolType();
+	    if(lType == rType)
+		return Type.BOOL;
 	    else{
-		i.typeCheckError("Type mismatch");
-		return new ErrorType();
+		ErrMsg.fatal(lExp.span(), "Type mismatch");
+		return Type.ERROR;
 	    }
 	}
     }
@@ -2530,23 +3121,34 @@ class UnaryMinusNode extends UnaryExpNode {
         super(exp);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(t instanceof ErrorType){
-	    return new ErrorType();
+	    return Type.ERROR;
 	}else if(!(t instanceof IntType)){
-	    i.typeCheckError("Arithmetic operator applied to non-numeric operand");
-	    return new ErrorType();
+	    ErrMsg.fatal(myExp.span(), "Arithmetic operator applied to non-numeric operand");
+	    return Type.ERROR;
 	}else{
 	    return t;
 	}
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected byte arenaKind() {
+        return AstArena.UNARY_MINUS;
+    }
+
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.print(")");
+            return false;
+        }
         p.print("(-");
-        myExp.unparse(p, 0);
-        p.print(")");
+        w.visit(myExp);
+        return true;
     }
 }
 
@@ -2555,21 +3157,27 @@ class NotNode extends UnaryExpNode {
         super(exp);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	Type t = myExp.typeCheck();
-	IdNode i = myExp.getExpFirstIdNode();
 	if(t instanceof ErrorType){
-	    return new ErrorType();
+	    return Type.ERROR;
 	}else if(!(t instanceof BoolType)){
-	    i.typeCheckError("Logical operator applied to non-bool operand");
-	    return new ErrorType();
+	    ErrMsg.fatal(myExp.span(), "Logical operator applied to non-bool operand");
+	    return Type.ERROR;
 	}else{
 	    return t;
 	}
     }
 
-    public void codeGen(PrintWriter p){
-	myExp.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp);
+	    return true;
+	}
 
 	Codegen.p = p;
 	Codegen.genPop("$t0");
@@ -2577,12 +3185,21 @@ class NotNode extends UnaryExpNode {
 	Codegen.generate("seq", "$t0", "$t0", "0");
 
 	Codegen.genPush("$t0");
+	return false;
+    }
+
+    protected byte arenaKind() {
+        return AstArena.NOT;
     }
 
-    public void unparse(PrintWriter p, int indent) {
+    protected boolean unparse(PrintWriter p, Walk w, int step) {
+        if (step == 1) {
+            p.print(")");
+            return false;
+        }
         p.print("(!");
-        myExp.unparse(p, 0);
-        p.print(")");
+        w.visit(myExp);
+        return true;
     }
 }
 
@@ -2595,13 +3212,20 @@ class PlusNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkArithmetic(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 	// pop, add and push
 	Codegen.p = p;
 	Codegen.genPop("$t1");
@@ -2609,14 +3233,15 @@ class PlusNode extends BinaryExpNode {
 	Codegen.generate("add", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" + ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.PLUS;
+    }
+
+    protected String operator() {
+        return "+";
     }
 }
 
@@ -2625,13 +3250,20 @@ class MinusNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkArithmetic(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 	// pop, minus and push
 	Codegen.p = p;
 	Codegen.genPop("$t1");
@@ -2639,15 +3271,15 @@ class MinusNode extends BinaryExpNode {
 	Codegen.generate("sub", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
+    }
 
+    protected byte arenaKind() {
+        return AstArena.MINUS;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" - ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected String operator() {
+        return "-";
     }
 }
 
@@ -2656,13 +3288,20 @@ class TimesNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkArithmetic(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 	// pop, multiply and push
 	Codegen.p = p;
 	Codegen.genPop("$t1");
@@ -2670,14 +3309,15 @@ class TimesNode extends BinaryExpNode {
 	Codegen.generate("mulo", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" * ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.TIMES;
+    }
+
+    protected String operator() {
+        return "*";
     }
 }
 
@@ -2686,13 +3326,20 @@ class DivideNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkArithmetic(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 	// pop, divide and push
 	Codegen.p = p;
 	Codegen.genPop("$t1");
@@ -2700,14 +3347,15 @@ class DivideNode extends BinaryExpNode {
 	Codegen.generate("div", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" / ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.DIVIDE;
+    }
+
+    protected String operator() {
+        return "/";
     }
 }
 
@@ -2716,33 +3364,46 @@ class AndNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkLogical(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	// pop, if it is 0, no need to do further
-	Codegen.p = p;
-	Codegen.genPop("$t0");
-	String trueLab = Codegen.nextLabel();
-	String doneLab = Codegen.nextLabel();
-	Codegen.generate("beq", "$t0", "0", trueLab);
-	
-	myExp2.codeGen(p);
-	Codegen.generate("b", doneLab);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    return true;
+	}
+	if(step == 1){
+	    // pop, if it is 0, no need to do further
+	    Codegen.p = p;
+	    Codegen.genPop("$t0");
+	    String trueLab = Codegen.nextLabel();
+	    String doneLab = Codegen.nextLabel();
+	    Codegen.generate("beq", "$t0", "0", trueLab);
+	    w.setObj(new String[] { trueLab, doneLab });
+
+	    w.visit(myExp2);
+	    return true;
+	}
+	String[] labs = (String[])w.obj();
+	Codegen.generate("b", labs[1]);
 
-	Codegen.genLabel(trueLab, "&& left is false, push false");
+	Codegen.genLabel(labs[0], "&& left is false, push false");
 	Codegen.genPush("$t0");
-	Codegen.genLabel(doneLab, "&& is done");
+	Codegen.genLabel(labs[1], "&& is done");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" && ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.AND;
+    }
+
+    protected String operator() {
+        return "&&";
     }
 }
 
@@ -2751,33 +3412,46 @@ class OrNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkLogical(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	// pop, if it is 1, no need to do further
-	Codegen.p = p;
-	Codegen.genPop("$t0");
-	String trueLab = Codegen.nextLabel();
-	String doneLab = Codegen.nextLabel();
-	Codegen.generate("beq", "$t0", "1", trueLab);
-	
-	myExp2.codeGen(p);
-	Codegen.generate("b", doneLab);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    return true;
+	}
+	if(step == 1){
+	    // pop, if it is 1, no need to do further
+	    Codegen.p = p;
+	    Codegen.genPop("$t0");
+	    String trueLab = Codegen.nextLabel();
+	    String doneLab = Codegen.nextLabel();
+	    Codegen.generate("beq", "$t0", "1", trueLab);
+	    w.setObj(new String[] { trueLab, doneLab });
+
+	    w.visit(myExp2);
+	    return true;
+	}
+	String[] labs = (String[])w.obj();
+	Codegen.generate("b", labs[1]);
 
-	Codegen.genLabel(trueLab, "|| left is true, push true");
+	Codegen.genLabel(labs[0], "|| left is true, push true");
 	Codegen.genPush("$t0");
-	Codegen.genLabel(doneLab, "|| is done");
+	Codegen.genLabel(labs[1], "|| is done");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" || ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.OR;
+    }
+
+    protected String operator() {
+        return "||";
     }
 }
 
@@ -2786,11 +3460,24 @@ class EqualsNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkEquality(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 1){
+	    // pop, compare and push
+	    Codegen.genPop("$t1");
+	    Codegen.genPop("$t0");
+	    Codegen.generate("seq", "$t0", "$t0", "$t1");
+
+	    Codegen.genPush("$t0");
+	    return false;
+	}
 	p.println("\t\t#EQUALITY");
 	Codegen.p = p;
 	// string comparison
@@ -2812,25 +3499,18 @@ class EqualsNode extends BinaryExpNode {
 	    }
 
 	}else{
-	    myExp1.codeGen(p);
-	    myExp2.codeGen(p);
+	    w.visit(myExp1);
+	    w.visit(myExp2);
 	}
-	// pop, compare and push
-
-	Codegen.genPop("$t1");
-	Codegen.genPop("$t0");
-	Codegen.generate("seq", "$t0", "$t0", "$t1");
-
-	Codegen.genPush("$t0");
+	return true;
+    }
 
+    protected byte arenaKind() {
+        return AstArena.EQUALS;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" == ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected String operator() {
+        return "==";
     }
 }
 
@@ -2839,11 +3519,24 @@ class NotEqualsNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkEquality(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 1){
+	    // pop, compare and push
+	    Codegen.genPop("$t1");
+	    Codegen.genPop("$t0");
+	    Codegen.generate("sne", "$t0", "$t0", "$t1");
+
+	    Codegen.genPush("$t0");
+	    return false;
+	}
 	p.println("\t\t#NOT-EQUALITY");
 	Codegen.p = p;
 	if(myExp1 instanceof StringLitNode && myExp2 instanceof StringLitNode){
@@ -2865,24 +3558,18 @@ class NotEqualsNode extends BinaryExpNode {
 
 	}else{
 
-	    myExp1.codeGen(p);
-	    myExp2.codeGen(p);
+	    w.visit(myExp1);
+	    w.visit(myExp2);
 	}
-	    // pop, compare and push
-
-	    Codegen.genPop("$t1");
-	    Codegen.genPop("$t0");
-	    Codegen.generate("sne", "$t0", "$t0", "$t1");
+	return true;
+    }
 
-	    Codegen.genPush("$t0");
+    protected byte arenaKind() {
+        return AstArena.NOT_EQUALS;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" != ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected String operator() {
+        return "!=";
     }
 }
 
@@ -2891,13 +3578,20 @@ class LessNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkRelation(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 
 	// pop, compare and push
 	Codegen.p = p;
@@ -2906,14 +3600,15 @@ class LessNode extends BinaryExpNode {
 	Codegen.generate("slt", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" < ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.LESS;
+    }
+
+    protected String operator() {
+        return "<";
     }
 }
 
@@ -2922,13 +3617,20 @@ class GreaterNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkRelation(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 
 	// pop, compare and push
 	Codegen.p = p;
@@ -2937,14 +3639,15 @@ class GreaterNode extends BinaryExpNode {
 	Codegen.generate("sgt", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" > ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.GREATER;
+    }
+
+    protected String operator() {
+        return ">";
     }
 }
 
@@ -2953,13 +3656,20 @@ class LessEqNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkRelation(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 
 	// pop, compare and push
 	Codegen.p = p;
@@ -2968,14 +3678,15 @@ class LessEqNode extends BinaryExpNode {
 	Codegen.generate("sle", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" <= ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.LESS_EQ;
+    }
+
+    protected String operator() {
+        return "<=";
     }
 }
 
@@ -2984,13 +3695,20 @@ class GreaterEqNode extends BinaryExpNode {
         super(exp1, exp2);
     }
 
-    public Type typeCheck(){
+    public void accept(ASTVisitor v) {
+        v.visit(this);
+    }
+
+    protected Type computeType(){
 	return checkRelation(myExp1, myExp2);
     }
 
-    public void codeGen(PrintWriter p){
-	myExp1.codeGen(p);
-	myExp2.codeGen(p);
+    protected boolean codeGen(PrintWriter p, Walk w, int step){
+	if(step == 0){
+	    w.visit(myExp1);
+	    w.visit(myExp2);
+	    return true;
+	}
 
 	// pop, compare and push
 	Codegen.p = p;
@@ -2999,13 +3717,14 @@ class GreaterEqNode extends BinaryExpNode {
 	Codegen.generate("sge", "$t0", "$t0", "$t1");
 
 	Codegen.genPush("$t0");
+	return false;
     }
 
-    public void unparse(PrintWriter p, int indent) {
-        p.print("(");
-        myExp1.unparse(p, 0);
-        p.print(" >= ");
-        myExp2.unparse(p, 0);
-        p.print(")");
+    protected byte arenaKind() {
+        return AstArena.GREATER_EQ;
+    }
+
+    protected String operator() {
+        return ">=";
     }
 }